@@ -0,0 +1,23 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Callback writing a request body directly to the connection, so that the
+ * request does not have to be materialized in memory. A writer may be
+ * invoked more than once if the request has to be resent and should
+ * therefore write the same body on every invocation.
+ */
+@FunctionalInterface
+public interface BodyWriter {
+    /**
+     * Write the request body to {@code out}.
+     *
+     * @param out the output stream (should not be closed)
+     *
+     * @throws IOException if writing fails
+     */
+    void writeTo(OutputStream out)
+            throws IOException;
+}
@@ -0,0 +1,20 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+
+/**
+ * Thrown if an outbound call is rejected without being attempted, because
+ * the circuit of the endpoint is open or the concurrency limit is reached.
+ */
+public class CallRejectedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create a new {@code CallRejectedException}.
+     *
+     * @param message the message
+     */
+    public CallRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,208 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import org.apache.xmlbeans.XmlException;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.epos.event.EposEvent;
+
+/**
+ * Requests the observations of a time window from a SOS. Windows within the
+ * {@linkplain CatchUpPolicy#getMaxWindow() maximum window} of the
+ * {@link CatchUpPolicy} are requested at once and streamed to the consumer.
+ * Larger windows (a backlog) are split into sub-windows that are requested
+ * concurrently, buffered and delivered in chronological order. A sub-window
+ * exceeding the maximum number of observations is discarded and requested
+ * again as two halves.
+ * <p>
+ * Windows are half-open intervals {@code [from, to)} of milliseconds.
+ */
+public class CatchUpFetcher {
+    private static final Logger LOG = LoggerFactory.getLogger(CatchUpFetcher.class);
+    private final SosClient client;
+    private final CatchUpPolicy policy;
+    private final Executor executor;
+
+    /**
+     * Creates a new {@code CatchUpFetcher}.
+     *
+     * @param client   the SOS client
+     * @param policy   the catch-up policy
+     * @param executor the executor to request the sub-windows; should not be
+     *                 the executor used by the client itself
+     */
+    public CatchUpFetcher(SosClient client, CatchUpPolicy policy,
+                          Executor executor) {
+        this.client = Objects.requireNonNull(client);
+        this.policy = Objects.requireNonNull(policy);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * Request the observations of the window {@code [from, to)}.
+     *
+     * @param from     the inclusive begin of the window
+     * @param to       the exclusive end of the window
+     * @param consumer the consumer of the events
+     * @param progress the consumer of the end of every window that has been
+     *                 delivered completely; windows are delivered in order,
+     *                 so every event before that instant has been consumed
+     *
+     * @return the number of received observations
+     *
+     * @throws IOException  if a request fails
+     * @throws XmlException if a response can not be parsed
+     */
+    public int fetch(long from, long to, Consumer<? super EposEvent> consumer,
+                     LongConsumer progress)
+            throws IOException, XmlException {
+        if (to - from <= this.policy.getMaxWindow()) {
+            int received = request(from, to, consumer);
+            progress.accept(to);
+            return received;
+        }
+        LOG.info("Catching up with {} ms of observations", to - from);
+        return catchUp(from, to, consumer, progress);
+    }
+
+    private int catchUp(long from, long to, Consumer<? super EposEvent> consumer,
+                        LongConsumer progress)
+            throws IOException, XmlException {
+        // the in-flight sub-windows in chronological order
+        LinkedList<SubWindow> pending = new LinkedList<>();
+        long next = from;
+        int received = 0;
+        try {
+            while (next < to || !pending.isEmpty()) {
+                while (next < to && pending.size() < this.policy.getPipelineDepth()) {
+                    long end = Math.min(to, next + this.policy.getMaxWindow());
+                    pending.addLast(submit(next, end));
+                    next = end;
+                }
+                SubWindow head = pending.removeFirst();
+                List<EposEvent> events = head.get();
+                if (events == null) {
+                    // the halves precede every other pending window
+                    long mid = head.from + (head.to - head.from) / 2;
+                    LOG.debug("Splitting window [{}, {}) at {}", head.from, head.to, mid);
+                    pending.addFirst(submit(mid, head.to));
+                    pending.addFirst(submit(head.from, mid));
+                } else {
+                    events.forEach(consumer);
+                    received += events.size();
+                    progress.accept(head.to);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", ex);
+        } finally {
+            pending.forEach(w -> w.task.cancel(true));
+        }
+        return received;
+    }
+
+    private SubWindow submit(long from, long to) {
+        SubWindow window = new SubWindow(from, to);
+        this.executor.execute(window.task);
+        return window;
+    }
+
+    /**
+     * Request and buffer the observations of {@code [from, to)}.
+     *
+     * @param from the inclusive begin of the window
+     * @param to   the exclusive end of the window
+     *
+     * @return the events or {@code null} if the window should be split
+     *
+     * @throws IOException  if the request fails
+     * @throws XmlException if the response can not be parsed
+     */
+    private List<EposEvent> buffer(long from, long to)
+            throws IOException, XmlException {
+        List<EposEvent> events = new ArrayList<>();
+        if (to - from <= this.policy.getMinWindow()) {
+            request(from, to, events::add);
+            return events;
+        }
+        int limit = this.policy.getMaxObservations();
+        try {
+            request(from, to, event -> {
+                if (events.size() == limit) {
+                    // abort reading the response
+                    throw new WindowTooLargeException();
+                }
+                events.add(event);
+            });
+        } catch (WindowTooLargeException ex) {
+            return null;
+        }
+        return events;
+    }
+
+    private int request(long from, long to, Consumer<? super EposEvent> consumer)
+            throws IOException, XmlException {
+        // during is exclusive boundaries, so shift the begin
+        // 1ms to the past to get every timestamp exactly one time
+        return this.client.getEvents(new DateTime(from - 1L), new DateTime(to),
+                                     consumer);
+    }
+
+    /**
+     * A sub-window that is requested asynchronously.
+     */
+    private class SubWindow {
+        private final long from;
+        private final long to;
+        private final FutureTask<List<EposEvent>> task;
+
+        SubWindow(long from, long to) {
+            this.from = from;
+            this.to = to;
+            this.task = new FutureTask<>(() -> buffer(from, to));
+        }
+
+        List<EposEvent> get() throws IOException, XmlException,
+                                     InterruptedException {
+            try {
+                return this.task.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof XmlException) {
+                    throw (XmlException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Thrown by the consumer to abort reading an oversized response.
+     */
+    private static class WindowTooLargeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        WindowTooLargeException() {
+            super(null, null, false, false);
+        }
+    }
+}
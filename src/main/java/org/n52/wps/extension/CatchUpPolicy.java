@@ -0,0 +1,141 @@
+package org.n52.wps.extension;
+
+import java.util.Objects;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Immutable description of how a {@link SesFeeder} catches up with a backlog
+ * of observations (e.g. after an outage of the SOS). Windows larger than
+ * {@link #getMaxWindow()} are split into sub-windows of that size, which are
+ * requested concurrently and delivered in order. Sub-windows whose response
+ * contains more than {@link #getMaxObservations()} observations are halved
+ * recursively until they reach {@link #getMinWindow()}.
+ */
+public class CatchUpPolicy {
+    private static final long WINDOW_FACTOR = 4L;
+    private static final long DEFAULT_MIN_WINDOW = 1000L;
+    private static final int DEFAULT_MAX_OBSERVATIONS = 10000;
+    private static final int DEFAULT_PIPELINE_DEPTH = 4;
+    private final long maxWindow;
+    private final long minWindow;
+    private final int maxObservations;
+    private final int pipelineDepth;
+
+    /**
+     * Creates a new {@code CatchUpPolicy}.
+     *
+     * @param maxWindow       the largest window that is requested at once
+     *                        (in ms)
+     * @param minWindow       the smallest window that will be split further
+     *                        (in ms)
+     * @param maxObservations the maximum number of observations of a
+     *                        sub-window
+     * @param pipelineDepth   the number of sub-windows requested
+     *                        concurrently
+     *
+     * @throws IllegalArgumentException if any of the parameters is not
+     *                                  positive or {@code minWindow} exceeds
+     *                                  {@code maxWindow}
+     */
+    public CatchUpPolicy(long maxWindow, long minWindow, int maxObservations,
+                         int pipelineDepth) {
+        if (minWindow <= 0 || minWindow > maxWindow) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid window max %d, min %d", maxWindow, minWindow));
+        }
+        if (maxObservations <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid maximum observations: " + maxObservations);
+        }
+        if (pipelineDepth <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid pipeline depth: " + pipelineDepth);
+        }
+        this.maxWindow = maxWindow;
+        this.minWindow = minWindow;
+        this.maxObservations = maxObservations;
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    /**
+     * Creates the default {@code CatchUpPolicy} for {@code schedule}. Windows
+     * exceeding a multiple of the maximum interval of the schedule are
+     * considered a backlog.
+     *
+     * @param schedule the polling schedule
+     *
+     * @return the policy
+     */
+    public static CatchUpPolicy forSchedule(PollingSchedule schedule) {
+        long maxWindow = WINDOW_FACTOR * schedule.getMaxInterval();
+        return new CatchUpPolicy(maxWindow,
+                                 Math.min(DEFAULT_MIN_WINDOW, maxWindow),
+                                 DEFAULT_MAX_OBSERVATIONS,
+                                 DEFAULT_PIPELINE_DEPTH);
+    }
+
+    /**
+     * Get the largest window that is requested at once.
+     *
+     * @return the window (in ms)
+     */
+    public long getMaxWindow() {
+        return maxWindow;
+    }
+
+    /**
+     * Get the smallest window that will be split further.
+     *
+     * @return the window (in ms)
+     */
+    public long getMinWindow() {
+        return minWindow;
+    }
+
+    /**
+     * Get the maximum number of observations of a sub-window.
+     *
+     * @return the number of observations
+     */
+    public int getMaxObservations() {
+        return maxObservations;
+    }
+
+    /**
+     * Get the number of sub-windows that are requested concurrently.
+     *
+     * @return the depth
+     */
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.maxWindow, this.minWindow,
+                            this.maxObservations, this.pipelineDepth);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof CatchUpPolicy)) {
+            return false;
+        }
+        CatchUpPolicy that = (CatchUpPolicy) obj;
+        return this.maxWindow == that.maxWindow &&
+               this.minWindow == that.minWindow &&
+               this.maxObservations == that.maxObservations &&
+               this.pipelineDepth == that.pipelineDepth;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("maxWindow", this.maxWindow)
+                .add("minWindow", this.minWindow)
+                .add("maxObservations", this.maxObservations)
+                .add("pipelineDepth", this.pipelineDepth)
+                .toString();
+    }
+}
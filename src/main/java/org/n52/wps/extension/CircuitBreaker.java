@@ -0,0 +1,172 @@
+package org.n52.wps.extension;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Circuit breaker of a single endpoint. After a number of consecutive
+ * failures the circuit opens and calls are rejected immediately. Once the
+ * open duration elapsed, a single probe call is permitted (half open); if it
+ * succeeds the circuit closes again, otherwise it stays open for another
+ * period.
+ * <p>
+ * Only failures of the endpoint are counted: transport failures, server
+ * errors, timeouts ({@code 408}) and throttling ({@code 429}). If the
+ * endpoint rejected a request with another client error, it is healthy, so
+ * the call is recorded as a success.
+ */
+public class CircuitBreaker {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private final int failureThreshold;
+    private final long openDuration;
+    private final LongSupplier clock;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    /**
+     * Create a new {@code CircuitBreaker}.
+     *
+     * @param failureThreshold the number of consecutive failures that open
+     *                         the circuit
+     * @param openDuration     the time (in ms) the circuit stays open before
+     *                         a probe is permitted
+     */
+    public CircuitBreaker(int failureThreshold, long openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    /**
+     * Create a new {@code CircuitBreaker}.
+     *
+     * @param failureThreshold the number of consecutive failures that open
+     *                         the circuit
+     * @param openDuration     the time (in ms) the circuit stays open before
+     *                         a probe is permitted
+     * @param clock            the clock (in ns)
+     */
+    CircuitBreaker(int failureThreshold, long openDuration, LongSupplier clock) {
+        if (failureThreshold < 1 || openDuration < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDuration = TimeUnit.MILLISECONDS.toNanos(openDuration);
+        this.clock = clock;
+    }
+
+    /**
+     * Check if a call is permitted. If the circuit is open and the open
+     * duration elapsed, this call is the probe and further calls are rejected
+     * until its outcome is reported.
+     *
+     * @return if the call is permitted
+     */
+    public synchronized boolean tryAcquire() {
+        switch (this.state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (this.clock.getAsLong() - this.openedAt >= this.openDuration) {
+                    this.state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            case HALF_OPEN:
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Report a successful call.
+     */
+    public synchronized void onSuccess() {
+        this.failures = 0;
+        this.state = State.CLOSED;
+    }
+
+    /**
+     * Report a failed call.
+     */
+    public synchronized void onFailure() {
+        if (this.state == State.HALF_OPEN ||
+            ++this.failures >= this.failureThreshold) {
+            this.state = State.OPEN;
+            this.openedAt = this.clock.getAsLong();
+        }
+    }
+
+    /**
+     * Report a call that failed with {@code failure}. It is only counted as
+     * a failure if it is a {@linkplain #isEndpointFailure(Throwable) failure
+     * of the endpoint}, otherwise it is reported as a success.
+     *
+     * @param failure the failure
+     */
+    public void onFailure(Throwable failure) {
+        if (isEndpointFailure(failure)) {
+            onFailure();
+        } else {
+            onSuccess();
+        }
+    }
+
+    /**
+     * Check if {@code failure} is caused by the endpoint rather than by the
+     * request: anything but an unsuccessful response with a status below
+     * {@code 500}, except for {@code 408} and {@code 429}.
+     *
+     * @param failure the failure
+     *
+     * @return if the endpoint failed
+     */
+    static boolean isEndpointFailure(Throwable failure) {
+        if (!(failure instanceof HttpResponseException)) {
+            return true;
+        }
+        int status = ((HttpResponseException) failure).getStatusCode();
+        return status >= HttpStatus.SC_INTERNAL_SERVER_ERROR ||
+               status == HttpStatus.SC_REQUEST_TIMEOUT ||
+               status == TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Get the state of this circuit.
+     *
+     * @return the state
+     */
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("state", this.state)
+                .add("failures", this.failures)
+                .toString();
+    }
+
+    /**
+     * The state of a circuit.
+     */
+    public enum State {
+        /**
+         * Calls are permitted.
+         */
+        CLOSED,
+        /**
+         * Calls are rejected.
+         */
+        OPEN,
+        /**
+         * A single probe call is in progress.
+         */
+        HALF_OPEN
+    }
+}
@@ -93,6 +93,21 @@ public abstract class ConvenientAbstractAlgorithm extends AbstractAlgorithm {
                                    ExceptionReport.MISSING_PARAMETER_VALUE);
     }
 
+    /**
+     * Creates an {@code ExceptionReport} describing an invalid value of the
+     * parameter {@code inputId}
+     *
+     * @param inputId the input id
+     * @param message the description of the problem
+     *
+     * @return the exception report
+     */
+    protected static ExceptionReport invalidParameterValue(String inputId,
+                                                           String message) {
+        return new ExceptionReport(String.format("Invalid %s input: %s", inputId, message),
+                                   ExceptionReport.INVALID_PARAMETER_VALUE, inputId);
+    }
+
     /**
      * Creates an {@code ExceptionReport} wrapping a generic {@code Throwable}.
      *
@@ -0,0 +1,177 @@
+package org.n52.wps.extension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Filter dropping events that were already seen. Overlapping polling windows
+ * (and SOS servers including observations at both window boundaries) deliver
+ * observations twice, which would otherwise be filtered and notified twice.
+ * <p>
+ * Events are identified by a 64 bit hash of procedure, observed property,
+ * feature of interest, phenomenon time and value (so a corrected value is not
+ * mistaken for a duplicate). The hashes are kept in compact hash sets
+ * bucketed by phenomenon time. Buckets are discarded once the polling cursor
+ * has passed them, as later windows can not contain these observations
+ * anymore. If more than the maximum number of hashes are retained, further
+ * events are passed without being recorded.
+ */
+public class EventDeduplicator {
+    private static final Logger LOG = LoggerFactory.getLogger(EventDeduplicator.class);
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private final TreeMap<Long, LongHashSet> buckets = new TreeMap<>();
+    private final long bucketSize;
+    private final int maxSize;
+    private int size = 0;
+
+    /**
+     * Creates a new {@code EventDeduplicator}.
+     *
+     * @param bucketSize the span of phenomenon time covered by a bucket (in
+     *                   ms)
+     * @param maxSize    the maximum number of retained hashes
+     */
+    public EventDeduplicator(long bucketSize, int maxSize) {
+        if (bucketSize <= 0 || maxSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.bucketSize = bucketSize;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Checks if {@code event} was not seen before and records it.
+     *
+     * @param event the event
+     *
+     * @return {@code true} if the event is new, {@code false} if it is a
+     *         duplicate
+     */
+    public synchronized boolean add(EposEvent event) {
+        Long bucket = Math.floorDiv(event.getEndTime(), this.bucketSize);
+        long hash = hash(event);
+        LongHashSet set = this.buckets.get(bucket);
+        if (set != null && set.contains(hash)) {
+            LOG.debug("Dropping duplicate event {}", event);
+            return false;
+        }
+        if (this.size >= this.maxSize) {
+            return true;
+        }
+        if (set == null) {
+            set = new LongHashSet();
+            this.buckets.put(bucket, set);
+        }
+        set.add(hash);
+        ++this.size;
+        return true;
+    }
+
+    /**
+     * Discard all buckets that only contain phenomenon times before
+     * {@code time}.
+     *
+     * @param time the instant (in ms since the epoch)
+     */
+    public synchronized void expire(long time) {
+        Long bucket = Math.floorDiv(time, this.bucketSize);
+        Iterator<Map.Entry<Long, LongHashSet>> iter
+                = this.buckets.headMap(bucket, false).entrySet().iterator();
+        while (iter.hasNext()) {
+            this.size -= iter.next().getValue().size();
+            iter.remove();
+        }
+    }
+
+    private static long hash(EposEvent event) {
+        return HASH_FUNCTION.newHasher()
+                .putString(valueOf(event, MapEposEvent.SENSORID_KEY), StandardCharsets.UTF_8)
+                .putChar('\0')
+                .putString(valueOf(event, MapEposEvent.OBSERVED_PROPERTY_KEY), StandardCharsets.UTF_8)
+                .putChar('\0')
+                .putString(valueOf(event, MapEposEvent.FEATURE_TYPE_KEY), StandardCharsets.UTF_8)
+                .putChar('\0')
+                .putString(valueOf(event, MapEposEvent.DOUBLE_VALUE_KEY), StandardCharsets.UTF_8)
+                .putLong(event.getStartTime())
+                .putLong(event.getEndTime())
+                .hash().asLong();
+    }
+
+    private static String valueOf(EposEvent event, String key) {
+        return Objects.toString(event.getValue(key), "");
+    }
+
+    /**
+     * Open addressing hash set of {@code long} values.
+     */
+    private static class LongHashSet {
+        private static final int INITIAL_CAPACITY = 64;
+        private static final long EMPTY = 0L;
+        private long[] table = new long[INITIAL_CAPACITY];
+        private int size = 0;
+
+        int size() {
+            return this.size;
+        }
+
+        boolean contains(long value) {
+            long v = value == EMPTY ? 1L : value;
+            int mask = this.table.length - 1;
+            for (int i = index(v, mask); this.table[i] != EMPTY; i = (i + 1) & mask) {
+                if (this.table[i] == v) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long value) {
+            long v = value == EMPTY ? 1L : value;
+            if (2 * (this.size + 1) > this.table.length) {
+                rehash();
+            }
+            if (insert(this.table, v)) {
+                ++this.size;
+            }
+        }
+
+        private void rehash() {
+            long[] newTable = new long[2 * this.table.length];
+            for (long v : this.table) {
+                if (v != EMPTY) {
+                    insert(newTable, v);
+                }
+            }
+            this.table = newTable;
+        }
+
+        private static boolean insert(long[] table, long v) {
+            int mask = table.length - 1;
+            int i = index(v, mask);
+            while (table[i] != EMPTY) {
+                if (table[i] == v) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = v;
+            return true;
+        }
+
+        private static int index(long v, int mask) {
+            return (int) (v ^ (v >>> 32)) & mask;
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package org.n52.wps.extension;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.lang.Thread.UncaughtExceptionHandler;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collections;
@@ -11,6 +12,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import net.opengis.sos.x20.GetObservationDocument;
+
 import org.apache.xmlbeans.XmlObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,7 +21,9 @@ import org.slf4j.LoggerFactory;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GenericXMLDataBinding;
 import org.n52.wps.io.data.binding.literal.LiteralAnyURIBinding;
+import org.n52.wps.io.data.binding.literal.LiteralBooleanBinding;
 import org.n52.wps.io.data.binding.literal.LiteralLongBinding;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.IAlgorithm;
 
@@ -33,21 +38,69 @@ public class EventingProcess extends ConvenientAbstractAlgorithm {
     public static final String EML_RULE_INPUT = "notification-rule";
     public static final String KVP_GET_OBSERVATION_TEMPLATE_INPUT = "kvp-getobservation-template";
     public static final String POX_GET_OBSERVATION_TEMPLATE_INPUT = "pox-getobservation-template";
+    public static final String KVP_GET_RESULT_TEMPLATE_INPUT = "kvp-getresult-template";
     public static final String SOS_ENDPOINT_INPUT = "sos-endpoint";
     public static final String RSS_ENDPOINT_INPUT = "notification-endpoint";
     public static final String RSS_ENDPOINT_OUTPUT = "notification-endpoint";
     public static final String SAMPLING_RATE_INPUT = "sampling-rate";
+    public static final String MIN_SAMPLING_RATE_INPUT = "min-sampling-rate";
+    public static final String MAX_SAMPLING_RATE_INPUT = "max-sampling-rate";
+    public static final String SAMPLING_JITTER_INPUT = "sampling-jitter";
+    public static final String REQUEST_SHARDS_INPUT = "request-shards";
+    public static final String RESPONSE_ENCODING_INPUT = "sos-response-encoding";
+    public static final String INGESTION_INPUT = "observation-ingestion";
+    public static final String SOS_RETRY_ATTEMPTS_INPUT = "sos-retry-attempts";
+    public static final String NOTIFICATION_RETRY_ATTEMPTS_INPUT = "notification-retry-attempts";
+    public static final String SOS_HEDGING_INPUT = "sos-hedging";
+    public static final String SOS_MAX_RESUME_AGE_INPUT = "sos-max-resume-age";
+    public static final String NOTIFICATION_BATCH_SIZE_INPUT = "notification-batch-size";
+    public static final String NOTIFICATION_LINGER_INPUT = "notification-linger";
+    public static final String NOTIFICATION_LANES_INPUT = "notification-lanes";
+    public static final String NOTIFICATION_QUEUE_CAPACITY_INPUT = "notification-queue-capacity";
+    public static final String NOTIFICATION_OVERFLOW_POLICY_INPUT = "notification-overflow-policy";
+    public static final String NOTIFICATION_OUTBOX_INPUT = "notification-outbox";
     public static final String RUNTIME_INPUT = "runtime";
     public static final long DEFAULT_RUNTIME = -1L;
     public static final long DEFAULT_SAMPLING_RATE = TimeUnit.MINUTES.toMillis(10L);
-    private final HttpClient httpClient;
+    public static final long DEFAULT_SAMPLING_JITTER = 0L;
+    public static final long DEFAULT_REQUEST_SHARDS = 1L;
+    public static final String DEFAULT_RESPONSE_ENCODING = "xml";
+    public static final long DEFAULT_RETRY_ATTEMPTS = 3L;
+    public static final boolean DEFAULT_SOS_HEDGING = false;
+    public static final long DEFAULT_SOS_MAX_RESUME_AGE = 0L;
+    public static final long DEFAULT_NOTIFICATION_BATCH_SIZE = RssFeeder.DEFAULT_MAX_BATCH_SIZE;
+    public static final long DEFAULT_NOTIFICATION_LINGER = RssFeeder.DEFAULT_LINGER;
+    public static final long DEFAULT_NOTIFICATION_LANES = RssFeeder.DEFAULT_DISPATCH_LANES;
+    public static final long DEFAULT_NOTIFICATION_QUEUE_CAPACITY = RssFeeder.DEFAULT_QUEUE_CAPACITY;
+    public static final String DEFAULT_NOTIFICATION_OVERFLOW_POLICY = "block";
+    public static final boolean DEFAULT_NOTIFICATION_OUTBOX = false;
+    public static final String JSON_RESPONSE_ENCODING = "json";
+    public static final String POLL_INGESTION = "poll";
+    public static final String PUSH_INGESTION = "push";
+    private static final int SOS_CONCURRENCY = 8 * Runtime.getRuntime().availableProcessors();
+    private static final int NOTIFICATION_CONCURRENCY = 4 * Runtime.getRuntime().availableProcessors();
+    private static final long MAX_NOTIFICATION_LANES = NOTIFICATION_CONCURRENCY;
+    private static final long MAX_BULKHEAD_WAIT = TimeUnit.SECONDS.toMillis(10L);
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final long CIRCUIT_OPEN_DURATION = TimeUnit.SECONDS.toMillis(30L);
+    private static final HttpClient SOS_HTTP_CLIENT = new ResilientHttpClient(
+            PooledHttpClient.getInstance(), "SOS", SOS_CONCURRENCY,
+            MAX_BULKHEAD_WAIT, CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_DURATION);
+    private static final HttpClient NOTIFICATION_HTTP_CLIENT = new ResilientHttpClient(
+            PooledHttpClient.getInstance(), "notification", NOTIFICATION_CONCURRENCY,
+            MAX_BULKHEAD_WAIT, CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_DURATION);
+    private final HttpClient sosHttpClient;
+    private final HttpClient notificationHttpClient;
 
     /**
      * Create a new {@code EventingProcess} using the
-     * {@linkplain URLConnectionHttpClient default HTTP client}.
+     * {@linkplain PooledHttpClient#getInstance() shared HTTP client}. SOS
+     * requests and notifications are guarded by separate
+     * {@linkplain ResilientHttpClient circuit breakers and bulkheads} shared
+     * by all processes.
      */
     public EventingProcess() {
-        this(new URLConnectionHttpClient());
+        this(SOS_HTTP_CLIENT, NOTIFICATION_HTTP_CLIENT);
     }
 
     /**
@@ -57,7 +110,19 @@ public class EventingProcess extends ConvenientAbstractAlgorithm {
      * @param client the HTTP client to use
      */
     public EventingProcess(HttpClient client) {
-        this.httpClient = client;
+        this(client, client);
+    }
+
+    /**
+     * Create a new {@code EventingProcess} using the specified
+     * {@code HttpClient}s.
+     *
+     * @param sosClient          the HTTP client to request the SOS
+     * @param notificationClient the HTTP client to publish notifications
+     */
+    public EventingProcess(HttpClient sosClient, HttpClient notificationClient) {
+        this.sosHttpClient = sosClient;
+        this.notificationHttpClient = notificationClient;
     }
 
     @Override
@@ -69,13 +134,35 @@ public class EventingProcess extends ConvenientAbstractAlgorithm {
             URI sosEndpoint = getOptionalSingleInput(inputData, SOS_ENDPOINT_INPUT, null);
             URI rssEndpoint = getSingleInput(inputData, RSS_ENDPOINT_INPUT);
             XmlObject poxRequest = getOptionalSingleInput(inputData, POX_GET_OBSERVATION_TEMPLATE_INPUT, null);
+            URI getResultRequest = getOptionalSingleInput(inputData, KVP_GET_RESULT_TEMPLATE_INPUT, null);
             XmlObject xmlRule = getSingleInput(inputData, EML_RULE_INPUT);
             long runtime = getOptionalSingleInput(inputData, RUNTIME_INPUT, DEFAULT_RUNTIME);
             long samplingRate = getOptionalSingleInput(inputData, SAMPLING_RATE_INPUT, DEFAULT_SAMPLING_RATE);
+            long minSamplingRate = getOptionalSingleInput(inputData, MIN_SAMPLING_RATE_INPUT, samplingRate);
+            long maxSamplingRate = getOptionalSingleInput(inputData, MAX_SAMPLING_RATE_INPUT, samplingRate);
+            long samplingJitter = getOptionalSingleInput(inputData, SAMPLING_JITTER_INPUT, DEFAULT_SAMPLING_JITTER);
+            long requestShards = getOptionalSingleInput(inputData, REQUEST_SHARDS_INPUT, DEFAULT_REQUEST_SHARDS);
+            String responseEncoding = getOptionalSingleInput(inputData, RESPONSE_ENCODING_INPUT, DEFAULT_RESPONSE_ENCODING);
+            String ingestion = getOptionalSingleInput(inputData, INGESTION_INPUT, POLL_INGESTION);
+            long sosRetryAttempts = getOptionalSingleInput(inputData, SOS_RETRY_ATTEMPTS_INPUT, DEFAULT_RETRY_ATTEMPTS);
+            long notificationRetryAttempts = getOptionalSingleInput(inputData, NOTIFICATION_RETRY_ATTEMPTS_INPUT, DEFAULT_RETRY_ATTEMPTS);
+            boolean sosHedging = getOptionalSingleInput(inputData, SOS_HEDGING_INPUT, DEFAULT_SOS_HEDGING);
+            long sosMaxResumeAge = getOptionalSingleInput(inputData, SOS_MAX_RESUME_AGE_INPUT, DEFAULT_SOS_MAX_RESUME_AGE);
+            long notificationBatchSize = getOptionalSingleInput(inputData, NOTIFICATION_BATCH_SIZE_INPUT, DEFAULT_NOTIFICATION_BATCH_SIZE);
+            long notificationLinger = getOptionalSingleInput(inputData, NOTIFICATION_LINGER_INPUT, DEFAULT_NOTIFICATION_LINGER);
+            long notificationLanes = getOptionalSingleInput(inputData, NOTIFICATION_LANES_INPUT, DEFAULT_NOTIFICATION_LANES);
+            long notificationQueueCapacity = getOptionalSingleInput(inputData, NOTIFICATION_QUEUE_CAPACITY_INPUT, DEFAULT_NOTIFICATION_QUEUE_CAPACITY);
+            String notificationOverflowPolicy = getOptionalSingleInput(inputData, NOTIFICATION_OVERFLOW_POLICY_INPUT, DEFAULT_NOTIFICATION_OVERFLOW_POLICY);
+            boolean notificationOutbox = getOptionalSingleInput(inputData, NOTIFICATION_OUTBOX_INPUT, DEFAULT_NOTIFICATION_OUTBOX);
 
 
             // roughly validate the inputs
-            if (kvpRequest == null && poxRequest == null) {
+            boolean push = PUSH_INGESTION.equalsIgnoreCase(ingestion);
+            if (!push && !POLL_INGESTION.equalsIgnoreCase(ingestion)) {
+                throw invalidParameterValue(INGESTION_INPUT, ingestion);
+            }
+
+            if (!push && kvpRequest == null && poxRequest == null && getResultRequest == null) {
                 throw missingRequestTemplateParameter();
             }
 
@@ -89,23 +176,120 @@ public class EventingProcess extends ConvenientAbstractAlgorithm {
                         kvpRequest.getQuery(), null);
             }
 
-            if (poxRequest != null && sosEndpoint == null) {
+            if (!push && poxRequest != null && sosEndpoint == null) {
                 throw missingParameterValue(SOS_ENDPOINT_INPUT);
             }
 
-            SosClient sosClient;
+            PollingSchedule schedule;
+            try {
+                schedule = new PollingSchedule(samplingRate, minSamplingRate,
+                                               maxSamplingRate, samplingJitter);
+            } catch (IllegalArgumentException ex) {
+                throw invalidParameterValue(SAMPLING_RATE_INPUT, ex.getMessage());
+            }
+
+            // the JSON binding is handled by a dedicated client
+            boolean json = JSON_RESPONSE_ENCODING.equalsIgnoreCase(responseEncoding);
+            ResponseEncoding encoding = ResponseEncoding.XML;
+            if (!json) {
+                try {
+                    encoding = ResponseEncoding.fromString(responseEncoding);
+                } catch (IllegalArgumentException ex) {
+                    throw invalidParameterValue(RESPONSE_ENCODING_INPUT, responseEncoding);
+                }
+            }
+
+            SosClient sosClient = null;
             // prefer POX over KVP...
-            if (poxRequest != null) {
-                sosClient = new PoxSosClient(this.httpClient, poxRequest, sosEndpoint.toURL());
+            if (push) {
+                // the observations are pushed, there is nothing to poll
+            } else if (json && poxRequest != null) {
+                sosClient = JsonSosClient.fromPox(this.sosHttpClient, (GetObservationDocument) poxRequest, sosEndpoint.toURL());
+            } else if (json && kvpRequest != null) {
+                try {
+                    sosClient = JsonSosClient.fromKvp(this.sosHttpClient, sosEndpoint.toURL());
+                } catch (IllegalArgumentException ex) {
+                    throw invalidParameterValue(KVP_GET_OBSERVATION_TEMPLATE_INPUT, ex.getMessage());
+                }
+            } else if (poxRequest != null) {
+                sosClient = new PoxSosClient(this.sosHttpClient, poxRequest, sosEndpoint.toURL(), encoding);
+            } else if (kvpRequest != null) {
+                sosClient = new KvpSosClient(this.sosHttpClient, sosEndpoint.toURL(), encoding);
             } else {
-                sosClient = new KvpSosClient(this.httpClient, sosEndpoint.toURL());
+                try {
+                    sosClient = new ResultSosClient(this.sosHttpClient, getResultRequest.toURL());
+                } catch (IllegalArgumentException ex) {
+                    throw invalidParameterValue(KVP_GET_RESULT_TEMPLATE_INPUT, ex.getMessage());
+                }
+            }
+
+            RetryPolicy sosRetryPolicy = createRetryPolicy(SOS_RETRY_ATTEMPTS_INPUT, sosRetryAttempts);
+            RetryPolicy notificationRetryPolicy = createRetryPolicy(NOTIFICATION_RETRY_ATTEMPTS_INPUT, notificationRetryAttempts);
+
+            if (sosHedging && sosClient != null) {
+                // hedge the shards individually
+                sosClient = new HedgedSosClient(sosClient, SosPollingService.getInstance().getHedgeExecutor());
+            }
+
+            if (requestShards < 1 || requestShards > Integer.MAX_VALUE) {
+                throw invalidParameterValue(REQUEST_SHARDS_INPUT, String.valueOf(requestShards));
+            } else if (requestShards > 1 && sosClient != null) {
+                // split the request and execute the shards concurrently
+                sosClient = new ShardedSosClient(sosClient.split((int) requestShards),
+                        SosPollingService.getInstance().getRequestExecutor());
+            }
+
+            if (notificationBatchSize < 1 || notificationBatchSize > Integer.MAX_VALUE) {
+                throw invalidParameterValue(NOTIFICATION_BATCH_SIZE_INPUT, String.valueOf(notificationBatchSize));
+            }
+
+            if (notificationLinger < 0) {
+                throw invalidParameterValue(NOTIFICATION_LINGER_INPUT, String.valueOf(notificationLinger));
+            }
+
+            if (sosMaxResumeAge < 0) {
+                throw invalidParameterValue(SOS_MAX_RESUME_AGE_INPUT, String.valueOf(sosMaxResumeAge));
+            }
+
+            if (notificationLanes < 1 || notificationLanes > MAX_NOTIFICATION_LANES) {
+                throw invalidParameterValue(NOTIFICATION_LANES_INPUT, String.valueOf(notificationLanes));
+            }
+
+            if (notificationQueueCapacity < 1 || notificationQueueCapacity > Integer.MAX_VALUE) {
+                throw invalidParameterValue(NOTIFICATION_QUEUE_CAPACITY_INPUT, String.valueOf(notificationQueueCapacity));
+            }
+
+            NotificationQueue.OverflowPolicy overflowPolicy;
+            try {
+                overflowPolicy = NotificationQueue.OverflowPolicy.fromString(notificationOverflowPolicy);
+            } catch (IllegalArgumentException ex) {
+                throw invalidParameterValue(NOTIFICATION_OVERFLOW_POLICY_INPUT, notificationOverflowPolicy);
+            }
+
+            // notifications dropped by the overflow policy are not inserted
+            NotificationOutbox outbox = notificationOutbox ? openOutbox(rssEndpoint, xmlRule) : null;
+            NotificationQueue notificationQueue = outbox == null
+                    ? new NotificationQueue((int) notificationQueueCapacity, overflowPolicy)
+                    : new NotificationQueue((int) notificationQueueCapacity, overflowPolicy,
+                                            n -> outbox.acknowledge(n.getSequence()));
+
+            RssFeeder feeder;
+            try {
+                feeder = new RssFeeder(xmlRule, rssEndpoint, this.notificationHttpClient,
+                                       notificationRetryPolicy, (int) notificationBatchSize,
+                                       notificationLinger, (int) notificationLanes,
+                                       notificationQueue, outbox);
+            } catch (IOException | RuntimeException ex) {
+                // the outbox is otherwise closed by the feeder
+                if (outbox != null) {
+                    outbox.close();
+                }
+                throw ex;
             }
 
             Thread supervisor = Thread.currentThread();
-            // SOS -> EPOS
-            Thread sesFeeder = new Thread(new SesFeeder(sosClient, samplingRate));
             // EPOS -> RSS
-            Thread rssFeeder = new Thread(new RssFeeder(xmlRule, rssEndpoint, this.httpClient));
+            Thread rssFeeder = new Thread(feeder);
 
             List<Throwable> uncaughtExceptions = Collections.synchronizedList(new LinkedList<>());
 
@@ -115,59 +299,38 @@ public class EventingProcess extends ConvenientAbstractAlgorithm {
             };
 
             rssFeeder.setUncaughtExceptionHandler(eh);
-            sesFeeder.setUncaughtExceptionHandler(eh);
-
             rssFeeder.start();
-            sesFeeder.start();
 
-            if (runtime > 0) {
-                // we have a limited live span, so sleep for
-                // that time and interrupt the workers
-                try {
-                    try {
-                        Thread.sleep(runtime);
-                    } catch (InterruptedException ex) {
-                        LOG.debug(Thread.currentThread() + " interrupted", ex);
-                        // reset the interrupted state, the workers will be
-                        // interrupted in the finally clause
-                        Thread.currentThread().interrupt();
-                    }
-                } finally {
-                    // kill the workers
-                    sesFeeder.interrupt();
-                    rssFeeder.interrupt();
-                    try {
-                        // wait till both workers are done
-                        sesFeeder.join();
-                        rssFeeder.join();
-                    } catch (InterruptedException ex) {
-                        LOG.debug(Thread.currentThread() + " interrupted", ex);
-                        // reset the interrupted state
-                        Thread.currentThread().interrupt();
-                    }
+            // SOS -> EPOS, shared with all processes requesting the same
+            // observations or receiving pushed observations
+            try (Closeable subscription = push
+                    ? ObservationPushService.getInstance().subscribe(SesFeeder.EPOS_ENGINE)
+                    : SosPollingService.getInstance().subscribe(sosClient, schedule, sosRetryPolicy,
+                                                                sosMaxResumeAge, SesFeeder.EPOS_ENGINE,
+                                                                e -> eh.uncaughtException(null, e))) {
+                if (runtime > 0) {
+                    // we have a limited live span, so sleep for
+                    // that time and interrupt the workers
+                    Thread.sleep(runtime);
+                } else {
+                    // we're running forever, so were just blocking
+                    rssFeeder.join();
                 }
-            } else {
-                // we're running forever, so were just blocking
+            } catch (InterruptedException ex) {
+                LOG.debug(Thread.currentThread() + " interrupted", ex);
+                // reset the interrupted state, the workers will be
+                // interrupted in the finally clause
+                Thread.currentThread().interrupt();
+            } finally {
+                // kill the worker, the subscription is already closed
+                rssFeeder.interrupt();
                 try {
-                    sesFeeder.join();
+                    // wait till the worker is done
+                    rssFeeder.join();
                 } catch (InterruptedException ex) {
                     LOG.debug(Thread.currentThread() + " interrupted", ex);
-                    // make sure the workers will also be interrupted
-                    sesFeeder.interrupt();
-                    rssFeeder.interrupt();
                     // reset the interrupted state
                     Thread.currentThread().interrupt();
-                } finally {
-                    try {
-                        rssFeeder.join();
-                    } catch (InterruptedException ex) {
-                        LOG.debug(Thread.currentThread() + " interrupted", ex);
-                        // make sure the workers will also be interrupted
-                        sesFeeder.interrupt();
-                        rssFeeder.interrupt();
-                        // reset the interrupted state
-                        Thread.currentThread().interrupt();
-                    }
                 }
             }
 
@@ -181,12 +344,32 @@ public class EventingProcess extends ConvenientAbstractAlgorithm {
             }
 
             return createResultMap(rssEndpoint);
-        } catch (URISyntaxException| MalformedURLException e) {
+        } catch (URISyntaxException | IOException e) {
             LOG.error(e.getMessage(), e);
             throw unknownError(e);
         }
     }
 
+    /**
+     * Open the outbox of the notifications of the rule to the endpoint.
+     *
+     * @param rssEndpoint the RSS endpoint
+     * @param xmlRule     the rule
+     *
+     * @return the outbox or {@code null} if it can not be opened, e.g.
+     *         because no {@linkplain StorageDirectory storage directory} is
+     *         configured
+     */
+    private static NotificationOutbox openOutbox(URI rssEndpoint, XmlObject xmlRule) {
+        String key = rssEndpoint + "\n" + xmlRule.xmlText();
+        try {
+            return NotificationOutbox.open(key);
+        } catch (IOException ex) {
+            LOG.warn("Can not open notification outbox, notifications are not persisted", ex);
+            return null;
+        }
+    }
+
     /**
      * Creates the result map of this process.
      *
@@ -207,11 +390,30 @@ public class EventingProcess extends ConvenientAbstractAlgorithm {
             case POX_GET_OBSERVATION_TEMPLATE_INPUT:
                 return GenericXMLDataBinding.class;
             case KVP_GET_OBSERVATION_TEMPLATE_INPUT:
+            case KVP_GET_RESULT_TEMPLATE_INPUT:
             case SOS_ENDPOINT_INPUT:
             case RSS_ENDPOINT_INPUT:
                 return LiteralAnyURIBinding.class;
+            case SOS_HEDGING_INPUT:
+            case NOTIFICATION_OUTBOX_INPUT:
+                return LiteralBooleanBinding.class;
+            case RESPONSE_ENCODING_INPUT:
+            case INGESTION_INPUT:
+            case NOTIFICATION_OVERFLOW_POLICY_INPUT:
+                return LiteralStringBinding.class;
             case RUNTIME_INPUT:
             case SAMPLING_RATE_INPUT:
+            case MIN_SAMPLING_RATE_INPUT:
+            case MAX_SAMPLING_RATE_INPUT:
+            case SAMPLING_JITTER_INPUT:
+            case REQUEST_SHARDS_INPUT:
+            case SOS_RETRY_ATTEMPTS_INPUT:
+            case SOS_MAX_RESUME_AGE_INPUT:
+            case NOTIFICATION_RETRY_ATTEMPTS_INPUT:
+            case NOTIFICATION_BATCH_SIZE_INPUT:
+            case NOTIFICATION_LINGER_INPUT:
+            case NOTIFICATION_LANES_INPUT:
+            case NOTIFICATION_QUEUE_CAPACITY_INPUT:
                 return LiteralLongBinding.class;
             default:
                 return null;
@@ -229,17 +431,37 @@ public class EventingProcess extends ConvenientAbstractAlgorithm {
     }
 
 
+    /**
+     * Creates a {@code RetryPolicy} with the default delays.
+     *
+     * @param inputId     the id of the input
+     * @param maxAttempts the maximum number of attempts
+     *
+     * @return the retry policy
+     *
+     * @throws ExceptionReport if the number of attempts is invalid
+     */
+    private static RetryPolicy createRetryPolicy(String inputId, long maxAttempts)
+            throws ExceptionReport {
+        if (maxAttempts < 1 || maxAttempts > Integer.MAX_VALUE) {
+            throw invalidParameterValue(inputId, String.valueOf(maxAttempts));
+        }
+        return RetryPolicy.withMaxAttempts((int) maxAttempts);
+    }
+
     /**
      * Creates an {@code ExceptionReport} describing that either a KVP or POX
-     * {@code GetObservation} template has to be supplied.
+     * {@code GetObservation} template or a KVP {@code GetResult} template has
+     * to be supplied.
      *
      * @return the exception report
      */
     private static ExceptionReport missingRequestTemplateParameter() {
         return new ExceptionReport(String
-                .format("Either %s or %s have to be provided",
+                .format("Either %s, %s or %s have to be provided",
                         KVP_GET_OBSERVATION_TEMPLATE_INPUT,
-                        POX_GET_OBSERVATION_TEMPLATE_INPUT),
+                        POX_GET_OBSERVATION_TEMPLATE_INPUT,
+                        KVP_GET_RESULT_TEMPLATE_INPUT),
                                    ExceptionReport.MISSING_PARAMETER_VALUE);
     }
 }
@@ -0,0 +1,80 @@
+package org.n52.wps.extension;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xmlbeans.XmlException;
+
+import com.siemens.ct.exi.EXIFactory;
+import com.siemens.ct.exi.api.stax.StAXDecoder;
+import com.siemens.ct.exi.exceptions.EXIException;
+import com.siemens.ct.exi.helpers.DefaultEXIFactory;
+
+/**
+ * {@code GetObservationResponseReader} that decodes EXI (Efficient XML
+ * Interchange) encoded responses directly into StAX events. As a server may
+ * ignore the requested encoding, the first bytes of the response are
+ * inspected and text XML responses are read as usual.
+ */
+public class ExiGetObservationResponseReader extends GetObservationResponseReader {
+    /**
+     * The media type of EXI documents.
+     */
+    public static final String EXI_MEDIA_TYPE = "application/exi";
+    private static final int COOKIE_LENGTH = 4;
+    private final EXIFactory factory = DefaultEXIFactory.newInstance();
+
+    @Override
+    protected XMLStreamReader createReader(InputStream in)
+            throws XmlException, IOException {
+        InputStream stream = in.markSupported() ? in : new BufferedInputStream(in);
+        try {
+            if (!isExi(stream)) {
+                return super.createReader(stream);
+            }
+            StAXDecoder decoder = new StAXDecoder(this.factory);
+            decoder.setInputStream(stream);
+            return decoder;
+        } catch (EXIException ex) {
+            throw new XmlException("Invalid EXI stream", ex);
+        }
+    }
+
+    /**
+     * Checks if {@code in} starts with an EXI cookie ({@code $EXI}) or the
+     * distinguishing bits of an EXI header ({@code 10}). Text XML starts with
+     * {@code <}, whitespace or a byte order mark, which all differ from the
+     * distinguishing bits.
+     *
+     * @param in the stream supporting {@link InputStream#mark(int)}
+     *
+     * @return if the stream is EXI encoded
+     *
+     * @throws IOException if reading the stream fails
+     */
+    static boolean isExi(InputStream in) throws IOException {
+        byte[] head = new byte[COOKIE_LENGTH];
+        in.mark(COOKIE_LENGTH);
+        int length = 0;
+        try {
+            int read;
+            while (length < COOKIE_LENGTH &&
+                   (read = in.read(head, length, COOKIE_LENGTH - length)) > 0) {
+                length += read;
+            }
+        } finally {
+            in.reset();
+        }
+        if (length == 0) {
+            return false;
+        }
+        if (length == COOKIE_LENGTH && head[0] == '$' && head[1] == 'E' &&
+            head[2] == 'X' && head[3] == 'I') {
+            return true;
+        }
+        return (head[0] & 0xC0) == 0x80;
+    }
+}
@@ -0,0 +1,227 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import net.opengis.om.x20.OMObservationDocument;
+import net.opengis.om.x20.OMObservationType;
+
+import org.apache.xmlbeans.XmlException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.transform.TransformationException;
+
+/**
+ * Streaming reader for {@code GetObservationResponse} documents. Instead of
+ * materializing the whole response as a XmlBeans document, every
+ * {@code om:OM_Observation} is parsed on its own as soon as it is read from the
+ * stream and handed to a consumer.
+ */
+public class GetObservationResponseReader {
+    private static final Logger LOG = LoggerFactory.getLogger(GetObservationResponseReader.class);
+    public static final String NS_OM_20 = "http://www.opengis.net/om/2.0";
+    public static final String NS_SOS_20 = "http://www.opengis.net/sos/2.0";
+    public static final QName QN_OM_OBSERVATION = new QName(NS_OM_20, "OM_Observation");
+    public static final QName QN_GET_OBSERVATION_RESPONSE = new QName(NS_SOS_20, "GetObservationResponse");
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newFactory();
+
+    /**
+     * Read the {@code GetObservationResponse} from {@code in} and supply every
+     * contained observation to {@code consumer}.
+     *
+     * @param in       the stream to read from (will not be closed)
+     * @param consumer the consumer of the observations
+     *
+     * @return the number of observations read
+     *
+     * @throws XmlException if the response is not a valid
+     *                      {@code GetObservationResponse}
+     * @throws IOException  if reading from the stream fails
+     */
+    public int read(InputStream in, Consumer<? super OMObservationType> consumer)
+            throws XmlException, IOException {
+        XMLStreamReader reader = createReader(in);
+        try {
+            checkDocumentElement(reader);
+            int count = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+                    QN_OM_OBSERVATION.equals(reader.getName())) {
+                    // XmlBeans will consume the events up to the
+                    // matching end element of the observation
+                    consumer.accept(OMObservationDocument.Factory.parse(reader)
+                            .getOMObservation());
+                    ++count;
+                }
+            }
+            return count;
+        } catch (XMLStreamException ex) {
+            throw convert(ex);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Read the {@code GetObservationResponse} from {@code in} and supply an
+     * event for every contained observation to {@code consumer}. The events
+     * are created by a {@link ObservationEventParser} without creating
+     * intermediate XmlBeans objects. Observations that can not be transformed
+     * are logged and skipped.
+     *
+     * @param in       the stream to read from (will not be closed)
+     * @param consumer the consumer of the events
+     *
+     * @return the number of observations read
+     *
+     * @throws XmlException if the response is not a valid
+     *                      {@code GetObservationResponse}
+     * @throws IOException  if reading from the stream fails
+     */
+    public int readEvents(InputStream in, Consumer<? super EposEvent> consumer)
+            throws XmlException, IOException {
+        XMLStreamReader reader = createReader(in);
+        try {
+            checkDocumentElement(reader);
+            Map<String, String> namespaces = new HashMap<>();
+            ObservationEventParser parser = new ObservationEventParser(namespaces);
+            addNamespaces(reader, namespaces);
+            if (QN_OM_OBSERVATION.equals(reader.getName())) {
+                // a single observation as the document element
+                readEvent(reader, parser, consumer);
+                return 1;
+            }
+            int count = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    if (QN_OM_OBSERVATION.equals(reader.getName())) {
+                        ++count;
+                        readEvent(reader, parser, consumer);
+                    } else {
+                        addNamespaces(reader, namespaces);
+                    }
+                }
+            }
+            return count;
+        } catch (XMLStreamException ex) {
+            throw convert(ex);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Transform the observation {@code reader} is positioned on and supply
+     * the event to {@code consumer}. Observations that can not be transformed
+     * are logged and skipped.
+     *
+     * @param reader   the reader positioned on a {@code om:OM_Observation}
+     * @param parser   the parser
+     * @param consumer the consumer of the event
+     *
+     * @throws XMLStreamException if the stream can not be read
+     */
+    private static void readEvent(XMLStreamReader reader,
+                                  ObservationEventParser parser,
+                                  Consumer<? super EposEvent> consumer)
+            throws XMLStreamException {
+        try {
+            consumer.accept(parser.parse(reader));
+        } catch (XmlException ex) {
+            LOG.error("XmlException", ex);
+        } catch (TransformationException ex) {
+            LOG.error("TransformationException", ex);
+        }
+    }
+
+    /**
+     * Add the namespace declarations of the current element to
+     * {@code namespaces}.
+     *
+     * @param reader     the reader positioned on a start element
+     * @param namespaces the namespace declarations
+     */
+    private static void addNamespaces(XMLStreamReader reader,
+                                      Map<String, String> namespaces) {
+        for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+            String prefix = reader.getNamespacePrefix(i);
+            namespaces.put(prefix == null ? "" : prefix, reader.getNamespaceURI(i));
+        }
+    }
+
+    /**
+     * Create a new {@code XMLStreamReader} for the stream.
+     *
+     * @param in the stream
+     *
+     * @return the reader
+     *
+     * @throws XmlException if the reader could not be created
+     * @throws IOException  if reading from the stream fails
+     */
+    protected XMLStreamReader createReader(InputStream in)
+            throws XmlException, IOException {
+        try {
+            return FACTORY.createXMLStreamReader(in);
+        } catch (XMLStreamException ex) {
+            throw new XmlException(ex);
+        }
+    }
+
+    /**
+     * Advance {@code reader} to the document element and check that it is a
+     * {@code GetObservationResponse}.
+     *
+     * @param reader the reader
+     *
+     * @throws XMLStreamException if the stream can not be read
+     * @throws XmlException       if the document element is unexpected (e.g.
+     *                            an exception report)
+     */
+    protected void checkDocumentElement(XMLStreamReader reader)
+            throws XMLStreamException, XmlException {
+        reader.nextTag();
+        if (!QN_GET_OBSERVATION_RESPONSE.equals(reader.getName())) {
+            throw new XmlException(String.format(
+                    "Unexpected document element: %s", reader.getName()));
+        }
+    }
+
+    /**
+     * Convert a {@code XMLStreamException} into an {@code IOException} if it
+     * was caused by the underlying stream or else into a
+     * {@code XmlException}.
+     *
+     * @param ex the exception
+     *
+     * @return the converted exception
+     *
+     * @throws IOException if {@code ex} was caused by the underlying stream
+     */
+    protected static XmlException convert(XMLStreamException ex)
+            throws IOException {
+        if (ex.getNestedException() instanceof IOException) {
+            throw (IOException) ex.getNestedException();
+        }
+        return new XmlException(ex);
+    }
+
+    private static void close(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException ex) {
+            // ignore, the stream is closed by the caller
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.apache.xmlbeans.XmlException;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.epos.event.EposEvent;
+
+/**
+ * {@code SosClient} that hedges slow requests for events: if a request takes
+ * longer than the 95th percentile of the recent latencies, a second identical
+ * request is fired and the first response to complete is used. The events of
+ * a request are streamed to the consumer until the hedge fires; as only one
+ * of the responses may be delivered, the events of both requests are
+ * collected from then on and supplied to the consumer once one of them
+ * completed. Requests that already streamed events are not hedged, as the
+ * events can not be revoked. Until enough latencies are recorded, requests
+ * are not hedged at all.
+ */
+public class HedgedSosClient implements SosClient {
+    private static final Logger LOG = LoggerFactory.getLogger(HedgedSosClient.class);
+    private static final double PERCENTILE = 0.95d;
+    private static final int LATENCY_SAMPLES = 100;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private final SosClient delegate;
+    private final Executor executor;
+    private final LatencyTracker latencies;
+
+    /**
+     * Creates a new {@code HedgedSosClient}.
+     *
+     * @param delegate the client to hedge
+     * @param executor the executor to run the requests; it must not be used
+     *                 by the delegate itself
+     */
+    public HedgedSosClient(SosClient delegate, Executor executor) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.executor = Objects.requireNonNull(executor);
+        this.latencies = new LatencyTracker(LATENCY_SAMPLES, MIN_LATENCY_SAMPLES);
+    }
+
+    @Override
+    public int getEvents(DateTime begin, DateTime end,
+                         Consumer<? super EposEvent> consumer)
+            throws XmlException, IOException {
+        long hedgeDelay = this.latencies.getPercentile(PERCENTILE);
+        if (hedgeDelay < 0) {
+            long start = System.currentTimeMillis();
+            int received = this.delegate.getEvents(begin, end, consumer);
+            this.latencies.record(System.currentTimeMillis() - start);
+            return received;
+        }
+        CompletionService<Result> completion = new ExecutorCompletionService<>(this.executor);
+        List<Future<Result>> futures = new ArrayList<>(2);
+        Relay primary = Relay.streaming(consumer);
+        futures.add(completion.submit(() -> request(begin, end, primary)));
+        try {
+            Future<Result> done = completion.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                if (primary.startBuffering()) {
+                    LOG.debug("Hedging request after {} ms", hedgeDelay);
+                    futures.add(completion.submit(() -> request(begin, end, Relay.buffering())));
+                }
+                done = completion.take();
+            }
+            Throwable failure;
+            try {
+                return deliver(done.get(), consumer);
+            } catch (ExecutionException ex) {
+                failure = ex.getCause();
+            }
+            if (futures.size() > 1) {
+                // the other request may still succeed
+                try {
+                    return deliver(completion.take().get(), consumer);
+                } catch (ExecutionException ex) {
+                    LOG.debug("Hedged request failed", ex.getCause());
+                }
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof XmlException) {
+                throw (XmlException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else {
+                throw (Error) failure;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", ex);
+        } finally {
+            // the consumer must not be called after we returned
+            primary.close();
+            futures.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private static int deliver(Result result, Consumer<? super EposEvent> consumer) {
+        result.relay.flush(consumer);
+        return result.received;
+    }
+
+    private Result request(DateTime begin, DateTime end, Relay relay)
+            throws XmlException, IOException {
+        long start = System.currentTimeMillis();
+        int received = this.delegate.getEvents(begin, end, relay);
+        this.latencies.record(System.currentTimeMillis() - start);
+        return new Result(received, relay);
+    }
+
+    @Override
+    public Object getRequestKey() {
+        return this.delegate.getRequestKey();
+    }
+
+    @Override
+    public List<SosClient> split(int shards) {
+        return this.delegate.split(shards).stream()
+                .map(shard -> new HedgedSosClient(shard, this.executor))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The result of a single request.
+     */
+    private static class Result {
+        private final int received;
+        private final Relay relay;
+
+        Result(int received, Relay relay) {
+            this.received = received;
+            this.relay = relay;
+        }
+    }
+
+    /**
+     * Passes the events of a request to the consumer or collects them, if
+     * the request was hedged.
+     */
+    private static class Relay implements Consumer<EposEvent> {
+        private final Consumer<? super EposEvent> consumer;
+        private List<EposEvent> buffer;
+        private boolean streamed;
+        private boolean closed;
+
+        private Relay(Consumer<? super EposEvent> consumer,
+                      List<EposEvent> buffer) {
+            this.consumer = consumer;
+            this.buffer = buffer;
+        }
+
+        static Relay streaming(Consumer<? super EposEvent> consumer) {
+            return new Relay(Objects.requireNonNull(consumer), null);
+        }
+
+        static Relay buffering() {
+            return new Relay(null, new LinkedList<>());
+        }
+
+        @Override
+        public synchronized void accept(EposEvent event) {
+            if (this.buffer != null) {
+                this.buffer.add(event);
+            } else if (!this.closed) {
+                this.streamed = true;
+                this.consumer.accept(event);
+            }
+        }
+
+        /**
+         * Collect the following events instead of passing them on.
+         *
+         * @return {@code false} if events were already passed on
+         */
+        synchronized boolean startBuffering() {
+            if (this.streamed) {
+                return false;
+            }
+            if (this.buffer == null) {
+                this.buffer = new LinkedList<>();
+            }
+            return true;
+        }
+
+        /**
+         * Supply the collected events to {@code target}.
+         *
+         * @param target the consumer
+         */
+        synchronized void flush(Consumer<? super EposEvent> target) {
+            if (this.buffer != null) {
+                this.buffer.forEach(target);
+                this.buffer.clear();
+            }
+        }
+
+        /**
+         * Stop passing on events.
+         */
+        synchronized void close() {
+            this.closed = true;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.n52.wps.extension;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -42,6 +43,20 @@ public interface HttpClient {
     InputStream get(URL url)
             throws IOException;
 
+    /**
+     * Request {@code url} using HTTP {@code GET} accepting the specified media
+     * types and return the response as a stream.
+     *
+     * @param url    the request
+     * @param accept the value of the {@code Accept} header
+     *
+     * @return the response stream
+     *
+     * @throws IOException if the HTTP call fails
+     */
+    InputStream get(URL url, String accept)
+            throws IOException;
+
     /**
      * Initiate a HTTP {@code POST} to endpoint using the specified content type
      * and return a stream to supply the request.
@@ -70,4 +85,64 @@ public interface HttpClient {
      */
     InputStream post(URL url, String contentType, String request)
             throws IOException;
+
+    /**
+     * Initiate a HTTP {@code POST} to endpoint using the specified content type
+     * and send the specified encoded request.
+     *
+     * @param url         the endpoint
+     * @param contentType the content type
+     * @param request     the encoded request; it is not retained after this
+     *                    method returned
+     *
+     * @return the response stream
+     *
+     * @throws IOException if the HTTP call fails
+     */
+    InputStream post(URL url, String contentType, byte[] request)
+            throws IOException;
+
+    /**
+     * Initiate a HTTP {@code POST} to endpoint using the specified content type
+     * and send the specified encoded request accepting the specified media
+     * types.
+     *
+     * @param url         the endpoint
+     * @param contentType the content type
+     * @param accept      the value of the {@code Accept} header
+     * @param request     the encoded request; it is not retained after this
+     *                    method returned
+     *
+     * @return the response stream
+     *
+     * @throws IOException if the HTTP call fails
+     */
+    InputStream post(URL url, String contentType, String accept,
+                     byte[] request)
+            throws IOException;
+
+    /**
+     * Initiate a HTTP {@code POST} to endpoint using the specified content type
+     * and stream the request written by {@code request} accepting the
+     * specified media types. The default implementation buffers the request.
+     *
+     * @param url         the endpoint
+     * @param contentType the content type
+     * @param accept      the value of the {@code Accept} header (may be
+     *                    {@code null})
+     * @param request     the writer of the request
+     *
+     * @return the response stream
+     *
+     * @throws IOException if the HTTP call fails or the request can not be
+     *                     written
+     */
+    default InputStream post(URL url, String contentType, String accept,
+                             BodyWriter request)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.writeTo(out);
+        return post(url, contentType, accept, out.toByteArray());
+    }
+
 }
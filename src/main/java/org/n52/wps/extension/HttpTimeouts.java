@@ -0,0 +1,157 @@
+package org.n52.wps.extension;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Connect and read timeouts of outbound HTTP calls. Besides the default
+ * timeouts, endpoints (identified by their host and port) may have their own
+ * timeouts.
+ * <p>
+ * The {@linkplain #fromSystemProperties() default configuration} is read
+ * from the system properties {@value #CONNECT_TIMEOUT_PROPERTY},
+ * {@value #READ_TIMEOUT_PROPERTY} (both in ms) and
+ * {@value #ENDPOINT_TIMEOUTS_PROPERTY}, a comma separated list of
+ * {@code host[:port]=connect/read} entries.
+ */
+public class HttpTimeouts {
+    public static final String CONNECT_TIMEOUT_PROPERTY = "org.n52.wps.extension.http.connect-timeout";
+    public static final String READ_TIMEOUT_PROPERTY = "org.n52.wps.extension.http.read-timeout";
+    public static final String ENDPOINT_TIMEOUTS_PROPERTY = "org.n52.wps.extension.http.endpoint-timeouts";
+    public static final int DEFAULT_CONNECT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+    public static final int DEFAULT_READ_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(60);
+    private final Timeouts defaults;
+    private final Map<String, Timeouts> endpoints;
+
+    /**
+     * Create a new {@code HttpTimeouts} without endpoint specific timeouts.
+     *
+     * @param connectTimeout the default connect timeout (in ms)
+     * @param readTimeout    the default read timeout (in ms)
+     */
+    public HttpTimeouts(int connectTimeout, int readTimeout) {
+        this(new Timeouts(connectTimeout, readTimeout), Collections.emptyMap());
+    }
+
+    private HttpTimeouts(Timeouts defaults, Map<String, Timeouts> endpoints) {
+        this.defaults = Objects.requireNonNull(defaults);
+        this.endpoints = Collections.unmodifiableMap(endpoints);
+    }
+
+    /**
+     * Create a copy of these timeouts with specific timeouts for the
+     * endpoint.
+     *
+     * @param authority      the host and optional port of the endpoint
+     * @param connectTimeout the connect timeout (in ms)
+     * @param readTimeout    the read timeout (in ms)
+     *
+     * @return the new timeouts
+     */
+    public HttpTimeouts withEndpoint(String authority, int connectTimeout,
+                                     int readTimeout) {
+        Map<String, Timeouts> copy = new HashMap<>(this.endpoints);
+        copy.put(authority.toLowerCase(Locale.ROOT),
+                 new Timeouts(connectTimeout, readTimeout));
+        return new HttpTimeouts(this.defaults, copy);
+    }
+
+    /**
+     * Get the connect timeout for the endpoint.
+     *
+     * @param url the endpoint
+     *
+     * @return the timeout in ms ({@code 0} is infinite)
+     */
+    public int getConnectTimeout(URL url) {
+        return get(url).connect;
+    }
+
+    /**
+     * Get the read timeout for the endpoint.
+     *
+     * @param url the endpoint
+     *
+     * @return the timeout in ms ({@code 0} is infinite)
+     */
+    public int getReadTimeout(URL url) {
+        return get(url).read;
+    }
+
+    private Timeouts get(URL url) {
+        if (!this.endpoints.isEmpty()) {
+            String host = url.getHost().toLowerCase(Locale.ROOT);
+            int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+            Timeouts timeouts = this.endpoints.get(host + ":" + port);
+            if (timeouts == null) {
+                timeouts = this.endpoints.get(host);
+            }
+            if (timeouts != null) {
+                return timeouts;
+            }
+        }
+        return this.defaults;
+    }
+
+    /**
+     * Create the timeouts configured by the system properties.
+     *
+     * @return the timeouts
+     *
+     * @throws IllegalArgumentException if the endpoint timeouts are malformed
+     */
+    public static HttpTimeouts fromSystemProperties() {
+        HttpTimeouts timeouts = new HttpTimeouts(
+                Integer.getInteger(CONNECT_TIMEOUT_PROPERTY, DEFAULT_CONNECT_TIMEOUT),
+                Integer.getInteger(READ_TIMEOUT_PROPERTY, DEFAULT_READ_TIMEOUT));
+        String endpoints = System.getProperty(ENDPOINT_TIMEOUTS_PROPERTY, "");
+        for (String endpoint : endpoints.split(",")) {
+            if (endpoint.trim().isEmpty()) {
+                continue;
+            }
+            int eq = endpoint.indexOf('=');
+            int slash = endpoint.indexOf('/', eq);
+            if (eq < 0 || slash < 0) {
+                throw new IllegalArgumentException("Invalid endpoint timeout: " + endpoint);
+            }
+            timeouts = timeouts.withEndpoint(
+                    endpoint.substring(0, eq).trim(),
+                    Integer.parseInt(endpoint.substring(eq + 1, slash).trim()),
+                    Integer.parseInt(endpoint.substring(slash + 1).trim()));
+        }
+        return timeouts;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("defaults", this.defaults)
+                .add("endpoints", this.endpoints)
+                .toString();
+    }
+
+    private static class Timeouts {
+        private final int connect;
+        private final int read;
+
+        Timeouts(int connect, int read) {
+            if (connect < 0 || read < 0) {
+                throw new IllegalArgumentException("Negative timeout");
+            }
+            this.connect = connect;
+            this.read = read;
+        }
+
+        @Override
+        public String toString() {
+            return this.connect + "/" + this.read;
+        }
+    }
+}
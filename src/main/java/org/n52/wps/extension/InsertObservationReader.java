@@ -0,0 +1,36 @@
+package org.n52.wps.extension;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xmlbeans.XmlException;
+
+/**
+ * Streaming reader for pushed observations. Besides
+ * {@code GetObservationResponse} documents, it accepts
+ * {@code InsertObservation} requests and single {@code om:OM_Observation}
+ * documents (e.g. forwarded by a SOS or sent by the sensor itself).
+ */
+public class InsertObservationReader extends GetObservationResponseReader {
+    public static final QName QN_INSERT_OBSERVATION = new QName(NS_SOS_20, "InsertObservation");
+    private static final Set<QName> DOCUMENT_ELEMENTS = Collections
+            .unmodifiableSet(new HashSet<>(Arrays.asList(QN_INSERT_OBSERVATION,
+                                                         QN_GET_OBSERVATION_RESPONSE,
+                                                         QN_OM_OBSERVATION)));
+
+    @Override
+    protected void checkDocumentElement(XMLStreamReader reader)
+            throws XMLStreamException, XmlException {
+        reader.nextTag();
+        if (!DOCUMENT_ELEMENTS.contains(reader.getName())) {
+            throw new XmlException(String.format(
+                    "Unexpected document element: %s", reader.getName()));
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming reader for {@code GetObservation} responses of the JSON binding
+ * of the 52&deg;North SOS. Every observation is converted to an event as soon
+ * as it is read from the stream; no document or XmlBeans object is created.
+ * <p>
+ * Only observations with a numeric result (measurements) can be converted;
+ * other observations are skipped.
+ */
+public class JsonObservationReader {
+    private static final Logger LOG = LoggerFactory.getLogger(JsonObservationReader.class);
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final DateTimeFormatter TIME_PARSER = ISODateTimeFormat.dateTimeParser();
+    private static final String OBSERVATIONS = "observations";
+    private static final String EXCEPTIONS = "exceptions";
+    private static final String PROCEDURE = "procedure";
+    private static final String OBSERVABLE_PROPERTY = "observableProperty";
+    private static final String OBSERVED_PROPERTY = "observedProperty";
+    private static final String FEATURE_OF_INTEREST = "featureOfInterest";
+    private static final String PHENOMENON_TIME = "phenomenonTime";
+    private static final String RESULT = "result";
+    private static final String IDENTIFIER = "identifier";
+    private static final String VALUE = "value";
+
+    /**
+     * Read the {@code GetObservation} response from {@code in} and supply an
+     * event for every contained measurement to {@code consumer}.
+     *
+     * @param in       the stream to read from (will not be closed)
+     * @param consumer the consumer of the events
+     *
+     * @return the number of events supplied to the consumer; skipped
+     *         observations are not counted
+     *
+     * @throws IOException if reading from the stream fails, the response is
+     *                     malformed or an exception report
+     */
+    public int readEvents(InputStream in, Consumer<? super EposEvent> consumer)
+            throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            int count = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (OBSERVATIONS.equals(name)) {
+                    expect(parser, token, JsonToken.START_ARRAY);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        EposEvent event = readObservation(parser);
+                        if (event != null) {
+                            consumer.accept(event);
+                            ++count;
+                        }
+                    }
+                } else if (EXCEPTIONS.equals(name)) {
+                    throw new IOException("SOS responded with an exception: " +
+                                          readTree(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Read an observation.
+     *
+     * @param parser the parser positioned on the start of the observation
+     *
+     * @return the event or {@code null} if the observation is not a
+     *         measurement
+     *
+     * @throws IOException if the observation can not be read
+     */
+    private EposEvent readObservation(JsonParser parser)
+            throws IOException {
+        String procedure = null;
+        String observedProperty = null;
+        String featureOfInterest = null;
+        long[] time = null;
+        Double value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (name) {
+                case PROCEDURE:
+                    procedure = readIdentifier(parser, token);
+                    break;
+                case OBSERVABLE_PROPERTY:
+                case OBSERVED_PROPERTY:
+                    observedProperty = readIdentifier(parser, token);
+                    break;
+                case FEATURE_OF_INTEREST:
+                    featureOfInterest = readIdentifier(parser, token);
+                    break;
+                case PHENOMENON_TIME:
+                    time = readTime(parser, token);
+                    break;
+                case RESULT:
+                    value = readResult(parser, token);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (value == null || time == null) {
+            LOG.debug("Skipping non-measurement observation of {}", procedure);
+            return null;
+        }
+        MapEposEvent event = new MapEposEvent(time[0], time[1]);
+        event.setValue(MapEposEvent.SENSORID_KEY, procedure);
+        event.setValue(MapEposEvent.OBSERVED_PROPERTY_KEY, observedProperty);
+        if (featureOfInterest != null) {
+            event.setValue(MapEposEvent.FEATURE_TYPE_KEY, featureOfInterest);
+        }
+        event.setValue(MapEposEvent.DOUBLE_VALUE_KEY, value);
+        return event;
+    }
+
+    /**
+     * Read a reference that is either a string or an object with an
+     * {@code identifier} (which itself may be a string or an object with a
+     * {@code value}).
+     */
+    private static String readIdentifier(JsonParser parser, JsonToken token)
+            throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        } else if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String identifier = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (IDENTIFIER.equals(name) || (VALUE.equals(name) && identifier == null)) {
+                identifier = readIdentifier(parser, value);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return identifier;
+    }
+
+    private static long[] readTime(JsonParser parser, JsonToken token)
+            throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            long time = parseTime(parser);
+            return new long[] { time, time };
+        } else if (token == JsonToken.START_ARRAY) {
+            expect(parser, parser.nextToken(), JsonToken.VALUE_STRING);
+            long begin = parseTime(parser);
+            expect(parser, parser.nextToken(), JsonToken.VALUE_STRING);
+            long end = parseTime(parser);
+            expect(parser, parser.nextToken(), JsonToken.END_ARRAY);
+            return new long[] { begin, end };
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static Double readResult(JsonParser parser, JsonToken token)
+            throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_FLOAT ||
+            token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getDoubleValue();
+        } else if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        Double value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken t = parser.nextToken();
+            if (VALUE.equals(name)) {
+                value = readResult(parser, t);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    private static long parseTime(JsonParser parser) throws IOException {
+        String time = parser.getText();
+        try {
+            return TIME_PARSER.parseMillis(time.trim());
+        } catch (IllegalArgumentException ex) {
+            throw new JsonParseException("Invalid time: " + time,
+                                         parser.getCurrentLocation(), ex);
+        }
+    }
+
+    private static String readTree(JsonParser parser) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int depth = 0;
+        JsonToken token = parser.getCurrentToken();
+        do {
+            if (token.isStructStart()) {
+                ++depth;
+            } else if (token.isStructEnd()) {
+                --depth;
+            } else if (token.isScalarValue()) {
+                builder.append(parser.getText()).append(' ');
+            }
+        } while (depth > 0 && (token = parser.nextToken()) != null);
+        return builder.toString().trim();
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual,
+                               JsonToken expected)
+            throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(String.format(
+                    "Expected %s but got %s", expected, actual),
+                                         parser.getCurrentLocation());
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import net.opengis.sos.x20.GetObservationDocument;
+import net.opengis.sos.x20.GetObservationType;
+
+import org.apache.commons.httpclient.URIException;
+import org.apache.commons.httpclient.util.URIUtil;
+import org.apache.xmlbeans.XmlException;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.epos.event.EposEvent;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Implementation of {@code SosClient} using the JSON binding of the
+ * 52&deg;North SOS. The request is compiled once into a
+ * {@link RequestTemplate} and the responses are parsed by a streaming
+ * {@link JsonObservationReader}, so polling does not involve XmlBeans at all.
+ * As a consequence the client only supplies events; it is not an
+ * {@link ObservationSosClient}.
+ */
+public class JsonSosClient implements SosClient {
+    private static final Logger LOG = LoggerFactory.getLogger(JsonSosClient.class);
+    private static final String MEDIA_TYPE = "application/json";
+    private static final String BEGIN_SLOT = "@@begin@@";
+    private static final String END_SLOT = "@@end@@";
+    private static final String PROCEDURE = "procedure";
+    private static final String OFFERING = "offering";
+    private static final String OBSERVED_PROPERTY = "observedProperty";
+    private static final String FEATURE_OF_INTEREST = "featureOfInterest";
+    private static final List<String> PARAMETERS = Arrays.asList(
+            PROCEDURE, OFFERING, OBSERVED_PROPERTY, FEATURE_OF_INTEREST);
+    private static final List<String> SHARD_PARAMETERS = Arrays.asList(
+            PROCEDURE, OFFERING, FEATURE_OF_INTEREST);
+    private static final Pattern VALUE_SEPARATOR = Pattern.compile(",|%2C", Pattern.CASE_INSENSITIVE);
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private final HttpClient client;
+    private final URL endpoint;
+    private final Map<String, List<String>> parameters;
+    private final RequestTemplate request;
+    private final JsonObservationReader responseReader = new JsonObservationReader();
+
+    /**
+     * Create a new {@code JsonSosClient}.
+     *
+     * @param client     the HTTP client to use
+     * @param endpoint   the endpoint of the JSON binding
+     * @param parameters the values of the {@code procedure},
+     *                   {@code offering}, {@code observedProperty} and
+     *                   {@code featureOfInterest} parameters; other
+     *                   parameters are ignored
+     */
+    public JsonSosClient(HttpClient client, URL endpoint,
+                         Map<String, List<String>> parameters) {
+        this.client = Objects.requireNonNull(client);
+        this.endpoint = Objects.requireNonNull(endpoint);
+        this.parameters = new LinkedHashMap<>(PARAMETERS.size());
+        // normalize the order, so that equivalent requests are equal
+        PARAMETERS.forEach(name -> {
+            List<String> values = new ArrayList<>(parameters
+                    .getOrDefault(name, Collections.emptyList()));
+            Collections.sort(values);
+            this.parameters.put(name, Collections.unmodifiableList(values));
+        });
+        this.request = compile(this.parameters);
+    }
+
+    /**
+     * Create a new {@code JsonSosClient} using the parameters of a KVP
+     * {@code GetObservation} request. The request is send to the URL of the
+     * KVP request without the query.
+     *
+     * @param client          the HTTP client to use
+     * @param requestTemplate the KVP request
+     *
+     * @return the client
+     */
+    public static JsonSosClient fromKvp(HttpClient client, URL requestTemplate) {
+        Map<String, List<String>> parameters = new LinkedHashMap<>();
+        String query = requestTemplate.getQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int eq = parameter.indexOf('=');
+                if (eq <= 0) {
+                    continue;
+                }
+                String name = parameter.substring(0, eq);
+                PARAMETERS.stream().filter(name::equalsIgnoreCase).findFirst()
+                        .ifPresent(p -> parameters.put(p, VALUE_SEPARATOR
+                                .splitAsStream(parameter.substring(eq + 1))
+                                .map(JsonSosClient::decode)
+                                .collect(Collectors.toList())));
+            }
+        }
+        String url = requestTemplate.toString();
+        int queryStart = url.indexOf('?');
+        try {
+            URL endpoint = queryStart < 0 ? requestTemplate
+                           : new URL(url.substring(0, queryStart));
+            return new JsonSosClient(client, endpoint, parameters);
+        } catch (MalformedURLException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    /**
+     * Create a new {@code JsonSosClient} using the parameters of a POX
+     * {@code GetObservation} request.
+     *
+     * @param client          the HTTP client to use
+     * @param requestTemplate the POX request
+     * @param endpoint        the endpoint of the JSON binding
+     *
+     * @return the client
+     */
+    public static JsonSosClient fromPox(HttpClient client,
+                                        GetObservationDocument requestTemplate,
+                                        URL endpoint) {
+        GetObservationType getObservation = requestTemplate.getGetObservation();
+        Map<String, List<String>> parameters = new LinkedHashMap<>();
+        parameters.put(PROCEDURE, Arrays.asList(getObservation.getProcedureArray()));
+        parameters.put(OFFERING, Arrays.asList(getObservation.getOfferingArray()));
+        parameters.put(OBSERVED_PROPERTY, Arrays.asList(getObservation.getObservedPropertyArray()));
+        parameters.put(FEATURE_OF_INTEREST, Arrays.asList(getObservation.getFeatureOfInterestArray()));
+        return new JsonSosClient(client, endpoint, parameters);
+    }
+
+    private static String decode(String value) {
+        try {
+            return URIUtil.decode(value);
+        } catch (URIException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    /**
+     * Compile the JSON {@code GetObservation} request with slots for the
+     * begin and end of the temporal filter.
+     *
+     * @param parameters the parameters
+     *
+     * @return the compiled request
+     */
+    private static RequestTemplate compile(Map<String, List<String>> parameters) {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator json = FACTORY.createGenerator(writer)) {
+            json.writeStartObject();
+            json.writeStringField("request", "GetObservation");
+            json.writeStringField("service", "SOS");
+            json.writeStringField("version", "2.0.0");
+            for (Map.Entry<String, List<String>> parameter : parameters.entrySet()) {
+                if (!parameter.getValue().isEmpty()) {
+                    json.writeArrayFieldStart(parameter.getKey());
+                    for (String value : parameter.getValue()) {
+                        json.writeString(value);
+                    }
+                    json.writeEndArray();
+                }
+            }
+            json.writeObjectFieldStart("temporalFilter");
+            json.writeObjectFieldStart("during");
+            json.writeStringField("ref", "om:phenomenonTime");
+            json.writeArrayFieldStart("value");
+            json.writeString(BEGIN_SLOT);
+            json.writeString(END_SLOT);
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndObject();
+            json.writeEndObject();
+        } catch (IOException ex) {
+            // can not happen using a StringWriter
+            throw new UncheckedIOException(ex);
+        }
+        return RequestTemplate.compile(writer.toString(), BEGIN_SLOT, END_SLOT);
+    }
+
+    @Override
+    public Object getRequestKey() {
+        return "JSON\n" + this.endpoint + "\n" + this.parameters;
+    }
+
+    @Override
+    public int getEvents(DateTime begin, DateTime end,
+                         Consumer<? super EposEvent> consumer)
+            throws XmlException, IOException {
+        // the per-thread buffer is posted synchronously and not retained
+        byte[] body = this.request.render(begin.getMillis(), end.getMillis());
+        LOG.info("Requesting observations from {} to {}", begin, end);
+        try (InputStream in = this.client.post(this.endpoint, MEDIA_TYPE, MEDIA_TYPE, body)) {
+            return this.responseReader.readEvents(in, consumer);
+        }
+    }
+
+    /**
+     * Split the request by the procedures, offerings or features of interest
+     * (whichever has the most values).
+     *
+     * @param shards the maximum number of shards
+     *
+     * @return the clients of the shards
+     */
+    @Override
+    public List<SosClient> split(int shards) {
+        String dimension = SHARD_PARAMETERS.stream()
+                .max(Comparator.comparingInt(p -> this.parameters.get(p).size()))
+                .get();
+        return ShardedSosClient.partition(this.parameters.get(dimension), shards)
+                .stream()
+                .map(partition -> {
+                    Map<String, List<String>> shard = new LinkedHashMap<>(this.parameters);
+                    shard.put(dimension, partition);
+                    return new JsonSosClient(this.client, this.endpoint, shard);
+                }).collect(Collectors.toList());
+    }
+}
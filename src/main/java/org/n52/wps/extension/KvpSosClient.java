@@ -4,38 +4,89 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.function.Consumer;
 
+import net.opengis.om.x20.OMObservationType;
 import net.opengis.sos.x20.GetObservationResponseDocument;
 
 import org.apache.commons.httpclient.URIException;
 import org.apache.commons.httpclient.util.URIUtil;
 import org.apache.xmlbeans.XmlException;
 import org.joda.time.DateTime;
-import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.n52.epos.event.EposEvent;
+
 /**
  * Implementation of {@code SosClient} using KVP.
  *
  * @author Christian Autermann
  */
-public class KvpSosClient implements SosClient {
+public class KvpSosClient implements ObservationSosClient {
 
     private static final Logger log = LoggerFactory.getLogger(KvpSosClient.class);
+    private static final List<String> SHARD_PARAMETERS
+            = Arrays.asList("procedure", "offering", "featureOfInterest");
+    private static final Pattern VALUE_SEPARATOR = Pattern.compile(",|%2C", Pattern.CASE_INSENSITIVE);
 
     private final HttpClient client;
     private final URL requestTemplate;
+    private final RequestTemplate request;
+    private final ResponseEncoding encoding;
+    private final GetObservationResponseReader responseReader;
 
     /**
-     * Create a new {@code KvpSosClient}.
+     * Create a new {@code KvpSosClient} requesting XML responses.
      * @param client the underlying HTTP client
      * @param requestTemplate the request template
      */
     public KvpSosClient(HttpClient client, URL requestTemplate) {
+        this(client, requestTemplate, ResponseEncoding.XML);
+    }
+
+    /**
+     * Create a new {@code KvpSosClient}.
+     * @param client the underlying HTTP client
+     * @param requestTemplate the request template
+     * @param encoding the requested encoding of streamed responses
+     */
+    public KvpSosClient(HttpClient client, URL requestTemplate,
+                        ResponseEncoding encoding) {
         this.client = Objects.requireNonNull(client);
         this.requestTemplate = Objects.requireNonNull(requestTemplate);
+        this.encoding = Objects.requireNonNull(encoding);
+        this.responseReader = encoding.createReader();
+        this.request = compile(requestTemplate);
+    }
+
+    @Override
+    public Object getRequestKey() {
+        return normalize(this.requestTemplate);
+    }
+
+    /**
+     * Normalize the order of the query parameters of {@code url}.
+     *
+     * @param url the URL
+     *
+     * @return the normalized URL
+     */
+    static String normalize(URL url) {
+        String query = url.getQuery();
+        if (query == null) {
+            return url.toString();
+        }
+        String[] parameters = query.split("&");
+        Arrays.sort(parameters);
+        String string = url.toString();
+        return string.substring(0, string.indexOf('?') + 1) + String.join("&", parameters);
     }
 
     @Override
@@ -48,7 +99,105 @@ public class KvpSosClient implements SosClient {
             try (InputStream in = this.client.get(url)) {
                 return GetObservationResponseDocument.Factory.parse(in);
             }
-        } catch (URIException | MalformedURLException ex) {
+        } catch (MalformedURLException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    @Override
+    public int getObservations(DateTime begin, DateTime end,
+                               Consumer<? super OMObservationType> consumer)
+            throws XmlException, IOException {
+        try {
+            URL url = createRequest(begin, end);
+            log.info("Requesting: {}", url);
+            try (InputStream in = this.client.get(url, this.encoding.getAccept())) {
+                return this.responseReader.read(in, consumer);
+            }
+        } catch (MalformedURLException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    @Override
+    public int getEvents(DateTime begin, DateTime end,
+                         Consumer<? super EposEvent> consumer)
+            throws XmlException, IOException {
+        try {
+            URL url = createRequest(begin, end);
+            log.info("Requesting: {}", url);
+            try (InputStream in = this.client.get(url, this.encoding.getAccept())) {
+                return this.responseReader.readEvents(in, consumer);
+            }
+        } catch (MalformedURLException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    /**
+     * Split the template by the procedures, offerings or features of interest
+     * (whichever has the most values).
+     *
+     * @param shards the maximum number of shards
+     *
+     * @return the clients of the shards
+     */
+    @Override
+    public List<SosClient> split(int shards) {
+        String url = this.requestTemplate.toString();
+        int queryStart = url.indexOf('?');
+        if (queryStart < 0) {
+            return ObservationSosClient.super.split(shards);
+        }
+        String[] parameters = url.substring(queryStart + 1).split("&");
+        int index = -1;
+        List<String> values = null;
+        for (int i = 0; i < parameters.length; ++i) {
+            int eq = parameters[i].indexOf('=');
+            if (eq > 0 && SHARD_PARAMETERS.stream().anyMatch(parameters[i]
+                    .substring(0, eq)::equalsIgnoreCase)) {
+                List<String> v = Arrays.asList(VALUE_SEPARATOR
+                        .split(parameters[i].substring(eq + 1)));
+                if (values == null || v.size() > values.size()) {
+                    values = v;
+                    index = i;
+                }
+            }
+        }
+        if (values == null) {
+            return ObservationSosClient.super.split(shards);
+        }
+        String name = parameters[index].substring(0, parameters[index].indexOf('=') + 1);
+        List<SosClient> clients = new ArrayList<>(shards);
+        for (List<String> partition : ShardedSosClient.partition(values, shards)) {
+            parameters[index] = name + String.join(",", partition);
+            try {
+                URL shard = new URL(url.substring(0, queryStart + 1) + String.join("&", parameters));
+                clients.add(new KvpSosClient(this.client, shard, this.encoding));
+            } catch (MalformedURLException ex) {
+                throw new Error(ex);
+            }
+        }
+        return clients;
+    }
+
+    /**
+     * Compile the request URL template with slots for the begin and end of
+     * the temporal filter.
+     *
+     * @param requestTemplate the request template
+     *
+     * @return the compiled template
+     */
+    private static RequestTemplate compile(URL requestTemplate) {
+        try {
+            String prefix = requestTemplate.toString() +
+                            "&namespaces=" + URIUtil.encodeQuery("xmlns(om,http://www.opengis.net/om/2.0)") +
+                            "&temporalFilter=" + URIUtil.encodeQuery("om:phenomenonTime,");
+            return new RequestTemplate(prefix.getBytes(StandardCharsets.UTF_8),
+                                       URIUtil.encodeQuery("/").getBytes(StandardCharsets.UTF_8),
+                                       new byte[0]);
+        } catch (URIException ex) {
             throw new Error(ex);
         }
     }
@@ -62,23 +211,12 @@ public class KvpSosClient implements SosClient {
      * @return the request URL
      *
      * @throws MalformedURLException if the URL generation fails
-     * @throws URIException          if the URL generation fails
      */
     private URL createRequest(DateTime begin, DateTime end)
-            throws MalformedURLException, URIException {
-        Objects.requireNonNull(begin);
-        Objects.requireNonNull(end);
-        StringBuilder builder = new StringBuilder();
-        builder.append(this.requestTemplate.toString());
-        builder.append("&namespaces=").append(URIUtil.encodeQuery("xmlns(om,http://www.opengis.net/om/2.0)"));
-        builder.append("&temporalFilter=");
-        String temporalFilter = "om:phenomenonTime," +
-                                ISODateTimeFormat.dateTime().print(begin) +
-                                "/" +
-                                ISODateTimeFormat.dateTime().print(end);
-        builder.append(URIUtil.encodeQuery(temporalFilter));
-        URL url = new URL(builder.toString());
-        return url;
+            throws MalformedURLException {
+        // the string is a copy of the per-thread buffer of the template, so
+        // the URL can be passed to other threads
+        return new URL(this.request.renderString(begin.getMillis(), end.getMillis()));
     }
 
 }
@@ -0,0 +1,62 @@
+package org.n52.wps.extension;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the latencies of the most recent calls to estimate percentiles.
+ */
+public class LatencyTracker {
+    private final long[] samples;
+    private final int minSamples;
+    private int count;
+    private int next;
+
+    /**
+     * Create a new {@code LatencyTracker}.
+     *
+     * @param size       the number of recent samples to keep
+     * @param minSamples the number of samples required to estimate a
+     *                   percentile
+     */
+    public LatencyTracker(int size, int minSamples) {
+        if (size < 1 || minSamples < 1 || minSamples > size) {
+            throw new IllegalArgumentException();
+        }
+        this.samples = new long[size];
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Record the latency of a call.
+     *
+     * @param latency the latency (in ms)
+     */
+    public synchronized void record(long latency) {
+        this.samples[this.next] = latency;
+        this.next = (this.next + 1) % this.samples.length;
+        if (this.count < this.samples.length) {
+            ++this.count;
+        }
+    }
+
+    /**
+     * Estimate the percentile of the recent latencies (nearest rank).
+     *
+     * @param percentile the percentile (in {@code (0, 1]})
+     *
+     * @return the latency (in ms) or {@code -1} if there are not enough
+     *         samples
+     */
+    public long getPercentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (this.count < this.minSamples) {
+                return -1L;
+            }
+            sorted = Arrays.copyOf(this.samples, this.count);
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.min(sorted.length, Math.max(rank, 1)) - 1];
+    }
+}
@@ -0,0 +1,106 @@
+package org.n52.wps.extension;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URL;
+
+import org.joda.time.DateTime;
+
+import org.n52.wps.extension.rss.NotificationRssFeedItem;
+
+/**
+ * Compact binary representation of notifications that are stored outside of
+ * the heap ({@linkplain NotificationQueue spilled} or
+ * {@linkplain NotificationOutbox persisted}). Optional fields are preceded by
+ * a flag indicating if they are present.
+ */
+final class NotificationCodec {
+    private NotificationCodec() {
+    }
+
+    /**
+     * Write the notification.
+     *
+     * @param out  the output
+     * @param item the notification
+     *
+     * @throws IOException if writing fails
+     */
+    static void write(DataOutput out, NotificationRssFeedItem item)
+            throws IOException {
+        out.writeUTF(item.getTitle());
+        out.writeUTF(item.getLink().toString());
+        out.writeUTF(item.getCategory());
+        out.writeUTF(item.getDescription());
+        out.writeLong(item.getDate().getMillis());
+        out.writeUTF(item.getGuid());
+        out.writeUTF(item.getProcedure());
+        out.writeUTF(item.getObservedProperty());
+        writeOptional(out, item.getFeatureOfInterest());
+        out.writeDouble(item.getUndershoot());
+        out.writeDouble(item.getOvershoot());
+        out.writeDouble(item.getValue());
+    }
+
+    /**
+     * Read a notification.
+     *
+     * @param in the input
+     *
+     * @return the notification
+     *
+     * @throws IOException if reading fails
+     */
+    static NotificationRssFeedItem read(DataInput in)
+            throws IOException {
+        String title = in.readUTF();
+        URL link = new URL(in.readUTF());
+        String category = in.readUTF();
+        String description = in.readUTF();
+        DateTime date = new DateTime(in.readLong());
+        String guid = in.readUTF();
+        String procedure = in.readUTF();
+        String observedProperty = in.readUTF();
+        String featureOfInterest = readOptional(in);
+        double undershoot = in.readDouble();
+        double overshoot = in.readDouble();
+        double value = in.readDouble();
+        return new NotificationRssFeedItem(title, link, category, description,
+                                           date, guid, procedure,
+                                           observedProperty, featureOfInterest,
+                                           undershoot, overshoot, value);
+    }
+
+    /**
+     * Write the presence flag of the optional string and the string itself,
+     * if it is present.
+     *
+     * @param out   the output
+     * @param value the string or {@code null}
+     *
+     * @throws IOException if writing fails
+     */
+    private static void writeOptional(DataOutput out, String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Read an optional string written by
+     * {@link #writeOptional(DataOutput, String)}.
+     *
+     * @param in the input
+     *
+     * @return the string or {@code null} if it is not present
+     *
+     * @throws IOException if reading fails
+     */
+    private static String readOptional(DataInput in)
+            throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,396 @@
+package org.n52.wps.extension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.wps.extension.rss.NotificationRssFeedItem;
+
+/**
+ * Durable log of the notifications that were not yet inserted. Notifications
+ * are appended to memory-mapped segment files before they are dispatched and
+ * are acknowledged once the store accepted them, so appending and
+ * acknowledging are plain memory writes. Notifications that were not
+ * acknowledged when the process stopped are {@linkplain #replay() replayed}
+ * after a restart, resulting in an at-least-once delivery.
+ * <p>
+ * Segments are only forced to the storage device when they are full and when
+ * the outbox is closed: notifications survive the crash of the process, but
+ * the most recent ones may be lost if the operating system crashes. Segments
+ * are deleted as soon as all of their notifications are acknowledged.
+ * <p>
+ * Each record of a segment consists of the length of the encoded
+ * notification, an acknowledgement flag and the encoded notification. The
+ * length is written last, so that a record only becomes visible once it is
+ * complete; a length of zero marks the end of the segment.
+ * <p>
+ * The outboxes are stored in the {@linkplain StorageDirectory storage
+ * directory} and are named by the hash of the key of the process. An outbox
+ * can only be opened by a single process at a time.
+ */
+public class NotificationOutbox implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationOutbox.class);
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final String DIRECTORY = "outbox";
+    private static final String SUFFIX = ".segment";
+    private static final String LOCK_FILE = "outbox.lock";
+    private static final int LENGTH_OFFSET = 0;
+    private static final int ACK_OFFSET = 4;
+    private static final int HEADER_SIZE = 5;
+    private static final byte PENDING = 0;
+    private static final byte ACKNOWLEDGED = 1;
+    private final Path directory;
+    private final int segmentSize;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Map<Long, Segment> segments = new TreeMap<>();
+    private final List<PendingNotification> replay = new ArrayList<>();
+    private Segment active;
+    private long nextSegment;
+    private boolean closed;
+
+    /**
+     * Creates a new {@code NotificationOutbox} in {@code directory} and reads
+     * the notifications that were not acknowledged. The directory will be
+     * created if it does not exist.
+     *
+     * @param directory   the directory of the segment files
+     * @param segmentSize the size of the segment files (in bytes)
+     *
+     * @throws IOException if the outbox can not be read or is used by another
+     *                     process
+     */
+    public NotificationOutbox(Path directory, int segmentSize)
+            throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                                            StandardOpenOption.CREATE,
+                                            StandardOpenOption.WRITE);
+        try {
+            this.lock = this.lockChannel.tryLock();
+            if (this.lock == null) {
+                throw new IOException("Outbox " + directory + " is locked by another process");
+            }
+            recover();
+        } catch (IOException | OverlappingFileLockException ex) {
+            closeQuietly();
+            if (ex instanceof IOException) {
+                throw (IOException) ex;
+            }
+            throw new IOException("Outbox " + directory + " is already open", ex);
+        }
+    }
+
+    /**
+     * Open the outbox of the process identified by {@code key} in the
+     * storage directory.
+     *
+     * @param key the key of the process; its string representation has to be
+     *            stable across restarts
+     *
+     * @return the outbox
+     *
+     * @throws IOException if no storage directory is configured or the
+     *                     outbox can not be opened
+     */
+    public static NotificationOutbox open(Object key) throws IOException {
+        Path directory = StorageDirectory.getPersistentDirectory(DIRECTORY);
+        return new NotificationOutbox(directory.resolve(StorageDirectory.getFileName(key)),
+                                      DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Append the notification to the log.
+     *
+     * @param item the notification
+     *
+     * @return the sequence number of the notification
+     *
+     * @throws IOException if the notification can not be appended
+     */
+    public synchronized long append(NotificationRssFeedItem item)
+            throws IOException {
+        if (this.closed) {
+            throw new IOException("Outbox " + this.directory + " is closed");
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            NotificationCodec.write(out, item);
+        }
+        byte[] payload = baos.toByteArray();
+        int size = HEADER_SIZE + payload.length;
+        if (this.active == null || this.active.remaining() < size) {
+            roll(size);
+        }
+        Segment segment = this.active;
+        int offset = segment.position;
+        segment.buffer.position(offset + HEADER_SIZE);
+        segment.buffer.put(payload);
+        segment.buffer.put(offset + ACK_OFFSET, PENDING);
+        // publish the record
+        segment.buffer.putInt(offset + LENGTH_OFFSET, payload.length);
+        segment.position += size;
+        ++segment.pending;
+        return toSequence(segment.index, offset);
+    }
+
+    /**
+     * Acknowledge the insertion of a notification. Unknown or already
+     * acknowledged sequence numbers are ignored.
+     *
+     * @param sequence the sequence number of the notification
+     */
+    public synchronized void acknowledge(long sequence) {
+        if (this.closed || sequence == PendingNotification.NO_SEQUENCE) {
+            return;
+        }
+        Segment segment = this.segments.get(sequence >>> Integer.SIZE);
+        if (segment == null) {
+            return;
+        }
+        int offset = (int) sequence;
+        if (segment.buffer.get(offset + ACK_OFFSET) != PENDING) {
+            return;
+        }
+        segment.buffer.put(offset + ACK_OFFSET, ACKNOWLEDGED);
+        if (--segment.pending == 0 && segment != this.active) {
+            delete(segment);
+        }
+    }
+
+    /**
+     * Get the notifications that were not acknowledged when the outbox was
+     * opened, in the order they were appended. The notifications are only
+     * returned once.
+     *
+     * @return the notifications to replay
+     */
+    public synchronized List<PendingNotification> replay() {
+        List<PendingNotification> notifications = new ArrayList<>(this.replay);
+        this.replay.clear();
+        return notifications;
+    }
+
+    /**
+     * Get the number of notifications that are not acknowledged.
+     *
+     * @return the number of pending notifications
+     */
+    public synchronized long getPending() {
+        long pending = 0;
+        for (Segment segment : this.segments.values()) {
+            pending += segment.pending;
+        }
+        return pending;
+    }
+
+    /**
+     * Force the segments to the storage device and release the outbox.
+     * Notifications that are not acknowledged are kept for the next time the
+     * outbox is opened.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        for (Segment segment : new ArrayList<>(this.segments.values())) {
+            if (segment.pending == 0) {
+                delete(segment);
+            } else {
+                segment.buffer.force();
+                closeQuietly(segment);
+            }
+        }
+        this.segments.clear();
+        this.active = null;
+        closeQuietly();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NotificationOutbox[%s, pending=%d]",
+                             this.directory, getPending());
+    }
+
+    /**
+     * Read the existing segments, collecting the notifications to replay and
+     * deleting the segments without pending notifications. New notifications
+     * are appended to a new segment.
+     *
+     * @throws IOException if a segment can not be read
+     */
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*" + SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        // zero-padded names sort by index
+        paths.sort(null);
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            long index;
+            try {
+                index = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            } catch (NumberFormatException ex) {
+                LOG.warn("Ignoring unknown file {}", path);
+                continue;
+            }
+            Segment segment = new Segment(index, path, Files.size(path));
+            this.segments.put(index, segment);
+            this.nextSegment = Math.max(this.nextSegment, index + 1);
+            scan(segment);
+            if (segment.pending == 0) {
+                delete(segment);
+            }
+        }
+        if (!this.replay.isEmpty()) {
+            LOG.info("Replaying {} notifications from {}", this.replay.size(), this.directory);
+        }
+    }
+
+    /**
+     * Collect the pending notifications of the segment.
+     *
+     * @param segment the segment
+     */
+    private void scan(Segment segment) {
+        int offset = 0;
+        int capacity = segment.buffer.capacity();
+        while (capacity - offset >= HEADER_SIZE) {
+            int length = segment.buffer.getInt(offset + LENGTH_OFFSET);
+            if (length <= 0 || length > capacity - offset - HEADER_SIZE) {
+                break;
+            }
+            if (segment.buffer.get(offset + ACK_OFFSET) == PENDING) {
+                byte[] payload = new byte[length];
+                segment.buffer.position(offset + HEADER_SIZE);
+                segment.buffer.get(payload);
+                try {
+                    NotificationRssFeedItem item = NotificationCodec.read(
+                            new DataInputStream(new ByteArrayInputStream(payload)));
+                    this.replay.add(new PendingNotification(item, toSequence(segment.index, offset)));
+                    ++segment.pending;
+                } catch (IOException ex) {
+                    // the record was not completely written
+                    LOG.warn("Discarding corrupt notification in {}", segment.path, ex);
+                    break;
+                }
+            }
+            offset += HEADER_SIZE + length;
+        }
+        segment.position = offset;
+    }
+
+    /**
+     * Start a new segment that has room for at least {@code size} bytes.
+     *
+     * @param size the size of the next record
+     *
+     * @throws IOException if the segment can not be created
+     */
+    private void roll(int size) throws IOException {
+        if (this.active != null) {
+            if (this.active.pending == 0) {
+                delete(this.active);
+            } else {
+                this.active.buffer.force();
+            }
+        }
+        long index = this.nextSegment++;
+        Path path = this.directory.resolve(String.format("%020d%s", index, SUFFIX));
+        Segment segment = new Segment(index, path, Math.max(this.segmentSize, size));
+        this.segments.put(index, segment);
+        this.active = segment;
+    }
+
+    private void delete(Segment segment) {
+        this.segments.remove(segment.index);
+        if (this.active == segment) {
+            this.active = null;
+        }
+        closeQuietly(segment);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException ex) {
+            LOG.warn("Could not delete segment " + segment.path, ex);
+        }
+    }
+
+    private void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException ex) {
+            LOG.warn("Could not close segment " + segment.path, ex);
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            // closing the channel releases the lock
+            this.lockChannel.close();
+        } catch (IOException ex) {
+            LOG.warn("Could not release outbox " + this.directory, ex);
+        }
+    }
+
+    private static long toSequence(long index, int offset) {
+        return index << Integer.SIZE | offset;
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static class Segment {
+        private final long index;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private int pending;
+
+        Segment(long index, Path path, long size) throws IOException {
+            this.index = index;
+            this.path = path;
+            this.channel = FileChannel.open(path,
+                                            StandardOpenOption.CREATE,
+                                            StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE);
+            try {
+                this.buffer = this.channel.map(MapMode.READ_WRITE, 0, size);
+            } catch (IOException ex) {
+                this.channel.close();
+                throw ex;
+            }
+        }
+
+        int remaining() {
+            return this.buffer.capacity() - this.position;
+        }
+    }
+}
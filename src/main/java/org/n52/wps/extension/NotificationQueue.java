@@ -0,0 +1,412 @@
+package org.n52.wps.extension;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Bounded queue of pending notifications between the EPOS rule listener and
+ * the {@link RssFeeder}. The queue is backed by an array of fixed capacity;
+ * what happens if a notification is offered to a full queue is defined by
+ * the {@link OverflowPolicy}.
+ * <p>
+ * Spilled notifications are appended to a temporary file in the
+ * {@linkplain StorageDirectory storage directory} (defaulting to
+ * {@code java.io.tmpdir}) and are moved back into the queue in the order
+ * they were offered as soon as there is room. While notifications are
+ * spilled, new notifications are spilled as well to keep the order.
+ */
+public class NotificationQueue implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationQueue.class);
+    private static final String SPILL_DIRECTORY = "spill";
+    private final BlockingQueue<PendingNotification> queue;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Consumer<? super PendingNotification> dropListener;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final Object spillLock = new Object();
+    private Path spillFile;
+    private DataOutputStream spillOut;
+    private DataInputStream spillIn;
+    private long pendingSpilled;
+
+    /**
+     * Create a new {@code NotificationQueue}.
+     *
+     * @param capacity the maximum number of notifications held in memory
+     * @param policy   the policy for notifications offered to a full queue
+     */
+    public NotificationQueue(int capacity, OverflowPolicy policy) {
+        this(capacity, policy, notification -> {});
+    }
+
+    /**
+     * Create a new {@code NotificationQueue}.
+     *
+     * @param capacity     the maximum number of notifications held in memory
+     * @param policy       the policy for notifications offered to a full
+     *                     queue
+     * @param dropListener the listener notified about notifications that are
+     *                     dropped or coalesced
+     */
+    public NotificationQueue(int capacity, OverflowPolicy policy,
+                             Consumer<? super PendingNotification> dropListener) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.policy = Objects.requireNonNull(policy);
+        this.dropListener = Objects.requireNonNull(dropListener);
+    }
+
+    /**
+     * Offer a notification to this queue, applying the overflow policy if
+     * the queue is full.
+     *
+     * @param notification the notification
+     *
+     * @return if the notification was enqueued (or spilled)
+     */
+    public boolean offer(PendingNotification notification) {
+        Objects.requireNonNull(notification);
+        switch (this.policy) {
+            case BLOCK:
+                return block(notification);
+            case DROP_OLDEST:
+                return dropOldest(notification);
+            case COALESCE:
+                return coalesce(notification);
+            case SPILL:
+                return spill(notification);
+            default:
+                throw new Error("Unsupported overflow policy: " + this.policy);
+        }
+    }
+
+    private boolean block(PendingNotification item) {
+        try {
+            this.queue.put(item);
+            return true;
+        } catch (InterruptedException ex) {
+            // reset the interrupted state
+            Thread.currentThread().interrupt();
+            drop(item);
+            return false;
+        }
+    }
+
+    private boolean dropOldest(PendingNotification item) {
+        while (!this.queue.offer(item)) {
+            PendingNotification oldest = this.queue.poll();
+            if (oldest != null) {
+                drop(oldest);
+            }
+        }
+        return true;
+    }
+
+    private boolean coalesce(PendingNotification item) {
+        while (!this.queue.offer(item)) {
+            // replace the pending notification of the same sensor, as the
+            // new one is appended the order of the sensor is kept
+            boolean replaced = false;
+            Iterator<PendingNotification> iter = this.queue.iterator();
+            while (iter.hasNext()) {
+                PendingNotification pending = iter.next();
+                if (isSameSensor(pending, item)) {
+                    iter.remove();
+                    this.coalesced.incrementAndGet();
+                    LOG.debug("Coalesced notification {}", pending.getItem().getGuid());
+                    this.dropListener.accept(pending);
+                    replaced = true;
+                    break;
+                }
+            }
+            if (!replaced) {
+                PendingNotification oldest = this.queue.poll();
+                if (oldest != null) {
+                    drop(oldest);
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean spill(PendingNotification item) {
+        synchronized (this.spillLock) {
+            if (this.pendingSpilled == 0 && this.queue.offer(item)) {
+                return true;
+            }
+            try {
+                if (this.spillOut == null) {
+                    openSpillFile();
+                }
+                write(this.spillOut, item);
+                // make the notification visible to the reader
+                this.spillOut.flush();
+                ++this.pendingSpilled;
+                this.spilled.incrementAndGet();
+                return true;
+            } catch (IOException ex) {
+                LOG.error("Could not spill notification", ex);
+                drop(item);
+                return false;
+            }
+        }
+    }
+
+    private void drop(PendingNotification notification) {
+        this.dropped.incrementAndGet();
+        LOG.debug("Dropped notification {}", notification.getItem().getGuid());
+        this.dropListener.accept(notification);
+    }
+
+    /**
+     * Wait for the next notification.
+     *
+     * @return the notification
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public PendingNotification take() throws InterruptedException {
+        PendingNotification item = this.queue.take();
+        refill();
+        return item;
+    }
+
+    /**
+     * Wait for the next notification for at most the specified time.
+     *
+     * @param timeout the time to wait
+     * @param unit    the unit of {@code timeout}
+     *
+     * @return the notification or {@code null} if the time elapsed
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public PendingNotification poll(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        PendingNotification item = this.queue.poll(timeout, unit);
+        if (item != null) {
+            refill();
+        }
+        return item;
+    }
+
+    /**
+     * Remove at most {@code maxElements} pending notifications and add them
+     * to {@code collection}.
+     *
+     * @param collection  the collection
+     * @param maxElements the maximum number of notifications to remove
+     *
+     * @return the number of removed notifications
+     */
+    public int drainTo(Collection<? super PendingNotification> collection,
+                       int maxElements) {
+        int n = this.queue.drainTo(collection, maxElements);
+        if (n > 0) {
+            refill();
+        }
+        return n;
+    }
+
+    /**
+     * Move spilled notifications back into the queue while there is room.
+     */
+    private void refill() {
+        if (this.policy != OverflowPolicy.SPILL) {
+            return;
+        }
+        synchronized (this.spillLock) {
+            try {
+                while (this.pendingSpilled > 0 && this.queue.remainingCapacity() > 0) {
+                    this.queue.offer(read(this.spillIn));
+                    if (--this.pendingSpilled == 0) {
+                        // the reader caught up, start over with a new file
+                        closeSpillFile();
+                    }
+                }
+            } catch (IOException ex) {
+                LOG.error("Could not read spilled notifications", ex);
+                this.dropped.addAndGet(this.pendingSpilled);
+                this.pendingSpilled = 0;
+                closeSpillFile();
+            }
+        }
+    }
+
+    /**
+     * Get the number of notifications waiting in this queue, including the
+     * spilled ones.
+     *
+     * @return the queue depth
+     */
+    public long getDepth() {
+        synchronized (this.spillLock) {
+            return this.queue.size() + this.pendingSpilled;
+        }
+    }
+
+    /**
+     * Get the number of notifications this queue holds in memory.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Get the number of notifications that were dropped.
+     *
+     * @return the number of dropped notifications
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Get the number of notifications that were replaced by a newer
+     * notification of the same sensor.
+     *
+     * @return the number of coalesced notifications
+     */
+    public long getCoalesced() {
+        return this.coalesced.get();
+    }
+
+    /**
+     * Get the number of notifications that were spilled to disk.
+     *
+     * @return the number of spilled notifications
+     */
+    public long getSpilled() {
+        return this.spilled.get();
+    }
+
+    /**
+     * Discards the spilled notifications.
+     */
+    @Override
+    public void close() {
+        synchronized (this.spillLock) {
+            this.pendingSpilled = 0;
+            closeSpillFile();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("policy", this.policy)
+                .add("depth", getDepth())
+                .add("dropped", getDropped())
+                .add("coalesced", getCoalesced())
+                .add("spilled", getSpilled())
+                .toString();
+    }
+
+    private void openSpillFile() throws IOException {
+        Path directory = StorageDirectory.getTemporaryDirectory(SPILL_DIRECTORY);
+        this.spillFile = Files.createTempFile(directory, "notifications-", ".spill");
+        this.spillOut = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(this.spillFile)));
+        this.spillIn = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(this.spillFile)));
+        LOG.info("Spilling notifications to {}", this.spillFile);
+    }
+
+    private void closeSpillFile() {
+        if (this.spillFile == null) {
+            return;
+        }
+        try {
+            this.spillOut.close();
+            this.spillIn.close();
+            Files.deleteIfExists(this.spillFile);
+        } catch (IOException ex) {
+            LOG.warn("Could not delete spill file " + this.spillFile, ex);
+        } finally {
+            this.spillFile = null;
+            this.spillOut = null;
+            this.spillIn = null;
+        }
+    }
+
+    private static boolean isSameSensor(PendingNotification a,
+                                        PendingNotification b) {
+        // the feature of interest is not known for every notification
+        return Objects.equals(a.getItem().getProcedure(), b.getItem().getProcedure()) &&
+               Objects.equals(a.getItem().getFeatureOfInterest(), b.getItem().getFeatureOfInterest());
+    }
+
+    private static void write(DataOutputStream out, PendingNotification notification)
+            throws IOException {
+        out.writeLong(notification.getSequence());
+        NotificationCodec.write(out, notification.getItem());
+    }
+
+    private static PendingNotification read(DataInputStream in)
+            throws IOException {
+        long sequence = in.readLong();
+        return new PendingNotification(NotificationCodec.read(in), sequence);
+    }
+
+    /**
+     * The policy for notifications offered to a full queue.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Block the producer until there is room.
+         */
+        BLOCK,
+        /**
+         * Drop the oldest pending notification.
+         */
+        DROP_OLDEST,
+        /**
+         * Replace the pending notification of the same procedure and feature
+         * of interest or drop the oldest pending notification if there is
+         * none.
+         */
+        COALESCE,
+        /**
+         * Spill the notification to disk.
+         */
+        SPILL;
+
+        /**
+         * Get the policy by its (case insensitive) name; dashes may be used
+         * instead of underscores.
+         *
+         * @param name the name
+         *
+         * @return the policy
+         *
+         * @throws IllegalArgumentException if there is no such policy
+         */
+        public static OverflowPolicy fromString(String name) {
+            return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+    }
+}
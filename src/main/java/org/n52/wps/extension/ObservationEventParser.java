@@ -0,0 +1,510 @@
+package org.n52.wps.extension;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import net.opengis.om.x20.OMObservationDocument;
+import net.opengis.om.x20.OMObservationType;
+
+import org.apache.xmlbeans.XmlException;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+import org.n52.epos.transform.TransformationException;
+import org.n52.epos.transform.TransformationRepository;
+
+/**
+ * Fast path transformer that creates {@link EposEvent}s directly from the
+ * parser events of an {@code om:OM_Observation}. Only the fields the rules
+ * need (procedure, observed property, feature of interest, phenomenon time and
+ * the numeric result) are read; no intermediate {@link OMObservationType} is
+ * created.
+ *
+ * Observations that are not {@code OM_Measurement}s are buffered and
+ * transformed using the {@link TransformationRepository}.
+ *
+ * Instances are stateful (references to time objects of previous
+ * observations are resolved) and should be used for a single response.
+ */
+public class ObservationEventParser {
+    public static final String OM_MEASUREMENT
+            = "http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement";
+    private static final String NS_OM_20 = GetObservationResponseReader.NS_OM_20;
+    private static final String NS_GML_32 = "http://www.opengis.net/gml/3.2";
+    private static final String NS_XLINK = "http://www.w3.org/1999/xlink";
+    private static final QName QN_XLINK_HREF = new QName(NS_XLINK, "href");
+    private static final QName QN_GML_ID = new QName(NS_GML_32, "id");
+    private static final QName QN_GML_IDENTIFIER = new QName(NS_GML_32, "identifier");
+    private static final QName QN_GML_NAME = new QName(NS_GML_32, "name");
+    private static final QName QN_GML_TIME_POSITION = new QName(NS_GML_32, "timePosition");
+    private static final QName QN_GML_BEGIN_POSITION = new QName(NS_GML_32, "beginPosition");
+    private static final QName QN_GML_END_POSITION = new QName(NS_GML_32, "endPosition");
+    private static final QName QN_TYPE = new QName(NS_OM_20, "type");
+    private static final QName QN_PHENOMENON_TIME = new QName(NS_OM_20, "phenomenonTime");
+    private static final QName QN_PROCEDURE = new QName(NS_OM_20, "procedure");
+    private static final QName QN_OBSERVED_PROPERTY = new QName(NS_OM_20, "observedProperty");
+    private static final QName QN_FEATURE_OF_INTEREST = new QName(NS_OM_20, "featureOfInterest");
+    private static final QName QN_RESULT = new QName(NS_OM_20, "result");
+    private static final DateTimeFormatter TIME_PARSER = ISODateTimeFormat.dateTimeParser();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    static {
+        OUTPUT_FACTORY.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, true);
+    }
+
+    private final Map<String, long[]> times = new HashMap<>();
+    private final Map<String, String> namespaces;
+
+    /**
+     * Creates a new {@code ObservationEventParser}.
+     *
+     * @param namespaces the namespace declarations in scope of the
+     *                   observations (used when an observation has to be
+     *                   buffered for the fallback transformation)
+     */
+    public ObservationEventParser(Map<String, String> namespaces) {
+        this.namespaces = Objects.requireNonNull(namespaces);
+    }
+
+    /**
+     * Parse the observation {@code reader} is positioned on. After this method
+     * returns, the reader is positioned on the end element of the observation.
+     *
+     * @param reader the reader positioned on the start element of a
+     *               {@code om:OM_Observation}
+     *
+     * @return the event
+     *
+     * @throws XMLStreamException      if the stream can not be read
+     * @throws XmlException            if the observation is not valid
+     * @throws TransformationException if the fallback transformation fails
+     */
+    public EposEvent parse(XMLStreamReader reader)
+            throws XMLStreamException, XmlException, TransformationException {
+        StartElement observation = new StartElement(reader);
+        Buffer header = null;
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.isStartElement()) {
+                if (QN_TYPE.equals(reader.getName())) {
+                    if (OM_MEASUREMENT.equals(getHref(reader))) {
+                        skipElement(reader);
+                        return parseMeasurement(reader);
+                    }
+                    return fallback(header, observation, reader);
+                } else if (NS_OM_20.equals(reader.getNamespaceURI())) {
+                    // om:type is missing, we can not tell what to expect
+                    return fallback(header, observation, reader);
+                }
+                // buffer the GML properties preceding om:type
+                if (header == null) {
+                    header = new Buffer(observation);
+                }
+                header.copyElement(reader);
+            } else if (header != null) {
+                header.copyEvent(reader);
+            }
+        }
+        // an observation without any properties
+        return fallback(header, observation, reader);
+    }
+
+    /**
+     * Parse the remaining properties of a {@code OM_Measurement}.
+     *
+     * @param reader the reader positioned after {@code om:type}
+     *
+     * @return the event
+     *
+     * @throws XMLStreamException if the stream can not be read
+     * @throws XmlException       if the observation is not valid
+     */
+    private EposEvent parseMeasurement(XMLStreamReader reader)
+            throws XMLStreamException, XmlException {
+        long[] time = null;
+        String procedure = null;
+        String observedProperty = null;
+        String featureOfInterest = null;
+        String result = null;
+        while (reader.nextTag() != XMLStreamConstants.END_ELEMENT) {
+            QName name = reader.getName();
+            if (QN_PHENOMENON_TIME.equals(name)) {
+                time = parseTime(reader);
+            } else if (QN_PROCEDURE.equals(name)) {
+                procedure = getHref(reader);
+                skipElement(reader);
+            } else if (QN_OBSERVED_PROPERTY.equals(name)) {
+                observedProperty = getHref(reader);
+                skipElement(reader);
+            } else if (QN_FEATURE_OF_INTEREST.equals(name)) {
+                featureOfInterest = parseFeature(reader);
+            } else if (QN_RESULT.equals(name)) {
+                result = readText(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        if (time == null || procedure == null ||
+            observedProperty == null || result == null) {
+            throw new XmlException("Incomplete observation");
+        }
+        MapEposEvent event = new MapEposEvent(time[0], time[1]);
+        event.setValue(MapEposEvent.SENSORID_KEY, procedure);
+        event.setValue(MapEposEvent.OBSERVED_PROPERTY_KEY, observedProperty);
+        if (featureOfInterest != null) {
+            event.setValue(MapEposEvent.FEATURE_TYPE_KEY, featureOfInterest);
+        }
+        try {
+            event.setValue(MapEposEvent.DOUBLE_VALUE_KEY,
+                           Double.parseDouble(result.trim()));
+        } catch (NumberFormatException ex) {
+            throw new XmlException("Invalid measurement result: " + result, ex);
+        }
+        return event;
+    }
+
+    /**
+     * Parse the {@code om:phenomenonTime} property.
+     *
+     * @param reader the reader positioned on the property
+     *
+     * @return the start and end time
+     *
+     * @throws XMLStreamException if the stream can not be read
+     * @throws XmlException       if the time is not valid
+     */
+    private long[] parseTime(XMLStreamReader reader)
+            throws XMLStreamException, XmlException {
+        String href = getHref(reader);
+        if (href != null) {
+            skipElement(reader);
+            long[] time = this.times.get(href.startsWith("#") ? href.substring(1) : href);
+            if (time == null) {
+                throw new XmlException("Unresolvable time reference: " + href);
+            }
+            return time;
+        }
+        long[] time = new long[2];
+        String id = null;
+        int depth = 1;
+        while (depth > 0) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                QName name = reader.getName();
+                if (depth == 1) {
+                    // gml:TimeInstant or gml:TimePeriod
+                    id = reader.getAttributeValue(QN_GML_ID.getNamespaceURI(),
+                                                  QN_GML_ID.getLocalPart());
+                    ++depth;
+                } else if (QN_GML_TIME_POSITION.equals(name)) {
+                    time[0] = time[1] = parseTime(readText(reader));
+                } else if (QN_GML_BEGIN_POSITION.equals(name)) {
+                    time[0] = parseTime(readText(reader));
+                } else if (QN_GML_END_POSITION.equals(name)) {
+                    time[1] = parseTime(readText(reader));
+                } else {
+                    skipElement(reader);
+                }
+            } else if (reader.isEndElement()) {
+                --depth;
+            }
+        }
+        if (id != null) {
+            this.times.put(id, time);
+        }
+        return time;
+    }
+
+    private static long parseTime(String time)
+            throws XmlException {
+        try {
+            return TIME_PARSER.parseMillis(time.trim());
+        } catch (IllegalArgumentException ex) {
+            throw new XmlException("Invalid time position: " + time, ex);
+        }
+    }
+
+    /**
+     * Parse the {@code om:featureOfInterest} property. If the feature is not
+     * referenced, the identifier (or the name) of the inline feature is used.
+     *
+     * @param reader the reader positioned on the property
+     *
+     * @return the feature identifier
+     *
+     * @throws XMLStreamException if the stream can not be read
+     */
+    private static String parseFeature(XMLStreamReader reader)
+            throws XMLStreamException {
+        String feature = getHref(reader);
+        String name = null;
+        int depth = 1;
+        while (depth > 0) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                if (feature == null &&
+                    QN_GML_IDENTIFIER.equals(reader.getName())) {
+                    feature = reader.getElementText().trim();
+                } else if (name == null &&
+                           QN_GML_NAME.equals(reader.getName())) {
+                    name = reader.getElementText().trim();
+                } else {
+                    ++depth;
+                }
+            } else if (reader.isEndElement()) {
+                --depth;
+            }
+        }
+        return feature != null ? feature : name;
+    }
+
+    /**
+     * Transform the observation using the {@link TransformationRepository}.
+     * The observation (including the already consumed {@code header}) is
+     * buffered and parsed using XmlBeans.
+     *
+     * @param header      the already consumed header or {@code null}
+     * @param observation the start element of the observation
+     * @param reader      the reader positioned on the first unconsumed event
+     *
+     * @return the event
+     *
+     * @throws XMLStreamException      if the stream can not be read
+     * @throws XmlException            if the observation is not valid
+     * @throws TransformationException if the transformation fails
+     */
+    private EposEvent fallback(Buffer header, StartElement observation,
+                               XMLStreamReader reader)
+            throws XMLStreamException, XmlException, TransformationException {
+        Buffer buffer = header != null ? header : new Buffer(observation);
+        while (!reader.isEndElement()) {
+            if (reader.isStartElement()) {
+                buffer.copyElement(reader);
+            } else {
+                buffer.copyEvent(reader);
+            }
+            reader.next();
+        }
+        OMObservationType xml = OMObservationDocument.Factory
+                .parse(buffer.finish()).getOMObservation();
+        return transform(xml);
+    }
+
+    /**
+     * Transform the observation using the {@link TransformationRepository}.
+     *
+     * @param xml the observation
+     *
+     * @return the event
+     *
+     * @throws TransformationException if the transformation fails
+     */
+    public static EposEvent transform(OMObservationType xml)
+            throws TransformationException {
+        return TransformationRepository.Instance.transform(xml, EposEvent.class);
+    }
+
+    private static String getHref(XMLStreamReader reader) {
+        return reader.getAttributeValue(QN_XLINK_HREF.getNamespaceURI(),
+                                        QN_XLINK_HREF.getLocalPart());
+    }
+
+    /**
+     * Read the text content of the current element, failing if it contains
+     * child elements.
+     *
+     * @param reader the reader positioned on the start element
+     *
+     * @return the text content
+     *
+     * @throws XMLStreamException if the stream can not be read
+     * @throws XmlException       if the element has child elements
+     */
+    private static String readText(XMLStreamReader reader)
+            throws XMLStreamException, XmlException {
+        StringBuilder builder = null;
+        String text = "";
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return builder == null ? text : builder.toString();
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                skipElement(reader);
+                skipElement(reader);
+                throw new XmlException("Expected simple content");
+            } else if (reader.isCharacters() ||
+                       event == XMLStreamConstants.CDATA) {
+                if (builder != null) {
+                    builder.append(reader.getText());
+                } else if (text.isEmpty()) {
+                    text = reader.getText();
+                } else {
+                    builder = new StringBuilder(text).append(reader.getText());
+                }
+            }
+        }
+    }
+
+    /**
+     * Skip all events up to the matching end element of the current element.
+     *
+     * @param reader the reader positioned on a start element
+     *
+     * @throws XMLStreamException if the stream can not be read
+     */
+    private static void skipElement(XMLStreamReader reader)
+            throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                ++depth;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                --depth;
+            }
+        }
+    }
+
+    /**
+     * Snapshot of a start element.
+     */
+    private static class StartElement {
+        private final QName name;
+        private final List<String[]> namespaces = new LinkedList<>();
+        private final List<String[]> attributes = new LinkedList<>();
+
+        StartElement(XMLStreamReader reader) {
+            this.name = reader.getName();
+            for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+                this.namespaces.add(new String[] {
+                    reader.getNamespacePrefix(i), reader.getNamespaceURI(i)
+                });
+            }
+            for (int i = 0; i < reader.getAttributeCount(); ++i) {
+                this.attributes.add(new String[] {
+                    reader.getAttributePrefix(i),
+                    reader.getAttributeNamespace(i),
+                    reader.getAttributeLocalName(i),
+                    reader.getAttributeValue(i)
+                });
+            }
+        }
+    }
+
+    /**
+     * Buffer for observations that have to be transformed using XmlBeans.
+     */
+    private class Buffer {
+        private final StringWriter out = new StringWriter();
+        private final XMLStreamWriter writer;
+
+        Buffer(StartElement observation) throws XMLStreamException {
+            this.writer = OUTPUT_FACTORY.createXMLStreamWriter(this.out);
+            QName name = observation.name;
+            this.writer.writeStartElement(name.getPrefix(), name.getLocalPart(),
+                                          name.getNamespaceURI());
+            // declare the namespaces in scope as they may be referenced in
+            // attribute values (e.g. xsi:type)
+            Map<String, String> declarations = new HashMap<>(namespaces);
+            for (String[] ns : observation.namespaces) {
+                declarations.put(nullToEmpty(ns[0]), ns[1]);
+            }
+            for (Map.Entry<String, String> ns : declarations.entrySet()) {
+                writeNamespace(ns.getKey(), ns.getValue());
+            }
+            for (String[] a : observation.attributes) {
+                writeAttribute(a[0], a[1], a[2], a[3]);
+            }
+        }
+
+        void copyElement(XMLStreamReader reader) throws XMLStreamException {
+            int depth = 0;
+            while (true) {
+                if (reader.isStartElement()) {
+                    ++depth;
+                } else if (reader.isEndElement()) {
+                    --depth;
+                }
+                copyEvent(reader);
+                if (depth == 0) {
+                    return;
+                }
+                reader.next();
+            }
+        }
+
+        void copyEvent(XMLStreamReader reader) throws XMLStreamException {
+            switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    this.writer.writeStartElement(nullToEmpty(reader.getPrefix()),
+                                                  reader.getLocalName(),
+                                                  nullToEmpty(reader.getNamespaceURI()));
+                    for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+                        writeNamespace(reader.getNamespacePrefix(i),
+                                       reader.getNamespaceURI(i));
+                    }
+                    for (int i = 0; i < reader.getAttributeCount(); ++i) {
+                        writeAttribute(reader.getAttributePrefix(i),
+                                       reader.getAttributeNamespace(i),
+                                       reader.getAttributeLocalName(i),
+                                       reader.getAttributeValue(i));
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    this.writer.writeEndElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.CDATA:
+                    this.writer.writeCharacters(reader.getTextCharacters(),
+                                                reader.getTextStart(),
+                                                reader.getTextLength());
+                    break;
+                default:
+                    // comments, processing instructions, ...
+                    break;
+            }
+        }
+
+        String finish() throws XMLStreamException {
+            this.writer.writeEndElement();
+            this.writer.close();
+            return this.out.toString();
+        }
+
+        private void writeNamespace(String prefix, String uri)
+                throws XMLStreamException {
+            if (prefix == null || prefix.isEmpty()) {
+                this.writer.writeDefaultNamespace(uri);
+            } else {
+                this.writer.writeNamespace(prefix, uri);
+            }
+        }
+
+        private void writeAttribute(String prefix, String namespace,
+                                    String localName, String value)
+                throws XMLStreamException {
+            if (namespace == null || namespace.isEmpty()) {
+                this.writer.writeAttribute(localName, value);
+            } else {
+                this.writer.writeAttribute(prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix,
+                                           namespace, localName, value);
+            }
+        }
+
+        private String nullToEmpty(String s) {
+            return s == null ? XMLConstants.DEFAULT_NS_PREFIX : s;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package org.n52.wps.extension;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import org.apache.xmlbeans.XmlException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.epos.event.EposEvent;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP endpoint that accepts pushed observations as an alternative
+ * to polling the SOS. Observations can be {@code POST}ed to
+ * {@value #PATH} as {@code InsertObservation} requests,
+ * {@code GetObservationResponse} documents or single
+ * {@code om:OM_Observation} documents; they are transformed while they are
+ * read, and once the complete document is valid, the events are supplied
+ * to the distinct sinks of all subscriptions. Invalid documents are rejected
+ * without supplying any of their events.
+ * <p>
+ * As the endpoint feeds the rules of all processes, it is restricted: the
+ * shared instance only listens on the loopback interface unless another
+ * address is configured, requests exceeding a maximum size are rejected and
+ * requests may be required to present a shared secret as a bearer token
+ * ({@code Authorization: Bearer <secret>}) and to originate from an
+ * allow-list of addresses.
+ * <p>
+ * The server is started with the first subscription and stopped when the
+ * last subscription is closed. The shared instance is configured by the
+ * system properties {@value #ADDRESS_PROPERTY} (an IP address),
+ * {@value #PORT_PROPERTY}, {@value #SECRET_PROPERTY},
+ * {@value #ALLOWED_ADDRESSES_PROPERTY} (a comma-separated list of IP
+ * addresses) and {@value #MAX_REQUEST_SIZE_PROPERTY} (in bytes).
+ */
+public class ObservationPushService {
+    private static final Logger LOG = LoggerFactory.getLogger(ObservationPushService.class);
+    public static final String ADDRESS_PROPERTY = "org.n52.wps.extension.push.address";
+    public static final String PORT_PROPERTY = "org.n52.wps.extension.push.port";
+    public static final String SECRET_PROPERTY = "org.n52.wps.extension.push.secret";
+    public static final String ALLOWED_ADDRESSES_PROPERTY = "org.n52.wps.extension.push.allowed-addresses";
+    public static final String MAX_REQUEST_SIZE_PROPERTY = "org.n52.wps.extension.push.max-request-size";
+    public static final int DEFAULT_PORT = 8090;
+    public static final long DEFAULT_MAX_REQUEST_SIZE = 16L * 1024 * 1024;
+    public static final String PATH = "/observations";
+    private static final String BEARER = "Bearer ";
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ObservationPushService INSTANCE = fromSystemProperties();
+    private final InetSocketAddress address;
+    private final byte[] secret;
+    private final Set<InetAddress> allowedAddresses;
+    private final long maxRequestSize;
+    private final GetObservationResponseReader reader = new InsertObservationReader();
+    private final List<Subscription> subscriptions = new LinkedList<>();
+    private volatile List<Consumer<? super EposEvent>> sinks = new LinkedList<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Create a new {@code ObservationPushService} that accepts requests of
+     * the default maximum size from any client that can reach
+     * {@code address}.
+     *
+     * @param address the address to listen on
+     */
+    public ObservationPushService(InetSocketAddress address) {
+        this(address, null, null, DEFAULT_MAX_REQUEST_SIZE);
+    }
+
+    /**
+     * Create a new {@code ObservationPushService}.
+     *
+     * @param address          the address to listen on
+     * @param secret           the secret requests have to present as bearer
+     *                         token or {@code null} to not require one
+     * @param allowedAddresses the addresses requests are accepted from or
+     *                         {@code null} to accept requests from any
+     *                         address
+     * @param maxRequestSize   the maximum size of a request (in bytes)
+     */
+    public ObservationPushService(InetSocketAddress address, String secret,
+                                  Set<InetAddress> allowedAddresses,
+                                  long maxRequestSize) {
+        if (maxRequestSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum request size: " + maxRequestSize);
+        }
+        if (secret != null && secret.isEmpty()) {
+            throw new IllegalArgumentException("Empty secret");
+        }
+        this.address = Objects.requireNonNull(address);
+        this.secret = secret == null ? null : secret.getBytes(StandardCharsets.UTF_8);
+        this.allowedAddresses = allowedAddresses == null ? null
+                : Collections.unmodifiableSet(new HashSet<>(allowedAddresses));
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    /**
+     * Create the service configured by the system properties.
+     *
+     * @return the service
+     *
+     * @throws IllegalArgumentException if an address is malformed
+     */
+    public static ObservationPushService fromSystemProperties() {
+        String address = System.getProperty(ADDRESS_PROPERTY, "").trim();
+        InetAddress bindAddress = address.isEmpty()
+                ? InetAddress.getLoopbackAddress()
+                : InetAddresses.forString(address);
+        String secret = System.getProperty(SECRET_PROPERTY, "");
+        String allowed = System.getProperty(ALLOWED_ADDRESSES_PROPERTY, "");
+        Set<InetAddress> allowedAddresses = null;
+        if (!allowed.trim().isEmpty()) {
+            allowedAddresses = new HashSet<>();
+            for (String allowedAddress : allowed.split(",")) {
+                if (!allowedAddress.trim().isEmpty()) {
+                    allowedAddresses.add(InetAddresses.forString(allowedAddress.trim()));
+                }
+            }
+        }
+        return new ObservationPushService(
+                new InetSocketAddress(bindAddress, Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT)),
+                secret.isEmpty() ? null : secret, allowedAddresses,
+                Long.getLong(MAX_REQUEST_SIZE_PROPERTY, DEFAULT_MAX_REQUEST_SIZE));
+    }
+
+    /**
+     * Get the shared instance of this service.
+     *
+     * @return the instance
+     */
+    public static ObservationPushService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the address the server is listening on.
+     *
+     * @return the address or {@code null} if the server is not running
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return this.server == null ? null : this.server.getAddress();
+    }
+
+    /**
+     * Subscribe to the pushed observations, starting the server if this is
+     * the first subscription.
+     *
+     * @param sink the consumer of the events; events are only supplied once
+     *             to sinks that are subscribed multiple times
+     *
+     * @return the subscription
+     *
+     * @throws IOException if the server can not be started
+     */
+    public synchronized Subscription subscribe(Consumer<? super EposEvent> sink)
+            throws IOException {
+        Subscription subscription = new Subscription(sink);
+        if (this.server == null) {
+            start();
+        }
+        this.subscriptions.add(subscription);
+        updateSinks();
+        return subscription;
+    }
+
+    /**
+     * Remove the subscription and stop the server if there are no
+     * subscriptions left.
+     *
+     * @param subscription the subscription
+     */
+    private synchronized void unsubscribe(Subscription subscription) {
+        this.subscriptions.remove(subscription);
+        updateSinks();
+        if (this.subscriptions.isEmpty() && this.server != null) {
+            stop();
+        }
+    }
+
+    private void start() throws IOException {
+        this.executor = Executors.newFixedThreadPool(
+                THREADS, new ThreadFactoryBuilder()
+                        .setNameFormat("observation-push-%d")
+                        .setDaemon(true)
+                        .build());
+        try {
+            this.server = HttpServer.create(this.address, 0);
+        } catch (IOException ex) {
+            this.executor.shutdown();
+            throw ex;
+        }
+        this.server.createContext(PATH, this::handle);
+        this.server.setExecutor(this.executor);
+        this.server.start();
+        LOG.info("Accepting pushed observations at {}{}", this.server.getAddress(), PATH);
+    }
+
+    private void stop() {
+        LOG.info("Stopping to accept pushed observations at {}{}", this.server.getAddress(), PATH);
+        this.server.stop(0);
+        this.server = null;
+        this.executor.shutdown();
+        this.executor = null;
+    }
+
+    /**
+     * Handle a push request. The events are only distributed once the
+     * complete request was read successfully.
+     *
+     * @param exchange the exchange
+     *
+     * @throws IOException if the response can not be send
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!isAllowed(exchange.getRemoteAddress())) {
+                LOG.warn("Rejecting pushed observations from {}", exchange.getRemoteAddress());
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            if (!isAuthorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                LOG.warn("Rejecting unauthorized pushed observations from {}", exchange.getRemoteAddress());
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            List<EposEvent> events = new ArrayList<>();
+            LimitedInputStream in = new LimitedInputStream(exchange.getRequestBody(), this.maxRequestSize);
+            try {
+                if (getContentLength(exchange) > this.maxRequestSize) {
+                    throw new RequestTooLargeException();
+                }
+                this.reader.readEvents(in, events::add);
+            } catch (XmlException | IOException ex) {
+                if (in.isExceeded() || ex instanceof RequestTooLargeException) {
+                    // the parser may have wrapped the exception
+                    LOG.warn("Rejecting pushed observations from {} exceeding {} bytes",
+                             exchange.getRemoteAddress(), this.maxRequestSize);
+                    sendMessage(exchange, 413, "Request exceeds " + this.maxRequestSize + " bytes");
+                    return;
+                }
+                if (ex instanceof IOException) {
+                    throw (IOException) ex;
+                }
+                LOG.warn("Rejecting pushed observations from {}", exchange.getRemoteAddress(), ex);
+                sendMessage(exchange, 400, String.valueOf(ex.getMessage()));
+                return;
+            } finally {
+                in.close();
+            }
+            events.forEach(this::distribute);
+            LOG.debug("Received {} observations from {}", events.size(), exchange.getRemoteAddress());
+            exchange.sendResponseHeaders(204, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean isAllowed(InetSocketAddress remote) {
+        return this.allowedAddresses == null ||
+               remote != null && this.allowedAddresses.contains(remote.getAddress());
+    }
+
+    private boolean isAuthorized(String authorization) {
+        if (this.secret == null) {
+            return true;
+        }
+        if (authorization == null || !authorization.startsWith(BEARER)) {
+            return false;
+        }
+        byte[] token = authorization.substring(BEARER.length()).trim()
+                .getBytes(StandardCharsets.UTF_8);
+        // compare in constant time
+        return MessageDigest.isEqual(token, this.secret);
+    }
+
+    private static long getContentLength(HttpExchange exchange) {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength == null) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException ex) {
+            return -1L;
+        }
+    }
+
+    private static void sendMessage(HttpExchange exchange, int status, String message)
+            throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void distribute(EposEvent event) {
+        this.sinks.forEach(sink -> sink.accept(event));
+    }
+
+    private void updateSinks() {
+        List<Consumer<? super EposEvent>> distinct = new LinkedList<>();
+        this.subscriptions.stream()
+                .map(s -> s.sink)
+                .filter(sink -> distinct.stream().noneMatch(x -> x == sink))
+                .forEach(distinct::add);
+        this.sinks = distinct;
+    }
+
+    /**
+     * Thrown if a request exceeds the maximum request size.
+     */
+    private static class RequestTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Stream failing once more than a maximum number of bytes are read.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+        private boolean exceeded;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        boolean isExceeded() {
+            return this.exceeded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long read) throws RequestTooLargeException {
+            this.remaining -= read;
+            if (this.remaining < 0) {
+                this.exceeded = true;
+                throw new RequestTooLargeException();
+            }
+        }
+    }
+
+    /**
+     * A subscription to the pushed observations. Closing the subscription
+     * will stop the server if there are no other subscriptions.
+     */
+    public class Subscription implements Closeable {
+        private final Consumer<? super EposEvent> sink;
+        private boolean closed = false;
+
+        private Subscription(Consumer<? super EposEvent> sink) {
+            this.sink = Objects.requireNonNull(sink);
+        }
+
+        @Override
+        public void close() {
+            synchronized (ObservationPushService.this) {
+                if (!this.closed) {
+                    this.closed = true;
+                    unsubscribe(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import net.opengis.om.x20.OMObservationType;
+import net.opengis.sos.x20.GetObservationResponseDocument;
+import net.opengis.sos.x20.GetObservationResponseType.ObservationData;
+
+import org.apache.xmlbeans.XmlException;
+import org.joda.time.DateTime;
+
+/**
+ * {@code SosClient} that requests {@code GetObservation} responses encoded in
+ * XML and can hand out the observations themselves instead of events.
+ */
+public interface ObservationSosClient extends SosClient {
+    /**
+     * Request observations in the specified time slot (filtered using the
+     * during operator).
+     *
+     * @param begin the exclusive lower bound of the time interval
+     * @param end   the exclusive upper bound of the time interval
+     *
+     * @return the response document
+     *
+     * @throws XmlException if the response could not parsed as
+     *                      {@code GetObservationResponseDocument}
+     * @throws IOException  if the underlying HTTP call fails
+     */
+    GetObservationResponseDocument getObservations(DateTime begin, DateTime end)
+            throws XmlException, IOException;
+
+    /**
+     * Request observations in the specified time slot (filtered using the
+     * during operator) and supply them one by one to {@code consumer}.
+     * Implementations should hand out the observations while the response is
+     * still read, so that only a single observation has to be kept in memory.
+     *
+     * @param begin    the exclusive lower bound of the time interval
+     * @param end      the exclusive upper bound of the time interval
+     * @param consumer the consumer of the observations
+     *
+     * @return the number of observations
+     *
+     * @throws XmlException if the response could not parsed as
+     *                      {@code GetObservationResponseDocument}
+     * @throws IOException  if the underlying HTTP call fails
+     */
+    default int getObservations(DateTime begin, DateTime end,
+                                Consumer<? super OMObservationType> consumer)
+            throws XmlException, IOException {
+        ObservationData[] observationData = getObservations(begin, end)
+                .getGetObservationResponse()
+                .getObservationDataArray();
+        for (ObservationData data : observationData) {
+            consumer.accept(data.getOMObservation());
+        }
+        return observationData.length;
+    }
+}
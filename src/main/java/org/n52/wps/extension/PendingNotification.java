@@ -0,0 +1,57 @@
+package org.n52.wps.extension;
+
+import java.util.Objects;
+
+import org.n52.wps.extension.rss.NotificationRssFeedItem;
+
+/**
+ * A notification waiting to be inserted, together with its sequence number
+ * in the {@link NotificationOutbox} (if it is persisted).
+ */
+public class PendingNotification {
+    /**
+     * The sequence number of notifications that are not persisted.
+     */
+    public static final long NO_SEQUENCE = -1L;
+    private final NotificationRssFeedItem item;
+    private final long sequence;
+
+    /**
+     * Create a new {@code PendingNotification}.
+     *
+     * @param item     the notification
+     * @param sequence the sequence number in the outbox or
+     *                 {@link #NO_SEQUENCE}
+     */
+    public PendingNotification(NotificationRssFeedItem item, long sequence) {
+        this.item = Objects.requireNonNull(item);
+        this.sequence = sequence;
+    }
+
+    /**
+     * Get the notification.
+     *
+     * @return the notification
+     */
+    public NotificationRssFeedItem getItem() {
+        return this.item;
+    }
+
+    /**
+     * Get the sequence number of the notification in the outbox.
+     *
+     * @return the sequence number or {@link #NO_SEQUENCE}
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Check if this notification is persisted in an outbox.
+     *
+     * @return if the notification is persisted
+     */
+    public boolean isPersisted() {
+        return this.sequence != NO_SEQUENCE;
+    }
+}
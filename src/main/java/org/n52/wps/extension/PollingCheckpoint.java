@@ -0,0 +1,142 @@
+package org.n52.wps.extension;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent high-water mark of a {@link SesFeeder}. The checkpoint is a small
+ * file holding the end of the last delivered window. The mark is read once
+ * when the checkpoint is opened and is kept in memory; updating it is a
+ * single positional write into the page cache of the file, so it survives a
+ * restart of the process. The file is held open until the checkpoint is
+ * closed.
+ * <p>
+ * The files are stored in the {@linkplain StorageDirectory storage directory}
+ * and are named by the hash of the key of the poller.
+ */
+public class PollingCheckpoint implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(PollingCheckpoint.class);
+    private static final String DIRECTORY = "checkpoints";
+    private static final String SUFFIX = ".checkpoint";
+    private static final long MAGIC = 0x4e35322d43505431L;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CURSOR_OFFSET = 8;
+    private static final int SIZE = 16;
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+    private boolean stored;
+    private long cursor;
+    private boolean closed;
+
+    /**
+     * Creates a new {@code PollingCheckpoint} backed by {@code path}. The
+     * file will be created if it does not exist.
+     *
+     * @param path the checkpoint file
+     *
+     * @throws IOException if the file can not be opened
+     */
+    public PollingCheckpoint(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path,
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        try {
+            while (this.buffer.hasRemaining() &&
+                   this.channel.read(this.buffer, this.buffer.position()) > 0) {
+                // read the complete mark
+            }
+        } catch (IOException ex) {
+            this.channel.close();
+            throw ex;
+        }
+        if (!this.buffer.hasRemaining() && this.buffer.getLong(MAGIC_OFFSET) == MAGIC) {
+            this.stored = true;
+            this.cursor = this.buffer.getLong(CURSOR_OFFSET);
+        }
+    }
+
+    /**
+     * Open the checkpoint of the poller identified by {@code key} in the
+     * storage directory.
+     *
+     * @param key the key of the poller; its string representation has to be
+     *            stable across restarts
+     *
+     * @return the checkpoint
+     *
+     * @throws IOException if no storage directory is configured or the
+     *                     checkpoint can not be opened
+     */
+    public static PollingCheckpoint open(Object key) throws IOException {
+        Path directory = StorageDirectory.getPersistentDirectory(DIRECTORY);
+        return new PollingCheckpoint(directory.resolve(StorageDirectory.getFileName(key) + SUFFIX));
+    }
+
+    /**
+     * Get the stored high-water mark.
+     *
+     * @param defaultValue the value to return if nothing was stored yet
+     *
+     * @return the high-water mark (in ms since the epoch)
+     */
+    public synchronized long get(long defaultValue) {
+        return this.stored ? this.cursor : defaultValue;
+    }
+
+    /**
+     * Store the high-water mark. Failures to write the file are logged, as
+     * they only affect the next restart. Marks set after the checkpoint was
+     * closed are ignored.
+     *
+     * @param cursor the high-water mark (in ms since the epoch)
+     */
+    public synchronized void set(long cursor) {
+        if (this.closed) {
+            return;
+        }
+        this.stored = true;
+        this.cursor = cursor;
+        this.buffer.clear();
+        this.buffer.putLong(MAGIC_OFFSET, MAGIC);
+        this.buffer.putLong(CURSOR_OFFSET, cursor);
+        try {
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer, this.buffer.position());
+            }
+        } catch (IOException ex) {
+            LOG.warn("Could not update checkpoint " + this.path, ex);
+        }
+    }
+
+    /**
+     * Get the file backing this checkpoint.
+     *
+     * @return the path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Close the file backing this checkpoint.
+     *
+     * @throws IOException if the file can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!this.closed) {
+            this.closed = true;
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.n52.wps.extension;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Immutable description of the schedule of a {@link SesFeeder}. Polls are
+ * fired at a fixed rate (the processing time of a poll does not shift the
+ * following polls), optionally displaced by a random jitter. The interval
+ * adapts to the responses: it is doubled after empty responses and halved
+ * after non-empty responses within the bounds of the schedule.
+ */
+public class PollingSchedule {
+    private static final long ADAPTION_FACTOR = 2L;
+    private final long interval;
+    private final long minInterval;
+    private final long maxInterval;
+    private final long jitter;
+
+    /**
+     * Creates a new {@code PollingSchedule}.
+     *
+     * @param interval    the initial interval (in ms)
+     * @param minInterval the lower bound of the interval (in ms)
+     * @param maxInterval the upper bound of the interval (in ms)
+     * @param jitter      the maximum random displacement of a poll (in ms)
+     *
+     * @throws IllegalArgumentException if the interval is not within its
+     *                                  bounds or the jitter is negative
+     */
+    public PollingSchedule(long interval, long minInterval, long maxInterval,
+                           long jitter) {
+        if (minInterval <= 0 || minInterval > interval ||
+            interval > maxInterval) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid interval %d, min %d, max %d",
+                    interval, minInterval, maxInterval));
+        }
+        if (jitter < 0) {
+            throw new IllegalArgumentException("Negative jitter: " + jitter);
+        }
+        this.interval = interval;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Creates a new {@code PollingSchedule} with a fixed interval and without
+     * jitter.
+     *
+     * @param interval the interval (in ms)
+     *
+     * @return the schedule
+     */
+    public static PollingSchedule fixed(long interval) {
+        return new PollingSchedule(interval, interval, interval, 0L);
+    }
+
+    /**
+     * Get the initial interval.
+     *
+     * @return the interval (in ms)
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Get the lower bound of the interval.
+     *
+     * @return the lower bound (in ms)
+     */
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    /**
+     * Get the upper bound of the interval.
+     *
+     * @return the upper bound (in ms)
+     */
+    public long getMaxInterval() {
+        return maxInterval;
+    }
+
+    /**
+     * Get the maximum random displacement of a poll.
+     *
+     * @return the jitter (in ms)
+     */
+    public long getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Compute the interval following {@code current} after a poll that
+     * received {@code received} observations.
+     *
+     * @param current  the current interval
+     * @param received the number of received observations
+     *
+     * @return the adapted interval
+     */
+    public long adapt(long current, int received) {
+        if (received == 0) {
+            return Math.min(this.maxInterval, current * ADAPTION_FACTOR);
+        } else {
+            return Math.max(this.minInterval, current / ADAPTION_FACTOR);
+        }
+    }
+
+    /**
+     * Create a random displacement in the range of {@code [0, jitter]}.
+     *
+     * @return the displacement (in ms)
+     */
+    public long nextJitter() {
+        if (this.jitter == 0) {
+            return 0L;
+        }
+        return ThreadLocalRandom.current().nextLong(this.jitter + 1);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.interval, this.minInterval,
+                            this.maxInterval, this.jitter);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof PollingSchedule)) {
+            return false;
+        }
+        PollingSchedule that = (PollingSchedule) obj;
+        return this.interval == that.interval &&
+               this.minInterval == that.minInterval &&
+               this.maxInterval == that.maxInterval &&
+               this.jitter == that.jitter;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("interval", this.interval)
+                .add("min", this.minInterval)
+                .add("max", this.maxInterval)
+                .add("jitter", this.jitter)
+                .toString();
+    }
+}
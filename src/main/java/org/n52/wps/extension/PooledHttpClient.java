@@ -0,0 +1,368 @@
+package org.n52.wps.extension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.apache.xmlbeans.XmlObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@code HttpClient} using a pool of persistent connections
+ * of the Apache HttpClient. The number of connections is limited in total and
+ * per host; connections are returned to the pool as soon as the response
+ * stream is read completely or closed. A response stream that is closed with
+ * more than a small remainder left unread (e.g. because the reader aborted)
+ * discards its connection instead of reading the rest of the response.
+ * Unsuccessful responses are consumed before the exception is thrown, so that
+ * the connection can be reused.
+ * <p>
+ * Compressed responses are negotiated and decompressed like by the
+ * {@link URLConnectionHttpClient}. The connect and
+ * read timeouts are taken from the {@linkplain HttpTimeouts endpoint}; the
+ * connect timeout also limits the time to wait for a pooled connection.
+ */
+public class PooledHttpClient implements HttpClient, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(PooledHttpClient.class);
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    private static final long MAX_IDLE_TIME = TimeUnit.SECONDS.toMillis(30);
+    private static final int VALIDATE_AFTER_INACTIVITY = 2000;
+    /**
+     * The maximum number of unread bytes to skip to reuse the connection.
+     */
+    private static final int MAX_REMAINDER = 8192;
+    private static final PooledHttpClient INSTANCE = new PooledHttpClient();
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+    private final int compressionThreshold;
+    private final HttpTimeouts timeouts;
+
+    /**
+     * Create a new {@code PooledHttpClient} using the default limits, the
+     * {@linkplain URLConnectionHttpClient#COMPRESSION_THRESHOLD_PROPERTY
+     * default compression threshold} and the
+     * {@linkplain HttpTimeouts#fromSystemProperties() configured timeouts}.
+     */
+    public PooledHttpClient() {
+        this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST,
+             Integer.getInteger(
+                     URLConnectionHttpClient.COMPRESSION_THRESHOLD_PROPERTY,
+                     URLConnectionHttpClient.NO_COMPRESSION),
+             HttpTimeouts.fromSystemProperties());
+    }
+
+    /**
+     * Create a new {@code PooledHttpClient}.
+     *
+     * @param maxConnections        the maximum number of connections
+     * @param maxConnectionsPerHost the maximum number of connections per host
+     * @param compressionThreshold  the minimum size (in bytes) of request
+     *                              bodies to compress or a negative value to
+     *                              never compress request bodies
+     * @param timeouts              the timeouts
+     */
+    public PooledHttpClient(int maxConnections, int maxConnectionsPerHost,
+                            int compressionThreshold, HttpTimeouts timeouts) {
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(maxConnections);
+        this.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+        this.connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+        this.client = HttpClients.custom()
+                .setConnectionManager(this.connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(MAX_IDLE_TIME, TimeUnit.MILLISECONDS)
+                .useSystemProperties()
+                .build();
+        this.compressionThreshold = compressionThreshold;
+        this.timeouts = Objects.requireNonNull(timeouts);
+    }
+
+    /**
+     * Get the shared instance of this client.
+     *
+     * @return the instance
+     */
+    public static PooledHttpClient getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public InputStream post(URL url, XmlObject request)
+            throws IOException {
+        return post(url, "application/xml", "application/xml", request::save);
+    }
+
+    @Override
+    public InputStream get(URL url)
+            throws IOException {
+        return get(url, "application/xml");
+    }
+
+    @Override
+    public InputStream get(URL url, String accept)
+            throws IOException {
+        HttpGet get = new HttpGet(toURI(url));
+        get.setConfig(getRequestConfig(url));
+        get.setHeader(HttpHeaders.ACCEPT, accept);
+        return execute(get);
+    }
+
+    @Override
+    public OutputStream post(URL url, String contentType)
+            throws IOException {
+        // the request is send when the stream is closed
+        return new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (!this.closed) {
+                    this.closed = true;
+                    post(url, contentType, toByteArray()).close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream post(URL url, String contentType, String request)
+            throws IOException {
+        return post(url, contentType, request.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public InputStream post(URL url, String contentType, byte[] request)
+            throws IOException {
+        return post(url, contentType, null, request);
+    }
+
+    @Override
+    public InputStream post(URL url, String contentType, String accept,
+                            byte[] request)
+            throws IOException {
+        HttpPost post = new HttpPost(toURI(url));
+        post.setConfig(getRequestConfig(url));
+        post.setHeader(HttpHeaders.CONTENT_TYPE, contentType);
+        if (accept != null) {
+            post.setHeader(HttpHeaders.ACCEPT, accept);
+        }
+        HttpEntity entity = new ByteArrayEntity(request);
+        if (this.compressionThreshold >= 0 &&
+            request.length >= this.compressionThreshold) {
+            entity = new GzipCompressingEntity(entity);
+        }
+        post.setEntity(entity);
+        return execute(post);
+    }
+
+    @Override
+    public InputStream post(URL url, String contentType, String accept,
+                            BodyWriter request)
+            throws IOException {
+        HttpPost post = new HttpPost(toURI(url));
+        post.setConfig(getRequestConfig(url));
+        post.setHeader(HttpHeaders.CONTENT_TYPE, contentType);
+        if (accept != null) {
+            post.setHeader(HttpHeaders.ACCEPT, accept);
+        }
+        HttpEntity entity = new BodyWriterEntity(request);
+        // the length is not known in advance
+        if (this.compressionThreshold >= 0) {
+            entity = new GzipCompressingEntity(entity);
+        }
+        post.setEntity(entity);
+        return execute(post);
+    }
+
+    /**
+     * Execute the request and return the response stream. Closing the
+     * stream will release the connection.
+     *
+     * @param request the request
+     *
+     * @return the response stream
+     *
+     * @throws IOException if the HTTP call fails or is not successful
+     */
+    private InputStream execute(HttpUriRequest request) throws IOException {
+        CloseableHttpResponse response = this.client.execute(request);
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status >= 300) {
+                // consume the response to allow the connection to be reused
+                EntityUtils.consumeQuietly(entity);
+                throw new HttpResponseException(status, String.format(
+                        "%s %s: %s", request.getMethod(), request.getURI(),
+                        response.getStatusLine().getReasonPhrase()));
+            }
+            if (entity == null) {
+                response.close();
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            return new ResponseInputStream(entity.getContent(), response);
+        } catch (IOException | RuntimeException ex) {
+            response.close();
+            throw ex;
+        }
+    }
+
+    private RequestConfig getRequestConfig(URL url) {
+        int connectTimeout = this.timeouts.getConnectTimeout(url);
+        return RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(this.timeouts.getReadTimeout(url))
+                .build();
+    }
+
+    private static URI toURI(URL url) {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.client.close();
+        LOG.debug("Closed connection pool {}", this.connectionManager.getTotalStats());
+    }
+
+    /**
+     * Chunked entity that is written by a {@link BodyWriter}. The writer is
+     * invoked again for every transmission, so the entity can be retried;
+     * {@link #getContent()} buffers the body in memory and is only meant for
+     * interceptors inspecting the request.
+     */
+    private static class BodyWriterEntity extends AbstractHttpEntity {
+        private final BodyWriter writer;
+
+        BodyWriterEntity(BodyWriter writer) {
+            this.writer = Objects.requireNonNull(writer);
+            setChunked(true);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeTo(out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            this.writer.writeTo(out);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    /**
+     * Response stream that releases the connection if it is closed.
+     */
+    private static class ResponseInputStream extends FilterInputStream {
+        private final CloseableHttpResponse response;
+        private boolean eof = false;
+
+        ResponseInputStream(InputStream in, CloseableHttpResponse response) {
+            super(in);
+            this.response = response;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                this.eof = true;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read < 0) {
+                this.eof = true;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (this.eof || skipRemainder()) {
+                    // closing the content returns the connection to the pool
+                    super.close();
+                }
+            } finally {
+                // discards the connection if the content was not closed
+                this.response.close();
+            }
+        }
+
+        /**
+         * Skip the unread part of the response if it is not larger than
+         * {@link #MAX_REMAINDER}.
+         *
+         * @return if the end of the response was reached
+         */
+        private boolean skipRemainder() {
+            byte[] buffer = new byte[MAX_REMAINDER + 1];
+            int skipped = 0;
+            try {
+                while (skipped <= MAX_REMAINDER) {
+                    int read = this.in.read(buffer, skipped, buffer.length - skipped);
+                    if (read < 0) {
+                        return true;
+                    }
+                    skipped += read;
+                }
+            } catch (IOException ex) {
+                LOG.debug("Could not skip the remainder of the response", ex);
+            }
+            return false;
+        }
+    }
+}
@@ -3,20 +3,31 @@ package org.n52.wps.extension;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import net.opengis.fes.x20.BinaryTemporalOpType;
 import net.opengis.fes.x20.DuringDocument;
 import net.opengis.gml.x32.TimePeriodDocument;
 import net.opengis.gml.x32.TimePeriodType;
+import net.opengis.om.x20.OMObservationType;
 import net.opengis.sos.x20.GetObservationDocument;
 import net.opengis.sos.x20.GetObservationResponseDocument;
+import net.opengis.sos.x20.GetObservationType;
 import net.opengis.sos.x20.GetObservationType.TemporalFilter;
 
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
 import org.joda.time.DateTime;
-import org.joda.time.format.ISODateTimeFormat;
 
+import org.n52.epos.event.EposEvent;
 import org.n52.iceland.ogc.om.OmConstants;
 
 /**
@@ -24,14 +35,28 @@ import org.n52.iceland.ogc.om.OmConstants;
  *
  * @author Christian Autermann
  */
-public class PoxSosClient implements SosClient {
+public class PoxSosClient implements ObservationSosClient {
     private static final String PHENOMENON_TIME_REFERENCE = "phenomenonTime";
+    private static final String CONTENT_TYPE = "application/xml";
+    private static final String BEGIN_SLOT = "@@begin@@";
+    private static final String END_SLOT = "@@end@@";
+    private static final List<ShardDimension> SHARD_DIMENSIONS = Arrays.asList(
+            new ShardDimension(GetObservationType::getProcedureArray,
+                               GetObservationType::setProcedureArray),
+            new ShardDimension(GetObservationType::getOfferingArray,
+                               GetObservationType::setOfferingArray),
+            new ShardDimension(GetObservationType::getFeatureOfInterestArray,
+                               GetObservationType::setFeatureOfInterestArray));
     private final HttpClient client;
     private final GetObservationDocument requestTemplate;
     private final URL endpoint;
+    private final String requestKey;
+    private final RequestTemplate request;
+    private final ResponseEncoding encoding;
+    private final GetObservationResponseReader responseReader;
 
     /**
-     * Create a new {@code PoxSosClient}.
+     * Create a new {@code PoxSosClient} requesting XML responses.
      *
      * @param client          the HTTP client to use
      * @param requestTemplate the request template
@@ -40,9 +65,28 @@ public class PoxSosClient implements SosClient {
     public PoxSosClient(HttpClient client,
                         GetObservationDocument requestTemplate,
                         URL endpoint) {
+        this(client, requestTemplate, endpoint, ResponseEncoding.XML);
+    }
+
+    /**
+     * Create a new {@code PoxSosClient}.
+     *
+     * @param client          the HTTP client to use
+     * @param requestTemplate the request template
+     * @param endpoint        the SOS endpoint
+     * @param encoding        the requested encoding of streamed responses
+     */
+    public PoxSosClient(HttpClient client,
+                        GetObservationDocument requestTemplate,
+                        URL endpoint, ResponseEncoding encoding) {
         this.client = client;
+        this.encoding = Objects.requireNonNull(encoding);
+        this.responseReader = encoding.createReader();
         this.requestTemplate = prepareTemplate(requestTemplate);
         this.endpoint = endpoint;
+        this.request = compile(this.requestTemplate);
+        this.requestKey = endpoint + "\n" + this.requestTemplate
+                .xmlText(new XmlOptions().setSaveAggressiveNamespaces());
     }
 
     /**
@@ -58,53 +102,159 @@ public class PoxSosClient implements SosClient {
         this(client, (GetObservationDocument) requestTemplate, endpoint);
     }
 
+    /**
+     * Create a new {@code PoxSosClient}.
+     *
+     * @param client          the HTTP client to use
+     * @param requestTemplate the request template
+     * @param endpoint        the SOS endpoint
+     * @param encoding        the requested encoding of streamed responses
+     */
+    public PoxSosClient(HttpClient client,
+                        XmlObject requestTemplate,
+                        URL endpoint, ResponseEncoding encoding) {
+        this(client, (GetObservationDocument) requestTemplate, endpoint, encoding);
+    }
+
     /**
      * Prepare {@code template} by setting required and removing conflicting
-     * parameters.
+     * parameters. The order of the procedure, offering, observed property and
+     * feature of interest parameters is normalized, so that equivalent
+     * templates result in equal requests.
      *
      * @param template the template
      *
      * @return the prepared template
      */
     private GetObservationDocument prepareTemplate(GetObservationDocument template) {
+        GetObservationType getObservation = template.getGetObservation();
         // clear all temporal filters
-        template.getGetObservation().setTemporalFilterArray(new TemporalFilter[0]);
+        getObservation.setTemporalFilterArray(new TemporalFilter[0]);
         // be sure to get OM2
-        template.getGetObservation().setResponseFormat(OmConstants.RESPONSE_FORMAT_OM_2);
+        getObservation.setResponseFormat(OmConstants.RESPONSE_FORMAT_OM_2);
+        getObservation.setProcedureArray(sorted(getObservation.getProcedureArray()));
+        getObservation.setOfferingArray(sorted(getObservation.getOfferingArray()));
+        getObservation.setObservedPropertyArray(sorted(getObservation.getObservedPropertyArray()));
+        getObservation.setFeatureOfInterestArray(sorted(getObservation.getFeatureOfInterestArray()));
         return template;
     }
 
+    private static String[] sorted(String[] values) {
+        String[] copy = values.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    @Override
+    public Object getRequestKey() {
+        return this.requestKey;
+    }
+
     @Override
     public GetObservationResponseDocument getObservations(DateTime begin, DateTime end)
             throws XmlException, IOException {
-        GetObservationDocument request = createRequest(begin, end);
-        try (InputStream in = client.post(endpoint, request)) {
+        try (InputStream in = request(begin, end, ResponseEncoding.XML)) {
             return GetObservationResponseDocument.Factory.parse(in);
         }
     }
 
+    @Override
+    public int getObservations(DateTime begin, DateTime end,
+                               Consumer<? super OMObservationType> consumer)
+            throws XmlException, IOException {
+        try (InputStream in = request(begin, end, this.encoding)) {
+            return this.responseReader.read(in, consumer);
+        }
+    }
+
+    @Override
+    public int getEvents(DateTime begin, DateTime end,
+                         Consumer<? super EposEvent> consumer)
+            throws XmlException, IOException {
+        try (InputStream in = request(begin, end, this.encoding)) {
+            return this.responseReader.readEvents(in, consumer);
+        }
+    }
+
+    /**
+     * Split the template by the procedures, offerings or features of interest
+     * (whichever has the most values).
+     *
+     * @param shards the maximum number of shards
+     *
+     * @return the clients of the shards
+     */
+    @Override
+    public List<SosClient> split(int shards) {
+        GetObservationType template = this.requestTemplate.getGetObservation();
+        ShardDimension dimension = SHARD_DIMENSIONS.stream()
+                .max(Comparator.comparingInt(d -> d.getter.apply(template).length))
+                .get();
+        List<String> values = Arrays.asList(dimension.getter.apply(template));
+        return ShardedSosClient.partition(values, shards).stream()
+                .map(partition -> {
+                    GetObservationDocument shard = (GetObservationDocument) this.requestTemplate.copy();
+                    dimension.setter.accept(shard.getGetObservation(),
+                                            partition.toArray(new String[partition.size()]));
+                    return new PoxSosClient(this.client, shard, this.endpoint, this.encoding);
+                }).collect(Collectors.toList());
+    }
+
     /**
-     * Create the {@code GetObservation} request from the template using the
-     * specified time span.
+     * Compile the {@code GetObservation} request with slots for the begin and
+     * end of the temporal filter.
      *
-     * @param begin the exclusive lower bound of the time span
-     * @param end   the exclusive upper bound of the time span
+     * @param template the prepared template
      *
-     * @return the request document
+     * @return the compiled request
      */
-    private GetObservationDocument createRequest(DateTime begin, DateTime end) {
-        GetObservationDocument request = (GetObservationDocument) this.requestTemplate.copy();
+    private static RequestTemplate compile(GetObservationDocument template) {
+        GetObservationDocument request = (GetObservationDocument) template.copy();
         DuringDocument document = DuringDocument.Factory.newInstance();
         BinaryTemporalOpType addNewDuring = document.addNewDuring();
         TimePeriodDocument document1 = TimePeriodDocument.Factory.newInstance();
         TimePeriodType period = document1.addNewTimePeriod();
-        period.addNewBeginPosition().setStringValue(ISODateTimeFormat.dateTime().print(begin));
-        period.addNewEndPosition().setStringValue(ISODateTimeFormat.dateTime().print(end));
+        period.addNewBeginPosition().setStringValue(BEGIN_SLOT);
+        period.addNewEndPosition().setStringValue(END_SLOT);
         addNewDuring.set(document1);
         addNewDuring.setValueReference(PHENOMENON_TIME_REFERENCE);
         request.getGetObservation().addNewTemporalFilter().addNewTemporalOps().set(document);
-        return request;
+        return RequestTemplate.compile(request.xmlText(), BEGIN_SLOT, END_SLOT);
+    }
+
+    /**
+     * Send the {@code GetObservation} request for the specified time span.
+     *
+     * @param begin    the exclusive lower bound of the time span
+     * @param end      the exclusive upper bound of the time span
+     * @param encoding the encoding of the response
+     *
+     * @return the response stream
+     *
+     * @throws IOException if the HTTP call fails
+     */
+    private InputStream request(DateTime begin, DateTime end,
+                                ResponseEncoding encoding)
+            throws IOException {
+        // the body is the per-thread buffer of the template; it is only
+        // valid until this thread renders the next request, which is fine as
+        // it is posted synchronously and not retained by the client
+        byte[] body = this.request.render(begin.getMillis(), end.getMillis());
+        return this.client.post(this.endpoint, CONTENT_TYPE, encoding.getAccept(), body);
     }
 
+    /**
+     * A parameter of the {@code GetObservation} request that can be used to
+     * split the request.
+     */
+    private static class ShardDimension {
+        private final Function<GetObservationType, String[]> getter;
+        private final BiConsumer<GetObservationType, String[]> setter;
 
+        ShardDimension(Function<GetObservationType, String[]> getter,
+                       BiConsumer<GetObservationType, String[]> setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
 }
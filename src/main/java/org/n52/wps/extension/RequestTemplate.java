@@ -0,0 +1,161 @@
+package org.n52.wps.extension;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Precompiled request with slots for the begin and end of the requested time
+ * span. The template is split once into byte fragments; rendering a request
+ * just writes two ISO 8601 timestamps (in UTC, with millisecond precision)
+ * into a per-thread buffer that already contains the fragments.
+ * <p>
+ * As the buffer is overwritten by the next request of the same thread,
+ * callers that hand the rendered request to another thread (e.g. for an
+ * asynchronous or hedged request) have to copy it or use
+ * {@link #renderString(long, long)}.
+ */
+public class RequestTemplate {
+    /**
+     * The length of a timestamp ({@code yyyy-MM-ddTHH:mm:ss.SSSZ}).
+     */
+    public static final int TIMESTAMP_LENGTH = 24;
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final long MIN_MILLIS = -62167219200000L; // 0000-01-01
+    private static final long MAX_MILLIS = 253402300799999L; // 9999-12-31
+    private final byte[] template;
+    private final int beginOffset;
+    private final int endOffset;
+    private final ThreadLocal<byte[]> buffer;
+
+    /**
+     * Creates a new {@code RequestTemplate}.
+     *
+     * @param prefix the fragment preceding the begin
+     * @param infix  the fragment between begin and end
+     * @param suffix the fragment following the end
+     */
+    public RequestTemplate(byte[] prefix, byte[] infix, byte[] suffix) {
+        this.beginOffset = prefix.length;
+        this.endOffset = this.beginOffset + TIMESTAMP_LENGTH + infix.length;
+        this.template = new byte[this.endOffset + TIMESTAMP_LENGTH + suffix.length];
+        System.arraycopy(prefix, 0, this.template, 0, prefix.length);
+        System.arraycopy(infix, 0, this.template, this.beginOffset + TIMESTAMP_LENGTH, infix.length);
+        System.arraycopy(suffix, 0, this.template, this.endOffset + TIMESTAMP_LENGTH, suffix.length);
+        this.buffer = ThreadLocal.withInitial(this.template::clone);
+    }
+
+    /**
+     * Compile {@code request} into a template by replacing the first
+     * occurrences of {@code beginSlot} and {@code endSlot} (in that order).
+     *
+     * @param request   the request
+     * @param beginSlot the placeholder of the begin
+     * @param endSlot   the placeholder of the end
+     *
+     * @return the template
+     *
+     * @throws IllegalArgumentException if a placeholder is missing
+     */
+    public static RequestTemplate compile(String request, String beginSlot,
+                                          String endSlot) {
+        int begin = request.indexOf(beginSlot);
+        int end = begin < 0 ? -1 : request.indexOf(endSlot, begin + beginSlot.length());
+        if (begin < 0 || end < 0) {
+            throw new IllegalArgumentException("Missing placeholder in " + request);
+        }
+        return new RequestTemplate(
+                request.substring(0, begin).getBytes(StandardCharsets.UTF_8),
+                request.substring(begin + beginSlot.length(), end).getBytes(StandardCharsets.UTF_8),
+                request.substring(end + endSlot.length()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Render the request for the specified time span. The returned array is
+     * reused by subsequent calls of the same thread and must not be retained;
+     * it has to be copied if it is used by another thread or after the next
+     * call.
+     *
+     * @param begin the begin (in ms since the epoch)
+     * @param end   the end (in ms since the epoch)
+     *
+     * @return the encoded request
+     */
+    public byte[] render(long begin, long end) {
+        byte[] request = this.buffer.get();
+        writeTimestamp(request, this.beginOffset, begin);
+        writeTimestamp(request, this.endOffset, end);
+        return request;
+    }
+
+    /**
+     * Render the request for the specified time span as a string. Unlike
+     * {@link #render(long, long)} the result is a copy that can be retained
+     * and shared.
+     *
+     * @param begin the begin (in ms since the epoch)
+     * @param end   the end (in ms since the epoch)
+     *
+     * @return the request
+     */
+    public String renderString(long begin, long end) {
+        return new String(render(begin, end), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write {@code millis} as {@code yyyy-MM-ddTHH:mm:ss.SSSZ} into
+     * {@code buffer}.
+     *
+     * @param buffer the buffer
+     * @param offset the offset of the timestamp in the buffer
+     * @param millis the instant (in ms since the epoch)
+     *
+     * @throws IllegalArgumentException if the year is not within
+     *                                  {@code [0000, 9999]}
+     */
+    public static void writeTimestamp(byte[] buffer, int offset, long millis) {
+        if (millis < MIN_MILLIS || millis > MAX_MILLIS) {
+            throw new IllegalArgumentException("Unsupported instant: " + millis);
+        }
+        long days = Math.floorDiv(millis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(millis, MILLIS_PER_DAY);
+        // civil date from days since the epoch (proleptic gregorian)
+        long z = days + 719468L;
+        long era = Math.floorDiv(z, 146097L);
+        int dayOfEra = (int) (z - era * 146097L);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = (int) (yearOfEra + era * 400L) + (month <= 2 ? 1 : 0);
+
+        int i = offset;
+        i = writeDigits(buffer, i, year, 4);
+        buffer[i++] = '-';
+        i = writeDigits(buffer, i, month, 2);
+        buffer[i++] = '-';
+        i = writeDigits(buffer, i, day, 2);
+        buffer[i++] = 'T';
+        i = writeDigits(buffer, i, millisOfDay / 3600000, 2);
+        buffer[i++] = ':';
+        i = writeDigits(buffer, i, millisOfDay / 60000 % 60, 2);
+        buffer[i++] = ':';
+        i = writeDigits(buffer, i, millisOfDay / 1000 % 60, 2);
+        buffer[i++] = '.';
+        i = writeDigits(buffer, i, millisOfDay % 1000, 3);
+        buffer[i] = 'Z';
+    }
+
+    private static int writeDigits(byte[] buffer, int offset, int value, int digits) {
+        int v = value;
+        for (int i = offset + digits - 1; i >= offset; --i) {
+            buffer[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        return offset + digits;
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.template, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,288 @@
+package org.n52.wps.extension;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.xmlbeans.XmlObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code HttpClient} decorator that protects a class of traffic (e.g. SOS
+ * requests or notifications) against misbehaving endpoints:
+ * <ul>
+ * <li>Every endpoint has its own {@link CircuitBreaker}, so calls to an
+ * endpoint that failed repeatedly are rejected immediately instead of
+ * blocking a thread until they time out.</li>
+ * <li>The number of concurrent calls is limited (bulkhead), so one class of
+ * traffic can not consume the capacity of the shared connection pool. A call
+ * holds its permit until the response stream is closed.</li>
+ * </ul>
+ * Rejected calls fail with a {@link CallRejectedException}. Failures while
+ * reading the response (e.g. read timeouts) are counted as failures of the
+ * endpoint, responses rejecting the request with a client error are not.
+ */
+public class ResilientHttpClient implements HttpClient {
+    private static final Logger LOG = LoggerFactory.getLogger(ResilientHttpClient.class);
+    private final HttpClient delegate;
+    private final String name;
+    private final Semaphore bulkhead;
+    private final long maxWait;
+    private final int failureThreshold;
+    private final long openDuration;
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new {@code ResilientHttpClient}.
+     *
+     * @param delegate           the client to delegate to
+     * @param name               the name of the traffic class (for logging)
+     * @param maxConcurrentCalls the maximum number of concurrent calls
+     * @param maxWait            the maximum time (in ms) to wait for a
+     *                           permit if the maximum number of concurrent
+     *                           calls is reached
+     * @param failureThreshold   the number of consecutive failures that
+     *                           open the circuit of an endpoint
+     * @param openDuration       the time (in ms) the circuit of an endpoint
+     *                           stays open before a probe is permitted
+     */
+    public ResilientHttpClient(HttpClient delegate, String name,
+                               int maxConcurrentCalls, long maxWait,
+                               int failureThreshold, long openDuration) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.name = Objects.requireNonNull(name);
+        this.bulkhead = new Semaphore(maxConcurrentCalls, true);
+        this.maxWait = maxWait;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Get the circuit breaker of the endpoint of {@code url}. The endpoint is
+     * identified by the URL without the query.
+     *
+     * @param url the URL
+     *
+     * @return the circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker(URL url) {
+        String endpoint = url.getProtocol() + "://" + url.getAuthority() + url.getPath();
+        return this.circuitBreakers.computeIfAbsent(endpoint, e ->
+                new CircuitBreaker(this.failureThreshold, this.openDuration));
+    }
+
+    @Override
+    public InputStream post(URL url, XmlObject request)
+            throws IOException {
+        return post(url, "application/xml", "application/xml", request::save);
+    }
+
+    @Override
+    public InputStream get(URL url)
+            throws IOException {
+        return call(url, () -> this.delegate.get(url));
+    }
+
+    @Override
+    public InputStream get(URL url, String accept)
+            throws IOException {
+        return call(url, () -> this.delegate.get(url, accept));
+    }
+
+    @Override
+    public OutputStream post(URL url, String contentType)
+            throws IOException {
+        CircuitBreaker circuitBreaker = admit(url);
+        OutputStream out;
+        try {
+            out = this.delegate.post(url, contentType);
+        } catch (IOException | RuntimeException ex) {
+            circuitBreaker.onFailure(ex);
+            this.bulkhead.release();
+            throw ex;
+        }
+        AtomicBoolean released = new AtomicBoolean(false);
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (released.compareAndSet(false, true)) {
+                    try {
+                        super.close();
+                        circuitBreaker.onSuccess();
+                    } catch (IOException | RuntimeException ex) {
+                        circuitBreaker.onFailure(ex);
+                        throw ex;
+                    } finally {
+                        bulkhead.release();
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream post(URL url, String contentType, String request)
+            throws IOException {
+        return call(url, () -> this.delegate.post(url, contentType, request));
+    }
+
+    @Override
+    public InputStream post(URL url, String contentType, byte[] request)
+            throws IOException {
+        return call(url, () -> this.delegate.post(url, contentType, request));
+    }
+
+    @Override
+    public InputStream post(URL url, String contentType, String accept,
+                            byte[] request)
+            throws IOException {
+        return call(url, () -> this.delegate.post(url, contentType, accept, request));
+    }
+
+    @Override
+    public InputStream post(URL url, String contentType, String accept,
+                            BodyWriter request)
+            throws IOException {
+        return call(url, () -> this.delegate.post(url, contentType, accept, request));
+    }
+
+    /**
+     * Execute the call if the endpoint and the bulkhead admit it.
+     *
+     * @param url  the endpoint
+     * @param call the call
+     *
+     * @return the guarded response stream
+     *
+     * @throws IOException if the call is rejected or fails
+     */
+    private InputStream call(URL url, Call call) throws IOException {
+        CircuitBreaker circuitBreaker = admit(url);
+        try {
+            InputStream in = call.execute();
+            circuitBreaker.onSuccess();
+            return new GuardedInputStream(in, circuitBreaker);
+        } catch (IOException | RuntimeException ex) {
+            circuitBreaker.onFailure(ex);
+            this.bulkhead.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Acquire a permit of the bulkhead and check the circuit of the endpoint.
+     *
+     * @param url the endpoint
+     *
+     * @return the circuit breaker of the endpoint
+     *
+     * @throws IOException if the call is rejected or the thread is
+     *                     interrupted
+     */
+    private CircuitBreaker admit(URL url) throws IOException {
+        boolean acquired;
+        try {
+            acquired = this.bulkhead.tryAcquire(this.maxWait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (!acquired) {
+            throw new CallRejectedException(String.format(
+                    "Too many concurrent %s calls", this.name));
+        }
+        CircuitBreaker circuitBreaker = getCircuitBreaker(url);
+        if (!circuitBreaker.tryAcquire()) {
+            this.bulkhead.release();
+            LOG.debug("Rejecting {} call to {}: {}", this.name, url, circuitBreaker);
+            throw new CallRejectedException(String.format(
+                    "Circuit of %s endpoint %s is open", this.name, url));
+        }
+        return circuitBreaker;
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        InputStream execute() throws IOException;
+    }
+
+    /**
+     * Response stream that reports read failures to the circuit breaker and
+     * releases the permit of the bulkhead when it is closed.
+     */
+    private class GuardedInputStream extends FilterInputStream {
+        private final CircuitBreaker circuitBreaker;
+        private boolean failed = false;
+        private boolean closed = false;
+
+        GuardedInputStream(InputStream in, CircuitBreaker circuitBreaker) {
+            super(in);
+            this.circuitBreaker = circuitBreaker;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException ex) {
+                fail();
+                throw ex;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (IOException ex) {
+                fail();
+                throw ex;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                return super.skip(n);
+            } catch (IOException ex) {
+                fail();
+                throw ex;
+            }
+        }
+
+        private void fail() {
+            if (!this.failed) {
+                this.failed = true;
+                this.circuitBreaker.onFailure();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                try {
+                    super.close();
+                } finally {
+                    bulkhead.release();
+                }
+            }
+        }
+    }
+}
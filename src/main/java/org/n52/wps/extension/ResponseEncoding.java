@@ -0,0 +1,61 @@
+package org.n52.wps.extension;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * The encoding of {@code GetObservation} responses requested by a
+ * {@code SosClient}.
+ */
+public enum ResponseEncoding {
+    /**
+     * Text XML.
+     */
+    XML("application/xml", GetObservationResponseReader::new),
+    /**
+     * EXI (Efficient XML Interchange), falling back to text XML if the server
+     * does not support it.
+     */
+    EXI(ExiGetObservationResponseReader.EXI_MEDIA_TYPE + ", application/xml;q=0.9",
+        ExiGetObservationResponseReader::new);
+
+    private final String accept;
+    private final Supplier<GetObservationResponseReader> readerFactory;
+
+    ResponseEncoding(String accept,
+                     Supplier<GetObservationResponseReader> readerFactory) {
+        this.accept = accept;
+        this.readerFactory = readerFactory;
+    }
+
+    /**
+     * Get the value of the {@code Accept} header negotiating this encoding.
+     *
+     * @return the accepted media types
+     */
+    public String getAccept() {
+        return accept;
+    }
+
+    /**
+     * Create a reader for responses in this encoding.
+     *
+     * @return the reader
+     */
+    public GetObservationResponseReader createReader() {
+        return this.readerFactory.get();
+    }
+
+    /**
+     * Get the encoding by its (case insensitive) name.
+     *
+     * @param name the name
+     *
+     * @return the encoding
+     *
+     * @throws IllegalArgumentException if there is no such encoding
+     */
+    public static ResponseEncoding fromString(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
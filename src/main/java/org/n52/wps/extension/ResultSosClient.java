@@ -0,0 +1,175 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.apache.commons.httpclient.URIException;
+import org.apache.commons.httpclient.util.URIUtil;
+import org.apache.xmlbeans.XmlException;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.epos.event.EposEvent;
+
+/**
+ * Implementation of {@code SosClient} using the result handling extension of
+ * SOS 2.0. The result structure is requested once using
+ * {@code GetResultTemplate}; the observations are polled using
+ * {@code GetResult} and the compact text encoded values are decoded directly
+ * into events.
+ * <p>
+ * The client is configured by a KVP URL containing exactly one
+ * {@code offering} and {@code observedProperty} and optionally the
+ * {@code featureOfInterest} and the {@code procedure} (which is only used to
+ * identify the sensor of the events and defaults to the offering). As the
+ * result values do not identify the feature of interest, the events will
+ * only have a feature if a single one was requested.
+ */
+public class ResultSosClient implements SosClient {
+    private static final Logger LOG = LoggerFactory.getLogger(ResultSosClient.class);
+    private static final String OFFERING = "offering";
+    private static final String OBSERVED_PROPERTY = "observedProperty";
+    private static final String FEATURE_OF_INTEREST = "featureOfInterest";
+    private static final String PROCEDURE = "procedure";
+    private static final String COMMON_PARAMETERS = "service=SOS&version=2.0.0";
+    private final HttpClient client;
+    private final URL requestTemplate;
+    private final URL templateRequest;
+    private final RequestTemplate resultRequest;
+    private final ResultTemplate.EventPrototype prototype;
+    private volatile ResultTemplate template;
+
+    /**
+     * Create a new {@code ResultSosClient}.
+     *
+     * @param client          the underlying HTTP client
+     * @param requestTemplate the KVP URL containing the endpoint and the
+     *                        parameters
+     *
+     * @throws IllegalArgumentException if the URL does not contain a single
+     *                                  offering and observed property
+     */
+    public ResultSosClient(HttpClient client, URL requestTemplate) {
+        this.client = Objects.requireNonNull(client);
+        this.requestTemplate = Objects.requireNonNull(requestTemplate);
+        String url = requestTemplate.toString();
+        int queryStart = url.indexOf('?');
+        String endpoint = queryStart < 0 ? url : url.substring(0, queryStart);
+        Map<String, String> parameters = parseQuery(requestTemplate.getQuery());
+        String offering = getSingleValue(parameters, OFFERING, true);
+        String observedProperty = getSingleValue(parameters, OBSERVED_PROPERTY, true);
+        String featureOfInterest = getSingleValue(parameters, FEATURE_OF_INTEREST, false);
+        String procedure = getSingleValue(parameters, PROCEDURE, false);
+        try {
+            String common = endpoint + "?" + COMMON_PARAMETERS +
+                            "&" + OFFERING + "=" + parameters.get(OFFERING) +
+                            "&" + OBSERVED_PROPERTY + "=" + parameters.get(OBSERVED_PROPERTY);
+            this.templateRequest = new URL(common + "&request=GetResultTemplate");
+            StringBuilder prefix = new StringBuilder(common)
+                    .append("&request=GetResult");
+            if (parameters.containsKey(FEATURE_OF_INTEREST)) {
+                prefix.append('&').append(FEATURE_OF_INTEREST).append('=')
+                        .append(parameters.get(FEATURE_OF_INTEREST));
+            }
+            prefix.append("&namespaces=")
+                    .append(URIUtil.encodeQuery("xmlns(om,http://www.opengis.net/om/2.0)"))
+                    .append("&temporalFilter=")
+                    .append(URIUtil.encodeQuery("om:phenomenonTime,"));
+            this.resultRequest = new RequestTemplate(
+                    prefix.toString().getBytes(StandardCharsets.UTF_8),
+                    URIUtil.encodeQuery("/").getBytes(StandardCharsets.UTF_8),
+                    new byte[0]);
+            this.prototype = new ResultTemplate.EventPrototype(
+                    decode(procedure == null ? offering : procedure),
+                    decode(observedProperty),
+                    featureOfInterest == null ? null : decode(featureOfInterest));
+        } catch (URIException | MalformedURLException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int eq = parameter.indexOf('=');
+                if (eq > 0) {
+                    parameters.put(parameter.substring(0, eq), parameter.substring(eq + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static String getSingleValue(Map<String, String> parameters,
+                                         String name, boolean required) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            if (required) {
+                throw new IllegalArgumentException("Missing parameter " + name);
+            }
+            return null;
+        }
+        if (value.contains(",") || value.toUpperCase().contains("%2C")) {
+            if (required) {
+                throw new IllegalArgumentException("Multiple values for parameter " + name);
+            }
+            return null;
+        }
+        return value;
+    }
+
+    private static String decode(String value) throws URIException {
+        return URIUtil.decode(value);
+    }
+
+    @Override
+    public Object getRequestKey() {
+        return "GetResult\n" + KvpSosClient.normalize(this.requestTemplate);
+    }
+
+    @Override
+    public int getEvents(DateTime begin, DateTime end,
+                         Consumer<? super EposEvent> consumer)
+            throws XmlException, IOException {
+        ResultTemplate resultTemplate = getTemplate();
+        URL url = new URL(this.resultRequest.renderString(begin.getMillis(), end.getMillis()));
+        LOG.info("Requesting: {}", url);
+        try (InputStream in = this.client.get(url)) {
+            return resultTemplate.decode(in, this.prototype, consumer);
+        } catch (XmlException ex) {
+            // the result structure may have changed
+            this.template = null;
+            throw ex;
+        }
+    }
+
+    /**
+     * Get the result template, requesting it if it was not requested yet.
+     *
+     * @return the template
+     *
+     * @throws XmlException if the response can not be parsed
+     * @throws IOException  if the HTTP call fails
+     */
+    private ResultTemplate getTemplate() throws XmlException, IOException {
+        ResultTemplate resultTemplate = this.template;
+        if (resultTemplate == null) {
+            LOG.info("Requesting: {}", this.templateRequest);
+            try (InputStream in = this.client.get(this.templateRequest)) {
+                resultTemplate = ResultTemplate.read(in);
+            }
+            LOG.debug("Received result template {}", resultTemplate);
+            this.template = resultTemplate;
+        }
+        return resultTemplate;
+    }
+}
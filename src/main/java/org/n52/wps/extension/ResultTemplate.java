@@ -0,0 +1,432 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xmlbeans.XmlException;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+/**
+ * The result structure and text encoding of a {@code GetResultTemplate}
+ * response. The template is used to decode the {@code sos:resultValues} of
+ * {@code GetResult} responses block by block into events, without building a
+ * document of the (potentially large) values.
+ * <p>
+ * The structure has to be a flat {@code swe:DataRecord} containing a
+ * {@code swe:Time} (or {@code swe:TimeRange}) field for the phenomenon time.
+ * Every {@code swe:Quantity} or {@code swe:Count} field results in an event;
+ * other fields are skipped.
+ */
+public class ResultTemplate {
+    public static final String NS_SWE_20 = "http://www.opengis.net/swe/2.0";
+    public static final QName QN_GET_RESULT_TEMPLATE_RESPONSE
+            = new QName(GetObservationResponseReader.NS_SOS_20, "GetResultTemplateResponse");
+    public static final QName QN_GET_RESULT_RESPONSE
+            = new QName(GetObservationResponseReader.NS_SOS_20, "GetResultResponse");
+    private static final QName QN_RESULT_VALUES
+            = new QName(GetObservationResponseReader.NS_SOS_20, "resultValues");
+    private static final QName QN_DATA_RECORD = new QName(NS_SWE_20, "DataRecord");
+    private static final QName QN_FIELD = new QName(NS_SWE_20, "field");
+    private static final QName QN_TEXT_ENCODING = new QName(NS_SWE_20, "TextEncoding");
+    private static final String TIME = "Time";
+    private static final String TIME_RANGE = "TimeRange";
+    private static final String QUANTITY = "Quantity";
+    private static final String COUNT = "Count";
+    private static final String PHENOMENON_TIME = "phenomenonTime";
+    private static final DateTimeFormatter TIME_PARSER = ISODateTimeFormat.dateTimeParser();
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newFactory();
+    private final List<Field> fields;
+    private final int timeField;
+    private final String tokenSeparator;
+    private final String blockSeparator;
+    private final char decimalSeparator;
+
+    private ResultTemplate(List<Field> fields, String tokenSeparator,
+                           String blockSeparator, char decimalSeparator)
+            throws XmlException {
+        this.fields = Collections.unmodifiableList(fields);
+        this.tokenSeparator = tokenSeparator;
+        this.blockSeparator = blockSeparator;
+        this.decimalSeparator = decimalSeparator;
+        int time = -1;
+        for (int i = 0; i < fields.size(); ++i) {
+            Field field = fields.get(i);
+            if (field.isTime() && (time < 0 || PHENOMENON_TIME.equals(field.name))) {
+                time = i;
+            }
+        }
+        if (time < 0) {
+            throw new XmlException("Result structure contains no time field");
+        }
+        if (this.fields.stream().noneMatch(Field::isNumeric)) {
+            throw new XmlException("Result structure contains no numeric field");
+        }
+        if (tokenSeparator.isEmpty() || blockSeparator.isEmpty()) {
+            throw new XmlException("Missing text encoding separators");
+        }
+        this.timeField = time;
+    }
+
+    /**
+     * Read the template from a {@code GetResultTemplateResponse}.
+     *
+     * @param in the stream to read from (will not be closed)
+     *
+     * @return the template
+     *
+     * @throws XmlException if the response is not a supported
+     *                      {@code GetResultTemplateResponse}
+     * @throws IOException  if reading from the stream fails
+     */
+    public static ResultTemplate read(InputStream in)
+            throws XmlException, IOException {
+        XMLStreamReader reader = createReader(in);
+        try {
+            checkDocumentElement(reader, QN_GET_RESULT_TEMPLATE_RESPONSE);
+            List<Field> fields = null;
+            String tokenSeparator = null;
+            String blockSeparator = null;
+            String decimalSeparator = ".";
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (QN_DATA_RECORD.equals(reader.getName())) {
+                    fields = readFields(reader);
+                } else if (QN_TEXT_ENCODING.equals(reader.getName())) {
+                    tokenSeparator = reader.getAttributeValue(null, "tokenSeparator");
+                    blockSeparator = reader.getAttributeValue(null, "blockSeparator");
+                    String separator = reader.getAttributeValue(null, "decimalSeparator");
+                    if (separator != null && !separator.isEmpty()) {
+                        decimalSeparator = separator;
+                    }
+                }
+            }
+            if (fields == null || tokenSeparator == null || blockSeparator == null) {
+                throw new XmlException("Unsupported result structure or encoding");
+            }
+            return new ResultTemplate(fields, tokenSeparator, blockSeparator,
+                                      decimalSeparator.charAt(0));
+        } catch (XMLStreamException ex) {
+            throw GetObservationResponseReader.convert(ex);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static List<Field> readFields(XMLStreamReader reader)
+            throws XMLStreamException, XmlException {
+        List<Field> fields = new ArrayList<>();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (!QN_FIELD.equals(reader.getName())) {
+                // e.g. swe:identifier or swe:description
+                skipElement(reader);
+                continue;
+            }
+            String name = reader.getAttributeValue(null, "name");
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT) {
+                throw new XmlException("Missing component of field " + name);
+            }
+            String type = reader.getLocalName();
+            if (QN_DATA_RECORD.equals(reader.getName())) {
+                throw new XmlException("Nested records are not supported");
+            }
+            fields.add(new Field(name, type, reader.getAttributeValue(null, "definition")));
+            skipElement(reader);
+            // the end of the field
+            reader.nextTag();
+        }
+        return fields;
+    }
+
+    /**
+     * Read the values of a {@code GetResultResponse} and supply an event for
+     * every numeric value of every block to {@code consumer}.
+     *
+     * @param in       the stream to read from (will not be closed)
+     * @param prototype the properties of the events that are not part of the
+     *                 result values
+     * @param consumer the consumer of the events
+     *
+     * @return the number of events
+     *
+     * @throws XmlException if the response can not be decoded using this
+     *                      template
+     * @throws IOException  if reading from the stream fails
+     */
+    public int decode(InputStream in, EventPrototype prototype,
+                      Consumer<? super EposEvent> consumer)
+            throws XmlException, IOException {
+        XMLStreamReader reader = createReader(in);
+        try {
+            checkDocumentElement(reader, QN_GET_RESULT_RESPONSE);
+            BlockDecoder decoder = new BlockDecoder(prototype, consumer);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+                    QN_RESULT_VALUES.equals(reader.getName())) {
+                    // feed the text in chunks as the values may be large
+                    while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+                        if (reader.isCharacters() ||
+                            reader.getEventType() == XMLStreamConstants.CDATA) {
+                            decoder.feed(reader.getTextCharacters(),
+                                         reader.getTextStart(),
+                                         reader.getTextLength());
+                        }
+                    }
+                    decoder.finish();
+                }
+            }
+            return decoder.count;
+        } catch (XMLStreamException ex) {
+            throw GetObservationResponseReader.convert(ex);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static XMLStreamReader createReader(InputStream in)
+            throws XmlException {
+        try {
+            return FACTORY.createXMLStreamReader(in);
+        } catch (XMLStreamException ex) {
+            throw new XmlException(ex);
+        }
+    }
+
+    private static void checkDocumentElement(XMLStreamReader reader, QName name)
+            throws XMLStreamException, XmlException {
+        reader.nextTag();
+        if (!name.equals(reader.getName())) {
+            throw new XmlException(String.format(
+                    "Unexpected document element: %s", reader.getName()));
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader)
+            throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                ++depth;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                --depth;
+            }
+        }
+    }
+
+    private static void close(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException ex) {
+            // ignore, the stream is closed by the caller
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ResultTemplate{fields=%s, tokenSeparator=%s, blockSeparator=%s}",
+                             this.fields, this.tokenSeparator, this.blockSeparator);
+    }
+
+    /**
+     * The properties of the events of a {@code GetResult} request that are
+     * not part of the result values.
+     */
+    public static class EventPrototype {
+        private final String procedure;
+        private final String observedProperty;
+        private final String featureOfInterest;
+
+        /**
+         * Creates a new {@code EventPrototype}.
+         *
+         * @param procedure         the procedure
+         * @param observedProperty  the observed property of results with a
+         *                          single value (may be {@code null} to use
+         *                          the definition of the field)
+         * @param featureOfInterest the feature of interest (may be
+         *                          {@code null})
+         */
+        public EventPrototype(String procedure, String observedProperty,
+                              String featureOfInterest) {
+            this.procedure = procedure;
+            this.observedProperty = observedProperty;
+            this.featureOfInterest = featureOfInterest;
+        }
+    }
+
+    /**
+     * A field of the result structure.
+     */
+    private static class Field {
+        private final String name;
+        private final String type;
+        private final String definition;
+
+        Field(String name, String type, String definition) {
+            this.name = name;
+            this.type = type;
+            this.definition = definition;
+        }
+
+        boolean isTime() {
+            return TIME.equals(this.type) || TIME_RANGE.equals(this.type);
+        }
+
+        boolean isNumeric() {
+            return QUANTITY.equals(this.type) || COUNT.equals(this.type);
+        }
+
+        int getTokens() {
+            // a time range is encoded as begin and end token
+            return TIME_RANGE.equals(this.type) ? 2 : 1;
+        }
+
+        @Override
+        public String toString() {
+            return this.name + ":" + this.type;
+        }
+    }
+
+    /**
+     * Decodes the text encoded blocks of the result values.
+     */
+    private class BlockDecoder {
+        private final StringBuilder pending = new StringBuilder();
+        private final EventPrototype prototype;
+        private final Consumer<? super EposEvent> consumer;
+        private final boolean singleValue;
+        private final int tokens;
+        private int searchFrom = 0;
+        private int blocks = 0;
+        private int count = 0;
+
+        BlockDecoder(EventPrototype prototype,
+                     Consumer<? super EposEvent> consumer) {
+            this.prototype = prototype;
+            this.consumer = consumer;
+            this.singleValue = fields.stream().filter(Field::isNumeric).count() == 1;
+            this.tokens = fields.stream().mapToInt(Field::getTokens).sum();
+        }
+
+        void feed(char[] chars, int start, int length)
+                throws XmlException {
+            this.pending.append(chars, start, length);
+            int from = 0;
+            int index;
+            while ((index = this.pending.indexOf(blockSeparator, this.searchFrom)) >= 0) {
+                decodeBlock(this.pending.substring(from, index));
+                from = index + blockSeparator.length();
+                this.searchFrom = from;
+            }
+            this.pending.delete(0, from);
+            // a separator may span two chunks
+            this.searchFrom = Math.max(0, this.pending.length() - blockSeparator.length() + 1);
+        }
+
+        void finish() throws XmlException {
+            decodeBlock(this.pending.toString());
+            this.pending.setLength(0);
+            this.searchFrom = 0;
+        }
+
+        private void decodeBlock(String block) throws XmlException {
+            String trimmed = block.trim();
+            if (trimmed.isEmpty()) {
+                return;
+            }
+            List<String> values = split(trimmed);
+            if (this.blocks++ == 0 && values.size() == 1 && this.tokens > 1) {
+                // the number of blocks preceding the values
+                return;
+            }
+            if (values.size() != this.tokens) {
+                throw new XmlException(String.format(
+                        "Expected %d tokens but got %d: %s", this.tokens,
+                        values.size(), trimmed));
+            }
+            long begin = 0;
+            long end = 0;
+            int token = 0;
+            for (int i = 0; i < fields.size(); ++i) {
+                if (i == timeField) {
+                    begin = parseTime(values.get(token));
+                    end = fields.get(i).getTokens() == 2
+                          ? parseTime(values.get(token + 1)) : begin;
+                }
+                token += fields.get(i).getTokens();
+            }
+            token = 0;
+            for (Field field : fields) {
+                if (field.isNumeric()) {
+                    createEvent(field, begin, end, values.get(token));
+                }
+                token += field.getTokens();
+            }
+        }
+
+        private void createEvent(Field field, long begin, long end, String token)
+                throws XmlException {
+            String value = token.trim();
+            if (value.isEmpty()) {
+                return;
+            }
+            if (decimalSeparator != '.') {
+                value = value.replace(decimalSeparator, '.');
+            }
+            double doubleValue;
+            try {
+                doubleValue = Double.parseDouble(value);
+            } catch (NumberFormatException ex) {
+                throw new XmlException("Invalid value: " + token, ex);
+            }
+            String observedProperty = this.singleValue && this.prototype.observedProperty != null
+                                      ? this.prototype.observedProperty
+                                      : field.definition != null ? field.definition : field.name;
+            MapEposEvent event = new MapEposEvent(begin, end);
+            event.setValue(MapEposEvent.SENSORID_KEY, this.prototype.procedure);
+            event.setValue(MapEposEvent.OBSERVED_PROPERTY_KEY, observedProperty);
+            if (this.prototype.featureOfInterest != null) {
+                event.setValue(MapEposEvent.FEATURE_TYPE_KEY, this.prototype.featureOfInterest);
+            }
+            event.setValue(MapEposEvent.DOUBLE_VALUE_KEY, doubleValue);
+            ++this.count;
+            this.consumer.accept(event);
+        }
+
+        private List<String> split(String block) {
+            List<String> values = new ArrayList<>(this.tokens);
+            int from = 0;
+            int index;
+            while ((index = block.indexOf(tokenSeparator, from)) >= 0) {
+                values.add(block.substring(from, index));
+                from = index + tokenSeparator.length();
+            }
+            values.add(block.substring(from));
+            return values;
+        }
+
+        private long parseTime(String time) throws XmlException {
+            try {
+                return TIME_PARSER.parseMillis(time.trim());
+            } catch (IllegalArgumentException ex) {
+                throw new XmlException("Invalid time: " + time, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Retry policy with exponential backoff and full jitter. The delay before
+ * the {@code n}-th retry is drawn uniformly from
+ * {@code [0, min(maxDelay, initialDelay * multiplier^(n-1))]}, so that
+ * clients failing at the same time do not retry in lockstep.
+ * <p>
+ * Only {@link IOException}s are retried, as other failures (e.g. malformed
+ * responses) are not expected to be transient. Responses rejecting the
+ * request with a client error are not retried either, as a repeated request
+ * would be rejected again; timeouts ({@code 408}) and throttling
+ * ({@code 429}) are retried.
+ */
+public class RetryPolicy {
+    public static final long DEFAULT_INITIAL_DELAY = TimeUnit.SECONDS.toMillis(1L);
+    public static final long DEFAULT_MAX_DELAY = TimeUnit.SECONDS.toMillis(60L);
+    public static final double DEFAULT_MULTIPLIER = 2.0d;
+    private static final RetryPolicy NONE = new RetryPolicy(1, 0L, 0L, 1.0d);
+    private final int maxAttempts;
+    private final long initialDelay;
+    private final long maxDelay;
+    private final double multiplier;
+
+    /**
+     * Create a new {@code RetryPolicy}.
+     *
+     * @param maxAttempts  the maximum number of attempts (including the
+     *                     first)
+     * @param initialDelay the maximum delay (in ms) before the first retry
+     * @param maxDelay     the upper bound of the delay (in ms)
+     * @param multiplier   the factor by which the delay grows with every
+     *                     attempt
+     */
+    public RetryPolicy(int maxAttempts, long initialDelay, long maxDelay,
+                       double multiplier) {
+        if (maxAttempts < 1 || initialDelay < 0 || maxDelay < initialDelay ||
+            multiplier < 1.0d) {
+            throw new IllegalArgumentException();
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.multiplier = multiplier;
+    }
+
+    /**
+     * Create a new {@code RetryPolicy} using the default delays.
+     *
+     * @param maxAttempts the maximum number of attempts (including the first)
+     *
+     * @return the policy
+     */
+    public static RetryPolicy withMaxAttempts(int maxAttempts) {
+        return new RetryPolicy(maxAttempts, DEFAULT_INITIAL_DELAY,
+                               DEFAULT_MAX_DELAY, DEFAULT_MULTIPLIER);
+    }
+
+    /**
+     * Get the policy that never retries.
+     *
+     * @return the policy
+     */
+    public static RetryPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Get the maximum number of attempts.
+     *
+     * @return the maximum number of attempts (including the first)
+     */
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * Check if a call should be retried.
+     *
+     * @param attempt the number of the failed attempt (starting at 1)
+     * @param failure the failure
+     *
+     * @return if the call should be retried
+     */
+    public boolean shouldRetry(int attempt, Throwable failure) {
+        return attempt < this.maxAttempts && failure instanceof IOException &&
+               CircuitBreaker.isEndpointFailure(failure);
+    }
+
+    /**
+     * Get the randomized delay before the retry following {@code attempt}.
+     *
+     * @param attempt the number of the failed attempt (starting at 1)
+     *
+     * @return the delay in ms
+     */
+    public long getDelay(int attempt) {
+        long bound = getMaxDelay(attempt);
+        return bound == 0L ? 0L : ThreadLocalRandom.current().nextLong(bound + 1L);
+    }
+
+    /**
+     * Get the upper bound of the delay before the retry following
+     * {@code attempt}.
+     *
+     * @param attempt the number of the failed attempt (starting at 1)
+     *
+     * @return the maximum delay in ms
+     */
+    long getMaxDelay(int attempt) {
+        double delay = this.initialDelay * Math.pow(this.multiplier, attempt - 1);
+        return delay >= this.maxDelay ? this.maxDelay : (long) delay;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("maxAttempts", this.maxAttempts)
+                .add("initialDelay", this.initialDelay)
+                .add("maxDelay", this.maxDelay)
+                .add("multiplier", this.multiplier)
+                .toString();
+    }
+}
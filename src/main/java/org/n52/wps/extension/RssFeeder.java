@@ -1,20 +1,23 @@
 package org.n52.wps.extension;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
 import org.apache.xmlbeans.XmlObject;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -32,32 +35,67 @@ import org.n52.epos.rules.PassiveFilterAlreadyPresentException;
 import org.n52.epos.rules.Rule;
 import org.n52.wps.extension.rss.NotificationRssFeedItem;
 import org.n52.wps.extension.rss.RssFeed;
-import org.n52.wps.extension.rss.RssFeedItem;
-import org.n52.wps.extension.rss.xml.NotificationRssFeedItemEncoder;
-import org.n52.wps.extension.rss.xml.RssFeedEncoder;
+import org.n52.wps.extension.rss.xml.NotificationRssFeedTemplateEncoder;
 import org.n52.wps.extension.rss.xml.StreamEncoder;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Component that listens on events produced by the EPOS engine.
+ * <p>
+ * Notifications are inserted in batches: once an event is received, further
+ * events are collected until either the maximum batch size is reached or the
+ * linger time elapsed, and are inserted as a single multi-item feed. If the
+ * store rejects a batch with a client error, the items are inserted
+ * individually; other failures are retried with the whole batch.
+ * <p>
+ * Notifications can be dispatched concurrently by a number of lanes. Events
+ * are partitioned by procedure and feature of interest, so notifications of
+ * the same sensor are always inserted by the same lane and in the order they
+ * were produced. Each lane has an equal share of the capacity of the queue,
+ * so that at most twice the capacity is held in memory. If a lane is full,
+ * the partitioning waits for it (delaying the other lanes as well) and the
+ * overflow policy of the queue is applied to new notifications.
+ * <p>
+ * Events are converted to feed items as soon as they are produced, so that
+ * the causing events are not retained, and are handed over by a bounded
+ * {@link NotificationQueue}. If the queue is full, the
+ * {@linkplain NotificationQueue.OverflowPolicy overflow policy} is applied.
+ * <p>
+ * If a {@link NotificationOutbox} is supplied, notifications are appended to
+ * it before they are queued and are acknowledged once they are inserted (or
+ * dropped by the overflow policy). Notifications that were not inserted when
+ * the process stopped are inserted first when the feeder runs again.
  *
  * @author Christian Autermann
  */
 public class RssFeeder implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(RssFeeder.class);
     private static final String RSS_MEDIA_TYPE = "application/xml";
+    private static final int TOO_MANY_REQUESTS = 429;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final long DEFAULT_LINGER = 0L;
+    public static final int DEFAULT_DISPATCH_LANES = 1;
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
     private final URL endpoint;
     private final URL insertEndpoint;
-    private final BlockingQueue<EposEvent> events = new LinkedBlockingQueue<>();
+    private final NotificationQueue queue;
     private final StreamEncoder<RssFeed> feedEncoder
-            = new RssFeedEncoder(new NotificationRssFeedItemEncoder());
+            = new NotificationRssFeedTemplateEncoder();
     private final HttpClient client;
     private final XmlObject xmlRule;
+    private final RetryPolicy retryPolicy;
+    private final int maxBatchSize;
+    private final long linger;
+    private final int lanes;
+    private final int laneCapacity;
+    private final NotificationOutbox outbox;
 
     /**
-     * Creates a new {@code RssFeeder}.
+     * Creates a new {@code RssFeeder} that does not retry failed
+     * notifications.
      *
      * @param xmlRule     the rule to filter events
      * @param rssEndpoint the URL to post RSS feeds to
@@ -68,7 +106,69 @@ public class RssFeeder implements Runnable {
      */
     public RssFeeder(XmlObject xmlRule, URI rssEndpoint, HttpClient client)
             throws MalformedURLException {
+        this(xmlRule, rssEndpoint, client, RetryPolicy.none());
+    }
+
+    /**
+     * Creates a new {@code RssFeeder} using the default batch size and linger
+     * time.
+     *
+     * @param xmlRule     the rule to filter events
+     * @param rssEndpoint the URL to post RSS feeds to
+     * @param client      the HTTP client to use
+     * @param retryPolicy the policy to retry failed notifications
+     *
+     * @throws MalformedURLException if the URI could not be
+     *                               converted to a URL
+     */
+    public RssFeeder(XmlObject xmlRule, URI rssEndpoint, HttpClient client,
+                     RetryPolicy retryPolicy)
+            throws MalformedURLException {
+        this(xmlRule, rssEndpoint, client, retryPolicy,
+             DEFAULT_MAX_BATCH_SIZE, DEFAULT_LINGER, DEFAULT_DISPATCH_LANES,
+             new NotificationQueue(DEFAULT_QUEUE_CAPACITY,
+                                   NotificationQueue.OverflowPolicy.BLOCK),
+             null);
+    }
+
+    /**
+     * Creates a new {@code RssFeeder}.
+     *
+     * @param xmlRule      the rule to filter events
+     * @param rssEndpoint  the URL to post RSS feeds to
+     * @param client       the HTTP client to use
+     * @param retryPolicy  the policy to retry failed notifications
+     * @param maxBatchSize the maximum number of notifications inserted at
+     *                     once
+     * @param linger       the maximum time (in ms) to wait for further
+     *                     notifications before a batch is inserted
+     * @param lanes        the number of lanes dispatching notifications
+     *                     concurrently
+     * @param queue        the queue of pending notifications; the queues of
+     *                     the lanes share its capacity
+     * @param outbox       the outbox to persist pending notifications in or
+     *                     {@code null} to keep them in memory only; it is
+     *                     closed once the feeder stops
+     *
+     * @throws MalformedURLException if the URI could not be
+     *                               converted to a URL
+     */
+    public RssFeeder(XmlObject xmlRule, URI rssEndpoint, HttpClient client,
+                     RetryPolicy retryPolicy, int maxBatchSize, long linger,
+                     int lanes, NotificationQueue queue,
+                     NotificationOutbox outbox)
+            throws MalformedURLException {
+        if (maxBatchSize < 1 || linger < 0 || lanes < 1) {
+            throw new IllegalArgumentException();
+        }
         URL url = rssEndpoint.toURL();
+        this.queue = Objects.requireNonNull(queue);
+        this.laneCapacity = Math.max(1, queue.getCapacity() / lanes);
+        this.outbox = outbox;
+        this.maxBatchSize = maxBatchSize;
+        this.linger = linger;
+        this.lanes = lanes;
+        this.retryPolicy = Objects.requireNonNull(retryPolicy);
         this.xmlRule = Objects.requireNonNull(xmlRule);
         this.client = Objects.requireNonNull(client);
         this.endpoint = Objects.requireNonNull(url);
@@ -83,19 +183,131 @@ public class RssFeeder implements Runnable {
 
     @Override
     public void run() {
+        try {
+            replay();
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            if (this.lanes == 1) {
+                dispatch(this.queue);
+            } else {
+                partition();
+            }
+        } finally {
+            LOG.info("Notification queue: {}", this.queue);
+            this.queue.close();
+            if (this.outbox != null) {
+                LOG.info("Notification outbox: {}", this.outbox);
+                this.outbox.close();
+            }
+        }
+    }
 
+    /**
+     * Insert the notifications of the outbox that were not inserted the
+     * last time the feeder ran.
+     */
+    private void replay() {
+        if (this.outbox == null) {
+            return;
+        }
+        List<PendingNotification> pending = this.outbox.replay();
+        for (int i = 0; i < pending.size(); i += this.maxBatchSize) {
+            List<PendingNotification> batch = pending.subList(
+                    i, Math.min(i + this.maxBatchSize, pending.size()));
+            try {
+                sendNotificationsWithRetries(batch);
+            } catch (InterruptedException ex) {
+                LOG.info("Interrupted", ex);
+                // reset the interrupted state
+                Thread.currentThread().interrupt();
+                return;
+            } catch (XMLStreamException ex) {
+                LOG.error("XMLStreamException", ex);
+                // the notifications will never be encodable
+                acknowledge(batch);
+            }
+        }
+    }
+
+    /**
+     * Get the queue of pending notifications.
+     *
+     * @return the queue
+     */
+    public NotificationQueue getQueue() {
+        return this.queue;
+    }
+
+    /**
+     * Start the lanes and distribute the events among them until the thread
+     * is interrupted. Failures of the lanes are propagated to the handler of
+     * this thread.
+     */
+    private void partition() {
+        Thread.UncaughtExceptionHandler eh = Thread.currentThread().getUncaughtExceptionHandler();
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("rss-feeder-%d")
+                .setDaemon(true)
+                .setUncaughtExceptionHandler(eh)
+                .build();
+        List<NotificationQueue> queues = new ArrayList<>(this.lanes);
+        List<Thread> threads = new ArrayList<>(this.lanes);
+        for (int i = 0; i < this.lanes; ++i) {
+            // full lanes block the partitioning, so the overflow policy of
+            // the main queue is applied
+            NotificationQueue lane = new NotificationQueue(
+                    this.laneCapacity, NotificationQueue.OverflowPolicy.BLOCK);
+            queues.add(lane);
+            threads.add(threadFactory.newThread(() -> dispatch(lane)));
+        }
+        threads.forEach(Thread::start);
+        try {
+            while (true) {
+                PendingNotification notification = this.queue.take();
+                int lane = Math.floorMod(getOrderingKey(notification.getItem()).hashCode(), this.lanes);
+                if (!queues.get(lane).offer(notification)) {
+                    throw new InterruptedException();
+                }
+            }
+        } catch (InterruptedException ex) {
+            LOG.info("Interrupted", ex);
+        } finally {
+            threads.forEach(Thread::interrupt);
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException ex) {
+                LOG.debug("Interrupted while waiting for the lanes", ex);
+            }
+        }
+        // reset the interrupted state
+        Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Insert the notifications of {@code queue} until the thread is
+     * interrupted.
+     *
+     * @param queue the queue
+     */
+    private void dispatch(NotificationQueue queue) {
         while (!Thread.currentThread().isInterrupted()) {
+            List<PendingNotification> batch = null;
             try {
-                EposEvent event = this.events.take();
-                sendNotification(event);
+                batch = takeBatch(queue);
+                sendNotificationsWithRetries(batch);
             } catch (InterruptedException ex) {
                 LOG.info("Interrupted", ex);
                 // reset the interrupted state
                 Thread.currentThread().interrupt();
                 break;
-            } catch (IOException | XMLStreamException ex) {
+            } catch (XMLStreamException ex) {
                 // log and continue
-                LOG.error("IOException", ex);
+                LOG.error("XMLStreamException", ex);
+                // the notifications will never be encodable
+                acknowledge(batch);
             }
         }
     }
@@ -108,6 +320,130 @@ public class RssFeeder implements Runnable {
         }
     }
 
+    /**
+     * Wait for the next notification and collect further notifications until
+     * either the maximum batch size is reached or the linger time elapsed.
+     *
+     * @param queue the queue to take the notifications from
+     *
+     * @return the batch of notifications
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private List<PendingNotification> takeBatch(NotificationQueue queue)
+            throws InterruptedException {
+        List<PendingNotification> batch = new ArrayList<>(Math.min(this.maxBatchSize, 16));
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.linger);
+        while (batch.size() < this.maxBatchSize) {
+            queue.drainTo(batch, this.maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= this.maxBatchSize || remaining <= 0) {
+                break;
+            }
+            PendingNotification notification = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (notification == null) {
+                break;
+            }
+            batch.add(notification);
+        }
+        return batch;
+    }
+
+    /**
+     * Send the RSS notifications, retrying failed attempts according to the
+     * {@link RetryPolicy}. If the store rejects a batch of notifications, the
+     * notifications are send individually; other failures (e.g. of the
+     * connection) are retried with the whole batch. Inserted notifications
+     * are acknowledged; if the last attempt fails, a notification is dropped
+     * or, if it is persisted, kept in the outbox to be inserted after a
+     * restart. Unexpected runtime failures are not retried, but handled in
+     * the same way, so that they do not stop the dispatching.
+     *
+     * @param notifications the notifications
+     *
+     * @throws InterruptedException if the thread is interrupted while
+     *                              waiting for a retry
+     * @throws XMLStreamException   if the RSS feed could not be encoded
+     */
+    private void sendNotificationsWithRetries(List<PendingNotification> notifications)
+            throws InterruptedException, XMLStreamException {
+        List<NotificationRssFeedItem> items = new ArrayList<>(notifications.size());
+        notifications.forEach(notification -> items.add(notification.getItem()));
+        for (int attempt = 1;; ++attempt) {
+            try {
+                sendNotifications(items);
+                acknowledge(notifications);
+                return;
+            } catch (IOException ex) {
+                if (items.size() > 1 && isRejection(ex)) {
+                    // the store may have rejected a single item
+                    LOG.warn("Batch of {} notifications was rejected, inserting them individually",
+                             items.size(), ex);
+                    for (PendingNotification notification : notifications) {
+                        sendNotificationsWithRetries(Collections.singletonList(notification));
+                    }
+                    return;
+                }
+                if (!this.retryPolicy.shouldRetry(attempt, ex)) {
+                    LOG.error("Giving up {} notifications after {} attempts{}",
+                              items.size(), attempt, getGiveUpReason(notifications), ex);
+                    return;
+                }
+                long delay = this.retryPolicy.getDelay(attempt);
+                LOG.warn("Notification failed, retrying in {} ms", delay, ex);
+                Thread.sleep(delay);
+            } catch (RuntimeException ex) {
+                // a faulty client or response must not stop the dispatching
+                LOG.error("Giving up {} notifications{}", items.size(),
+                          getGiveUpReason(notifications), ex);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Check if the store responded to an insertion with a client error, i.e.
+     * it rejected (some of) the items. Failures to reach the store, rejected
+     * calls, timeouts and server errors are not caused by the items.
+     *
+     * @param ex the failure
+     *
+     * @return if the insertion was rejected
+     */
+    private static boolean isRejection(IOException ex) {
+        if (!(ex instanceof HttpResponseException)) {
+            return false;
+        }
+        int status = ((HttpResponseException) ex).getStatusCode();
+        return status >= HttpStatus.SC_BAD_REQUEST &&
+               status < HttpStatus.SC_INTERNAL_SERVER_ERROR &&
+               status != HttpStatus.SC_REQUEST_TIMEOUT &&
+               status != TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Acknowledge the persisted notifications.
+     *
+     * @param notifications the notifications
+     */
+    private void acknowledge(List<PendingNotification> notifications) {
+        if (this.outbox != null && notifications != null) {
+            for (PendingNotification notification : notifications) {
+                this.outbox.acknowledge(notification.getSequence());
+            }
+        }
+    }
+
+    private static String getGiveUpReason(List<PendingNotification> notifications) {
+        for (PendingNotification notification : notifications) {
+            if (!notification.isPersisted()) {
+                return ", dropping them";
+            }
+        }
+        return ", keeping them for replay";
+    }
+
     /**
      * Send the RSS notification for the received event.
      *
@@ -120,21 +456,67 @@ public class RssFeeder implements Runnable {
     @VisibleForTesting
     void sendNotification(EposEvent event)
             throws IOException, XMLStreamException, MalformedURLException {
-        RssFeed feed = createFeed(event);
+        sendNotifications(Collections.singletonList(createFeedItem(event)));
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        this.feedEncoder.encode(feed, baos);
-        String request = baos.toString(StandardCharsets.UTF_8.name());
+    /**
+     * Send the RSS notifications as a single feed.
+     *
+     * @param items the notifications
+     *
+     * @throws IOException        if the HTTP call fails
+     * @throws XMLStreamException if the RSS feed could not be encoded
+     */
+    @VisibleForTesting
+    void sendNotifications(List<NotificationRssFeedItem> items)
+            throws IOException, XMLStreamException {
+        RssFeed feed = createFeed(items);
 
-        try (InputStream in = this.client.post(this.insertEndpoint, RSS_MEDIA_TYPE, request)) {
+        // encode the feed directly to the connection
+        BodyWriter request = out -> {
+            try {
+                this.feedEncoder.encode(feed, out, false);
+            } catch (XMLStreamException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    // the connection failed
+                    throw (IOException) ex.getCause();
+                }
+                throw new EncodingException(ex);
+            }
+        };
+
+        try (InputStream in = this.client.post(this.insertEndpoint, RSS_MEDIA_TYPE, null, request)) {
+            if (in == null) {
+                throw new IOException("No response from " + this.insertEndpoint);
+            }
             String response = CharStreams.toString(new InputStreamReader(in));
-            LOG.info("Inserted notification item: {}", response);
+            LOG.info("Inserted {} notification item(s): {}", items.size(), response);
+        } catch (EncodingException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Transports a {@link XMLStreamException} of the feed encoding through
+     * the {@link BodyWriter}.
+     */
+    private static class EncodingException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        EncodingException(XMLStreamException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized XMLStreamException getCause() {
+            return (XMLStreamException) super.getCause();
         }
     }
 
     /**
      * Creates a {@link Rule} from the EML rule and attaches a listener to it
-     * that will push the events into {@linkplain #events the queue}.
+     * that will push the notifications of the events into
+     * {@linkplain #queue the queue}.
      *
      * @param xmlObject the EML XML object
      *
@@ -145,8 +527,7 @@ public class RssFeeder implements Runnable {
      */
     private Rule createRule(XmlObject xmlObject)
             throws FilterInstantiationException {
-        Rule rule = new RuleInstance((SimpleRuleListener) (e, o) -> this.events
-                .offer(e));
+        Rule rule = new RuleInstance((SimpleRuleListener) (e, o) -> enqueue(e));
         EposFilter instantiate = FilterInstantiationRepository.Instance
                 .instantiate(xmlObject);
 
@@ -160,22 +541,52 @@ public class RssFeeder implements Runnable {
     }
 
     /**
-     * Create a RSS feed containing a single item from the supplied
-     * {@code event}.
+     * Convert the event to a notification, append it to the outbox and offer
+     * it to the queue. If the notification can not be appended, it is only
+     * kept in memory.
      *
      * @param event the event
+     */
+    private void enqueue(EposEvent event) {
+        NotificationRssFeedItem item;
+        try {
+            item = createFeedItem(event);
+        } catch (MalformedURLException ex) {
+            LOG.error("IOException", ex);
+            return;
+        }
+        long sequence = PendingNotification.NO_SEQUENCE;
+        if (this.outbox != null) {
+            try {
+                sequence = this.outbox.append(item);
+            } catch (IOException ex) {
+                LOG.error("IOException", ex);
+            }
+        }
+        this.queue.offer(new PendingNotification(item, sequence));
+    }
+
+    /**
+     * Create a RSS feed containing the supplied items. The publication date
+     * of the feed is the latest date of the items.
      *
-     * @return the RSS feed object
+     * @param items the items
      *
-     * @throws MalformedURLException if the GUID/link could not be generated
+     * @return the RSS feed object
      */
-    private RssFeed createFeed(EposEvent event)
-            throws MalformedURLException {
+    private RssFeed createFeed(List<NotificationRssFeedItem> items) {
         // TODO are these fixed values?
         String feedDescription = "SOS-Event WPS feeder - alert updates";
         String feedTitle = "SOS-Event WPS feeder";
-        DateTime time = new DateTime(event.getStartTime());
-        return new RssFeed(feedTitle, this.endpoint, feedDescription, time, createFeedItem(event));
+        DateTime latest = null;
+        for (NotificationRssFeedItem item : items) {
+            if (latest == null || item.getDate().isAfter(latest)) {
+                latest = item.getDate();
+            }
+        }
+        RssFeed feed = new RssFeed(feedTitle, this.endpoint, feedDescription, latest);
+        items.forEach(feed::addItem);
+        return feed;
     }
 
     /**
@@ -187,7 +598,7 @@ public class RssFeeder implements Runnable {
      *
      * @throws MalformedURLException if the GUID/link could not be generated
      */
-    private RssFeedItem createFeedItem(EposEvent event)
+    private NotificationRssFeedItem createFeedItem(EposEvent event)
             throws MalformedURLException {
 
         DateTime time = new DateTime(event.getStartTime());
@@ -230,6 +641,18 @@ public class RssFeeder implements Runnable {
                                            featureOfInterest, undershoot, overshoot, value);
     }
 
+    /**
+     * Get the key that defines the order of the notifications: the procedure
+     * and feature of interest.
+     *
+     * @param item the notification
+     *
+     * @return the key
+     */
+    private static List<String> getOrderingKey(NotificationRssFeedItem item) {
+        return Arrays.asList(item.getProcedure(), item.getFeatureOfInterest());
+    }
+
     /**
      * Create the GUID of the feed item for the specified event.
      *
@@ -1,11 +1,12 @@
 package org.n52.wps.extension;
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Objects;
-
-import net.opengis.om.x20.OMObservationType;
-import net.opengis.sos.x20.GetObservationResponseType.ObservationData;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.apache.xmlbeans.XmlException;
 import org.joda.time.DateTime;
@@ -14,87 +15,290 @@ import org.slf4j.LoggerFactory;
 
 import org.n52.epos.engine.EposEngine;
 import org.n52.epos.event.EposEvent;
-import org.n52.epos.transform.TransformationException;
-import org.n52.epos.transform.TransformationRepository;
 
 /**
  * Component that periodically requests a configurable time span of
- * observations from a SOS and supplies them to the EPOS engine.
+ * observations from a SOS and supplies them to the EPOS engine (or any other
+ * consumer of events). The polls are scheduled according to a
+ * {@link PollingSchedule}. The window of a poll starts at the end of the last
+ * successful poll; if it grew too large (e.g. after an outage of the SOS), it
+ * is requested in sub-windows according to a {@link CatchUpPolicy}. The end
+ * of the delivered windows may be persisted in a {@link PollingCheckpoint} to
+ * resume from it after a restart, unless it exceeds the maximum resume age
+ * (to not replay stale history). Duplicates of already delivered events
+ * (e.g. at the boundaries of the overlapping windows) are dropped by an
+ * {@link EventDeduplicator}. Failed polls are retried before the next
+ * regular poll according to a {@link RetryPolicy}.
+ * <p>
+ * The feeder is not a {@link Runnable} to be scheduled at a fixed rate by the
+ * caller anymore: as the interval adapts and retries are scheduled in
+ * between, it schedules its polls itself on the scheduler passed to
+ * {@link #start(ScheduledExecutorService, Consumer)} until it is
+ * {@linkplain #stop() stopped}. Feeders are usually not created directly but
+ * shared by the {@link SosPollingService}.
  *
  * @author Christian Autermann
  */
-public class SesFeeder implements Runnable {
-
+public class SesFeeder {
+    /**
+     * Consumer supplying events to the {@linkplain EposEngine EPOS engine}.
+     */
+    public static final Consumer<EposEvent> EPOS_ENGINE
+            = event -> EposEngine.getInstance().filterEvent(event);
     private static final Logger LOG = LoggerFactory.getLogger(SesFeeder.class);
-    private final long samplingRate;
+    private static final int MAX_DEDUPLICATED_EVENTS = 100000;
+    private final PollingSchedule schedule;
     private final SosClient client;
-    private DateTime last;
+    private final Consumer<? super EposEvent> sink;
+    private final CatchUpFetcher fetcher;
+    private final PollingCheckpoint checkpoint;
+    private final long maxResumeAge;
+    private final EventDeduplicator deduplicator;
+    private final RetryPolicy retryPolicy;
+    private ScheduledExecutorService scheduler;
+    private Consumer<? super Throwable> onFailure;
+    private ScheduledFuture<?> future;
+    private boolean stopped = false;
+    private long last;
+    private long interval;
+    private long nextPoll;
+    private int failures;
 
     /**
-     * Creates a new {@code SesFeeder}.
+     * Creates a new {@code SesFeeder} supplying events to the
+     * {@linkplain EposEngine EPOS engine}.
      *
      * @param client       the SOS client to request observations
      * @param samplingRate the interval to request observations for
      */
     public SesFeeder(SosClient client, Long samplingRate) {
+        this(client, samplingRate, EPOS_ENGINE);
+    }
+
+    /**
+     * Creates a new {@code SesFeeder} using a fixed interval.
+     *
+     * @param client       the SOS client to request observations
+     * @param samplingRate the interval to request observations for
+     * @param sink         the consumer of the events
+     */
+    public SesFeeder(SosClient client, Long samplingRate,
+                     Consumer<? super EposEvent> sink) {
+        this(client, PollingSchedule.fixed(samplingRate), sink);
+    }
+
+    /**
+     * Creates a new {@code SesFeeder} that requests the sub-windows of a
+     * backlog sequentially.
+     *
+     * @param client   the SOS client to request observations
+     * @param schedule the schedule of the requests
+     * @param sink     the consumer of the events
+     */
+    public SesFeeder(SosClient client, PollingSchedule schedule,
+                     Consumer<? super EposEvent> sink) {
+        this(client, schedule, sink, Runnable::run);
+    }
+
+    /**
+     * Creates a new {@code SesFeeder} without a checkpoint.
+     *
+     * @param client          the SOS client to request observations
+     * @param schedule        the schedule of the requests
+     * @param sink            the consumer of the events
+     * @param catchUpExecutor the executor to request the sub-windows of a
+     *                        backlog concurrently
+     */
+    public SesFeeder(SosClient client, PollingSchedule schedule,
+                     Consumer<? super EposEvent> sink,
+                     Executor catchUpExecutor) {
+        this(client, schedule, sink, catchUpExecutor, null, 0L);
+    }
+
+    /**
+     * Creates a new {@code SesFeeder} that does not retry failed polls.
+     *
+     * @param client          the SOS client to request observations
+     * @param schedule        the schedule of the requests
+     * @param sink            the consumer of the events
+     * @param catchUpExecutor the executor to request the sub-windows of a
+     *                        backlog concurrently
+     * @param checkpoint      the checkpoint to resume from and to update
+     *                        after every delivered window (may be
+     *                        {@code null})
+     * @param maxResumeAge    the maximum age (in ms) of a checkpoint to
+     *                        resume from
+     */
+    public SesFeeder(SosClient client, PollingSchedule schedule,
+                     Consumer<? super EposEvent> sink,
+                     Executor catchUpExecutor,
+                     PollingCheckpoint checkpoint,
+                     long maxResumeAge) {
+        this(client, schedule, sink, catchUpExecutor, checkpoint, maxResumeAge,
+             RetryPolicy.none());
+    }
+
+    /**
+     * Creates a new {@code SesFeeder}.
+     *
+     * @param client          the SOS client to request observations
+     * @param schedule        the schedule of the requests
+     * @param sink            the consumer of the events
+     * @param catchUpExecutor the executor to request the sub-windows of a
+     *                        backlog concurrently
+     * @param checkpoint      the checkpoint to resume from and to update
+     *                        after every delivered window (may be
+     *                        {@code null})
+     * @param maxResumeAge    the maximum age (in ms) of a checkpoint to
+     *                        resume from
+     * @param retryPolicy     the policy to retry failed polls
+     */
+    public SesFeeder(SosClient client, PollingSchedule schedule,
+                     Consumer<? super EposEvent> sink,
+                     Executor catchUpExecutor,
+                     PollingCheckpoint checkpoint,
+                     long maxResumeAge,
+                     RetryPolicy retryPolicy) {
+        if (maxResumeAge < 0) {
+            throw new IllegalArgumentException("Invalid maximum resume age: " + maxResumeAge);
+        }
+        this.checkpoint = checkpoint;
+        this.maxResumeAge = maxResumeAge;
+        this.retryPolicy = Objects.requireNonNull(retryPolicy);
         this.client = Objects.requireNonNull(client);
-        this.samplingRate = samplingRate;
+        this.schedule = Objects.requireNonNull(schedule);
+        this.sink = Objects.requireNonNull(sink);
+        this.deduplicator = new EventDeduplicator(schedule.getMinInterval(),
+                                                  MAX_DEDUPLICATED_EVENTS);
+        this.fetcher = new CatchUpFetcher(client, CatchUpPolicy
+                .forSchedule(schedule), catchUpExecutor);
     }
 
-    @Override
-    public void run() {
-        // the first timespan will be from now-samplingrate to now
-        this.last = DateTime.now().minus(this.samplingRate);
-        while (!Thread.currentThread().isInterrupted()) {
-            // during is exclusive boundaries, so shift the begin
-            // 1ms to the past to get every timestamp exactly one time
-            DateTime begin = last.minus(1L);
-            DateTime end = DateTime.now();
-            this.last = end;
-            LOG.info("requesting latest SOS data");
-            try {
-                ObservationData[] observationData = this.client
-                        .getObservations(begin, end)
-                        .getGetObservationResponse()
-                        .getObservationDataArray();
-                LOG.info("Received {} observations", observationData.length);
-                Arrays.stream(observationData)
-                        .map(ObservationData::getOMObservation)
-                        .forEach(this::postEvent);
-                try {
-                    // TODO maybe use a Timer for this
-                    // wait for the specified time span
-                    Thread.sleep(samplingRate);
-                } catch (InterruptedException ex) {
-                    LOG.info("Interrupted", ex);
-                    // reset the interrupted state
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            } catch (IOException ex) {
-                LOG.error("IOException", ex);
-            } catch (XmlException ex) {
-                LOG.error("XmlException", ex);
+    /**
+     * Start polling using {@code scheduler}.
+     *
+     * @param scheduler the scheduler to execute the polls
+     * @param onFailure the consumer of unexpected failures; a failed poller
+     *                  will not be rescheduled
+     */
+    public synchronized void start(ScheduledExecutorService scheduler,
+                                   Consumer<? super Throwable> onFailure) {
+        if (this.scheduler != null) {
+            throw new IllegalStateException("already started");
+        }
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.onFailure = Objects.requireNonNull(onFailure);
+        long now = System.currentTimeMillis();
+        this.interval = this.schedule.getInterval();
+        // the first timespan will be from now-interval to now, unless we
+        // resume from a recent checkpoint
+        this.last = now - this.interval;
+        if (this.checkpoint != null) {
+            long mark = this.checkpoint.get(this.last);
+            if (mark >= now - this.maxResumeAge && mark <= now) {
+                this.last = mark;
+                LOG.info("Resuming SOS polling from {}", new DateTime(this.last));
+            } else {
+                LOG.info("Not resuming SOS polling from stale checkpoint {}", new DateTime(mark));
             }
         }
+        this.nextPoll = now;
+        scheduleNextPoll(now);
+    }
 
-        LOG.info("SOS request thread interrupted");
+    /**
+     * Stop polling. A running poll will be interrupted.
+     */
+    public synchronized void stop() {
+        this.stopped = true;
+        if (this.future != null) {
+            this.future.cancel(true);
+        }
+        LOG.info("SOS polling stopped");
     }
 
-    private void postEvent(OMObservationType xml) {
-        LOG.info("pushing xml {}", xml);
+    private void scheduleNextPoll(long now) {
+        schedule(Math.max(0L, this.nextPoll + this.schedule.nextJitter() - now));
+    }
+
+    private synchronized void schedule(long delay) {
+        if (!this.stopped) {
+            this.future = this.scheduler.schedule(this::tick, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void tick() {
+        Exception failure = null;
         try {
-            EposEvent event = createEvent(xml);
-            LOG.info("created event {}", event);
-            EposEngine.getInstance().filterEvent(event);
-        } catch (TransformationException ex) {
-            LOG.error("TransformationException", ex);
+            int received = poll();
+            this.interval = this.schedule.adapt(this.interval, received);
+        } catch (IOException ex) {
+            LOG.error("IOException", ex);
+            failure = ex;
+        } catch (XmlException ex) {
+            LOG.error("XmlException", ex);
+            failure = ex;
+        } catch (RuntimeException | Error ex) {
+            LOG.error("SOS poll failed", ex);
+            this.onFailure.accept(ex);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (failure == null) {
+            this.failures = 0;
+        } else if (this.retryPolicy.shouldRetry(++this.failures, failure)) {
+            long retry = now + this.retryPolicy.getDelay(this.failures);
+            // retry unless the next regular poll comes first; the window of
+            // the retry still starts at the end of the last delivered window
+            if (retry < this.nextPoll + this.interval) {
+                LOG.info("Retrying SOS poll at {} (attempt {})",
+                         new DateTime(retry), this.failures + 1);
+                schedule(retry - now);
+                return;
+            }
+        } else {
+            this.failures = 0;
+        }
+        // fire at a fixed rate relative to the schedule of this poll; if we
+        // are late, poll immediately (the window covers the missed time)
+        this.nextPoll = Math.max(this.nextPoll + this.interval, now);
+        scheduleNextPoll(now);
+    }
+
+    /**
+     * Request the observations since the last poll. The start of the next
+     * window only advances with the delivered windows, so a failed request is
+     * repeated by the next poll.
+     *
+     * @return the number of received observations
+     *
+     * @throws IOException  if the request fails
+     * @throws XmlException if the response can not be parsed
+     */
+    private int poll() throws IOException, XmlException {
+        long end = System.currentTimeMillis();
+        LOG.info("requesting latest SOS data");
+        // events are pushed to EPOS while the response is read
+        int received = this.fetcher.fetch(this.last, end, this::postEvent,
+                                          this::delivered);
+        LOG.info("Received {} observations", received);
+        return received;
+    }
+
+    private void delivered(long end) {
+        this.last = end;
+        // the next window starts 1ms before end
+        this.deduplicator.expire(end - 1L);
+        if (this.checkpoint != null) {
+            this.checkpoint.set(end);
         }
     }
 
-    private EposEvent createEvent(OMObservationType xml)
-            throws TransformationException {
-        return TransformationRepository.Instance.transform(xml, EposEvent.class);
+    private void postEvent(EposEvent event) {
+        if (this.deduplicator.add(event)) {
+            LOG.info("pushing event {}", event);
+            this.sink.accept(event);
+        }
     }
 
 }
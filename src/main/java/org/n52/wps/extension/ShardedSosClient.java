@@ -0,0 +1,149 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.apache.xmlbeans.XmlException;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.epos.event.EposEvent;
+
+import com.google.common.collect.Lists;
+
+/**
+ * {@code SosClient} that requests the events of multiple shards
+ * concurrently. The shards are usually created by
+ * {@linkplain SosClient#split(int) splitting} a single request template. The
+ * results of the shards are supplied to the consumer as they arrive, so a slow
+ * shard does not block the others.
+ */
+public class ShardedSosClient implements SosClient {
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedSosClient.class);
+    private final List<SosClient> shards;
+    private final Executor executor;
+
+    /**
+     * Creates a new {@code ShardedSosClient}.
+     *
+     * @param shards   the clients of the shards
+     * @param executor the (bounded) executor to run the requests
+     */
+    public ShardedSosClient(List<? extends SosClient> shards, Executor executor) {
+        this.shards = new ArrayList<>(shards);
+        this.executor = Objects.requireNonNull(executor);
+        if (this.shards.isEmpty()) {
+            throw new IllegalArgumentException("no shards");
+        }
+    }
+
+    @Override
+    public int getEvents(DateTime begin, DateTime end,
+                         Consumer<? super EposEvent> consumer)
+            throws XmlException, IOException {
+        Consumer<EposEvent> synchronizedConsumer = synchronize(consumer);
+        return request((shard) -> shard.getEvents(begin, end, synchronizedConsumer));
+    }
+
+    @Override
+    public Object getRequestKey() {
+        return this.shards.stream()
+                .map(SosClient::getRequestKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Execute {@code request} for every shard concurrently and wait for all of
+     * them to finish. If a shard fails, the remaining shards are still
+     * completed before the first failure is rethrown.
+     *
+     * @param request the request
+     *
+     * @return the summed number of observations
+     *
+     * @throws XmlException if a response could not be parsed
+     * @throws IOException  if a HTTP call fails
+     */
+    private int request(ShardRequest request)
+            throws XmlException, IOException {
+        CompletionService<Integer> completion
+                = new ExecutorCompletionService<>(this.executor);
+        List<Future<Integer>> futures = new ArrayList<>(this.shards.size());
+        this.shards.forEach(shard -> futures
+                .add(completion.submit(() -> request.apply(shard))));
+        int received = 0;
+        Throwable failure = null;
+        try {
+            for (int i = 0; i < futures.size(); ++i) {
+                try {
+                    received += completion.take().get();
+                } catch (ExecutionException ex) {
+                    LOG.error("Shard request failed", ex.getCause());
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", ex);
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof XmlException) {
+            throw (XmlException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return received;
+    }
+
+    private static <T> Consumer<T> synchronize(Consumer<? super T> consumer) {
+        Object lock = new Object();
+        return t -> {
+            synchronized (lock) {
+                consumer.accept(t);
+            }
+        };
+    }
+
+    /**
+     * Split {@code values} into at most {@code shards} contiguous partitions
+     * of (nearly) equal size.
+     *
+     * @param <T>    the type of the values
+     * @param values the values
+     * @param shards the maximum number of partitions
+     *
+     * @return the partitions
+     */
+    public static <T> List<List<T>> partition(List<T> values, int shards) {
+        if (shards < 2 || values.size() < 2) {
+            return Collections.singletonList(values);
+        }
+        int size = (values.size() + shards - 1) / shards;
+        return Lists.partition(values, size);
+    }
+
+    /**
+     * A request of a single shard.
+     */
+    @FunctionalInterface
+    private interface ShardRequest {
+        int apply(SosClient shard) throws XmlException, IOException;
+    }
+}
@@ -1,18 +1,47 @@
 package org.n52.wps.extension;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
 
 import net.opengis.sos.x20.GetObservationResponseDocument;
 
 import org.apache.xmlbeans.XmlException;
 import org.joda.time.DateTime;
 
+import org.n52.epos.event.EposEvent;
+
 /**
- * Very simple SOS client to abstract from POX, SOAP and KVP.
+ * Very simple SOS client to abstract from POX, SOAP, KVP, the JSON binding and
+ * the result handling extension. The client is a source of events; clients
+ * that can also return the observations as XML documents implement
+ * {@link ObservationSosClient}.
  *
  * @author Christian Autermann
  */
 public interface SosClient {
+    /**
+     * Request observations in the specified time slot (filtered using the
+     * during operator) and supply them as events to {@code consumer}.
+     * Observations that can not be transformed are logged and skipped.
+     * Implementations should create the events directly from the response
+     * without intermediate XmlBeans objects.
+     *
+     * @param begin    the exclusive lower bound of the time interval
+     * @param end      the exclusive upper bound of the time interval
+     * @param consumer the consumer of the events
+     *
+     * @return the number of observations
+     *
+     * @throws XmlException if the response could not parsed as
+     *                      {@code GetObservationResponseDocument}
+     * @throws IOException  if the underlying HTTP call fails
+     */
+    int getEvents(DateTime begin, DateTime end,
+                  Consumer<? super EposEvent> consumer)
+            throws XmlException, IOException;
+
     /**
      * Request observations in the specified time slot (filtered using the
      * during operator).
@@ -25,7 +54,40 @@ public interface SosClient {
      * @throws XmlException if the response could not parsed as
      *                      {@code GetObservationResponseDocument}
      * @throws IOException  if the underlying HTTP call fails
+     * @throws UnsupportedOperationException if this client does not request
+     *                                       XML observations
+     * @deprecated only {@link ObservationSosClient}s return the observations
+     * as documents, use {@link #getEvents(DateTime, DateTime, Consumer)}
      */
-    GetObservationResponseDocument getObservations(DateTime begin, DateTime end)
-            throws XmlException, IOException;
+    @Deprecated
+    default GetObservationResponseDocument getObservations(DateTime begin, DateTime end)
+            throws XmlException, IOException {
+        throw new UnsupportedOperationException(
+                getClass().getName() + " does not request XML observations");
+    }
+
+    /**
+     * Get a key identifying the observations this client requests. Clients
+     * with equal keys request the same observations from the same service and
+     * can be used interchangeably.
+     *
+     * @return the request key
+     */
+    default Object getRequestKey() {
+        return this;
+    }
+
+    /**
+     * Split the request of this client into (at most) {@code shards}
+     * requests, e.g. by partitioning the requested procedures, offerings or
+     * features. The union of the observations requested by the returned
+     * clients equals the observations requested by this client.
+     *
+     * @param shards the maximum number of shards
+     *
+     * @return the clients of the shards
+     */
+    default List<SosClient> split(int shards) {
+        return Collections.singletonList(this);
+    }
 }
@@ -0,0 +1,301 @@
+package org.n52.wps.extension;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.epos.event.EposEvent;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Service that shares SOS polling between all {@link EventingProcess}es
+ * requesting the same observations. Subscriptions with equal
+ * {@linkplain SosClient#getRequestKey() request keys} and schedules are
+ * served by a single {@link SesFeeder} that fans out the events to all
+ * distinct sinks of the subscriptions. All pollers share a scheduler with a
+ * fixed number of threads. Pollers only keep a {@link PollingCheckpoint} if
+ * resuming is requested and a {@linkplain StorageDirectory storage directory}
+ * is configured. Backlogs are requested on a separate pool, as
+ * these requests may in turn wait for requests on the request executor.
+ * Hedged requests have their own pool for the same reason.
+ */
+public class SosPollingService {
+    private static final Logger LOG = LoggerFactory.getLogger(SosPollingService.class);
+    private static final int THREADS = 2 * Runtime.getRuntime().availableProcessors();
+    private static final int REQUEST_THREADS = 4 * Runtime.getRuntime().availableProcessors();
+    // has to be created after the pool sizes are initialized
+    private static final SosPollingService INSTANCE = new SosPollingService();
+    private final Map<Object, SharedPoller> pollers = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+            THREADS, new ThreadFactoryBuilder()
+                    .setNameFormat("sos-poller-%d")
+                    .setDaemon(true)
+                    .build());
+    private final ExecutorService catchUpExecutor = Executors.newFixedThreadPool(
+            THREADS, new ThreadFactoryBuilder()
+                    .setNameFormat("sos-catch-up-%d")
+                    .setDaemon(true)
+                    .build());
+    private final ExecutorService requestExecutor = Executors.newFixedThreadPool(
+            REQUEST_THREADS, new ThreadFactoryBuilder()
+                    .setNameFormat("sos-request-%d")
+                    .setDaemon(true)
+                    .build());
+    private final ExecutorService hedgeExecutor = Executors.newFixedThreadPool(
+            REQUEST_THREADS, new ThreadFactoryBuilder()
+                    .setNameFormat("sos-hedge-%d")
+                    .setDaemon(true)
+                    .build());
+
+    /**
+     * Get the shared instance of this service.
+     *
+     * @return the instance
+     */
+    public static SosPollingService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the bounded executor that should be used for concurrent requests
+     * within a single poll (e.g. by a {@link ShardedSosClient}).
+     *
+     * @return the executor
+     */
+    public ExecutorService getRequestExecutor() {
+        return this.requestExecutor;
+    }
+
+    /**
+     * Get the bounded executor that should be used for the requests of a
+     * {@link HedgedSosClient}.
+     *
+     * @return the executor
+     */
+    public ExecutorService getHedgeExecutor() {
+        return this.hedgeExecutor;
+    }
+
+    /**
+     * Subscribe to the observations requested by {@code client} without
+     * retrying failed polls.
+     *
+     * @param client    the SOS client
+     * @param schedule  the polling schedule
+     * @param sink      the consumer of the events; events are only supplied
+     *                  once to sinks that are subscribed multiple times
+     * @param onFailure the consumer of uncaught exceptions of the poller
+     *
+     * @return the subscription
+     */
+    public Subscription subscribe(SosClient client, PollingSchedule schedule,
+                                  Consumer<? super EposEvent> sink,
+                                  Consumer<? super Throwable> onFailure) {
+        return subscribe(client, schedule, RetryPolicy.none(), 0L, sink, onFailure);
+    }
+
+    /**
+     * Subscribe to the observations requested by {@code client}. If there is
+     * already a poller for the same request and schedule, it is reused and
+     * {@code client}, {@code retryPolicy} and {@code maxResumeAge} are
+     * discarded.
+     *
+     * @param client       the SOS client
+     * @param schedule     the polling schedule
+     * @param retryPolicy  the policy to retry failed polls
+     * @param maxResumeAge the maximum age (in ms) of a checkpoint of a
+     *                     previous run to resume from; if it is {@code 0},
+     *                     no checkpoint is kept
+     * @param sink         the consumer of the events; events are only
+     *                     supplied once to sinks that are subscribed multiple
+     *                     times
+     * @param onFailure    the consumer of uncaught exceptions of the poller
+     *
+     * @return the subscription
+     */
+    public synchronized Subscription subscribe(SosClient client,
+                                               PollingSchedule schedule,
+                                               RetryPolicy retryPolicy,
+                                               long maxResumeAge,
+                                               Consumer<? super EposEvent> sink,
+                                               Consumer<? super Throwable> onFailure) {
+        Object key = Arrays.asList(client.getRequestKey(), schedule);
+        SharedPoller poller = this.pollers.get(key);
+        boolean created = poller == null;
+        if (created) {
+            PollingCheckpoint checkpoint = maxResumeAge > 0 ? openCheckpoint(key) : null;
+            poller = new SharedPoller(key, checkpoint);
+            this.pollers.put(key, poller);
+        }
+        Subscription subscription = new Subscription(poller, sink, onFailure);
+        poller.add(subscription);
+        if (created) {
+            LOG.debug("Starting poller for {}", key);
+            poller.start(new SesFeeder(client, schedule, poller::distribute,
+                                       this.catchUpExecutor, poller.checkpoint,
+                                       maxResumeAge, retryPolicy));
+        } else {
+            LOG.debug("Reusing poller for {}", key);
+        }
+        return subscription;
+    }
+
+    /**
+     * Open the checkpoint of the poller identified by {@code key}.
+     *
+     * @param key the key of the poller
+     *
+     * @return the checkpoint or {@code null} if it can not be opened
+     */
+    private static PollingCheckpoint openCheckpoint(Object key) {
+        try {
+            return PollingCheckpoint.open(key);
+        } catch (IOException ex) {
+            LOG.warn("Can not open checkpoint for {}, polling from now", key, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Remove the subscription and stop the poller if it has no subscriptions
+     * left.
+     *
+     * @param subscription the subscription
+     */
+    private synchronized void unsubscribe(Subscription subscription) {
+        SharedPoller poller = subscription.poller;
+        if (poller.remove(subscription) &&
+            this.pollers.get(poller.key) == poller) {
+            LOG.debug("Stopping poller for {}", poller.key);
+            this.pollers.remove(poller.key);
+            poller.stop();
+        }
+    }
+
+    /**
+     * Remove a failed poller and notify its subscribers.
+     *
+     * @param poller    the poller
+     * @param throwable the failure
+     */
+    private void fail(SharedPoller poller, Throwable throwable) {
+        List<Subscription> subscriptions;
+        synchronized (this) {
+            if (this.pollers.get(poller.key) == poller) {
+                this.pollers.remove(poller.key);
+            }
+            subscriptions = poller.clear();
+        }
+        poller.closeCheckpoint();
+        subscriptions.forEach(s -> s.onFailure.accept(throwable));
+    }
+
+    /**
+     * A {@link SesFeeder} shared by multiple subscriptions.
+     */
+    private class SharedPoller {
+        private final Object key;
+        private final PollingCheckpoint checkpoint;
+        private final List<Subscription> subscriptions = new LinkedList<>();
+        private volatile List<Consumer<? super EposEvent>> sinks = new LinkedList<>();
+        private SesFeeder feeder;
+
+        SharedPoller(Object key, PollingCheckpoint checkpoint) {
+            this.key = key;
+            this.checkpoint = checkpoint;
+        }
+
+        void start(SesFeeder feeder) {
+            this.feeder = feeder;
+            this.feeder.start(scheduler, e -> fail(this, e));
+        }
+
+        void stop() {
+            this.feeder.stop();
+            closeCheckpoint();
+        }
+
+        void closeCheckpoint() {
+            if (this.checkpoint != null) {
+                try {
+                    this.checkpoint.close();
+                } catch (IOException ex) {
+                    LOG.warn("Could not close checkpoint " + this.checkpoint.getPath(), ex);
+                }
+            }
+        }
+
+        void distribute(EposEvent event) {
+            this.sinks.forEach(sink -> sink.accept(event));
+        }
+
+        void add(Subscription subscription) {
+            this.subscriptions.add(subscription);
+            updateSinks();
+        }
+
+        boolean remove(Subscription subscription) {
+            this.subscriptions.remove(subscription);
+            updateSinks();
+            return this.subscriptions.isEmpty();
+        }
+
+        List<Subscription> clear() {
+            List<Subscription> removed = new LinkedList<>(this.subscriptions);
+            this.subscriptions.clear();
+            updateSinks();
+            return removed;
+        }
+
+        private void updateSinks() {
+            List<Consumer<? super EposEvent>> distinct = new LinkedList<>();
+            this.subscriptions.stream()
+                    .map(s -> s.sink)
+                    .filter(sink -> distinct.stream().noneMatch(x -> x == sink))
+                    .forEach(distinct::add);
+            this.sinks = distinct;
+        }
+    }
+
+    /**
+     * A subscription to a shared poller. Closing the subscription will stop
+     * the poller if there are no other subscriptions.
+     */
+    public class Subscription implements Closeable {
+        private final SharedPoller poller;
+        private final Consumer<? super EposEvent> sink;
+        private final Consumer<? super Throwable> onFailure;
+        private boolean closed = false;
+
+        private Subscription(SharedPoller poller,
+                             Consumer<? super EposEvent> sink,
+                             Consumer<? super Throwable> onFailure) {
+            this.poller = poller;
+            this.sink = Objects.requireNonNull(sink);
+            this.onFailure = Objects.requireNonNull(onFailure);
+        }
+
+        @Override
+        public void close() {
+            synchronized (SosPollingService.this) {
+                if (!this.closed) {
+                    this.closed = true;
+                    unsubscribe(this);
+                }
+            }
+        }
+    }
+}
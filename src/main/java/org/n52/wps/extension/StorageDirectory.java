@@ -0,0 +1,108 @@
+package org.n52.wps.extension;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Location of the files written by the process: the state that is kept
+ * across restarts ({@linkplain PollingCheckpoint checkpoints} and
+ * {@linkplain NotificationOutbox outboxes}) and the temporary spill files of
+ * the {@linkplain NotificationQueue notification queues}.
+ * <p>
+ * All files are stored in subdirectories of the directory given by the
+ * system property {@value #PROPERTY}. As state that is replayed after a
+ * restart must not be lost or be left over from an unrelated run, it is only
+ * kept if the directory is configured explicitly. Temporary files are written
+ * to {@code java.io.tmpdir} otherwise.
+ */
+public final class StorageDirectory {
+    /**
+     * The system property specifying the storage directory.
+     */
+    public static final String PROPERTY = "org.n52.wps.extension.storage.dir";
+
+    private StorageDirectory() {
+    }
+
+    /**
+     * Check if a storage directory is configured.
+     *
+     * @return if state can be kept across restarts
+     */
+    public static boolean isConfigured() {
+        return getRoot().isPresent();
+    }
+
+    /**
+     * Get the subdirectory {@code name} of the configured storage directory
+     * to keep state across restarts in. The directory will be created if it
+     * does not exist.
+     *
+     * @param name the name of the subdirectory
+     *
+     * @return the directory
+     *
+     * @throws IOException if no storage directory is configured or the
+     *                     directory can not be created
+     */
+    public static Path getPersistentDirectory(String name)
+            throws IOException {
+        Path root = getRoot().orElseThrow(() -> new IOException(
+                "No storage directory configured, set the system property " + PROPERTY));
+        return createDirectories(root.resolve(name));
+    }
+
+    /**
+     * Get the subdirectory {@code name} of the storage directory, or
+     * {@code java.io.tmpdir} if none is configured, to write temporary files
+     * to. The directory will be created if it does not exist.
+     *
+     * @param name the name of the subdirectory
+     *
+     * @return the directory
+     *
+     * @throws IOException if the directory can not be created
+     */
+    public static Path getTemporaryDirectory(String name)
+            throws IOException {
+        Optional<Path> root = getRoot();
+        if (root.isPresent()) {
+            return createDirectories(root.get().resolve(name));
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * Get a file name identifying {@code key}.
+     *
+     * @param key the key; its string representation has to be stable across
+     *            restarts
+     *
+     * @return the file name
+     */
+    public static String getFileName(Object key) {
+        return Hashing.sha1()
+                .hashString(String.valueOf(key), StandardCharsets.UTF_8)
+                .toString();
+    }
+
+    private static Path createDirectories(Path directory)
+            throws IOException {
+        Files.createDirectories(directory);
+        return directory;
+    }
+
+    private static Optional<Path> getRoot() {
+        String directory = System.getProperty(PROPERTY);
+        if (directory == null || directory.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(Paths.get(directory));
+    }
+}
@@ -1,76 +1,335 @@
 package org.n52.wps.extension;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.HttpURLConnection;
 import java.net.ProtocolException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+import org.apache.http.client.HttpResponseException;
 import org.apache.xmlbeans.XmlObject;
 
 /**
  * Implementation of {@code HttpClient} using
  * {@linkplain URL#openConnection() URL connections}.
+ * <p>
+ * Compressed responses ({@code gzip} or {@code deflate}) are negotiated for
+ * every request and are decompressed while they are read. Request bodies
+ * are {@code gzip} compressed if they exceed the configured
+ * {@linkplain #URLConnectionHttpClient(int) threshold}; as not every server
+ * supports compressed requests, this is disabled by default.
+ * <p>
+ * Connections are opened with the connect and read timeouts of the
+ * {@linkplain HttpTimeouts endpoint}.
  *
  * @author Christian Autermann
  */
 public class URLConnectionHttpClient implements HttpClient {
+    /**
+     * The system property containing the default request compression
+     * threshold.
+     */
+    public static final String COMPRESSION_THRESHOLD_PROPERTY
+            = "org.n52.wps.extension.http.compression-threshold";
+    /**
+     * Threshold to disable the compression of requests.
+     */
+    public static final int NO_COMPRESSION = -1;
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final String GZIP = "gzip";
+    private static final int BUFFER_SIZE = 8192;
+    private final int compressionThreshold;
+    private final HttpTimeouts timeouts;
+
+    /**
+     * Create a new {@code URLConnectionHttpClient} using the compression
+     * threshold of the system property {@value #COMPRESSION_THRESHOLD_PROPERTY}
+     * (not compressing requests if the property is not set) and the
+     * {@linkplain HttpTimeouts#fromSystemProperties() configured timeouts}.
+     */
+    public URLConnectionHttpClient() {
+        this(Integer.getInteger(COMPRESSION_THRESHOLD_PROPERTY, NO_COMPRESSION));
+    }
+
+    /**
+     * Create a new {@code URLConnectionHttpClient} using the
+     * {@linkplain HttpTimeouts#fromSystemProperties() configured timeouts}.
+     *
+     * @param compressionThreshold the minimum size (in bytes) of request
+     *                             bodies to compress or a negative value to
+     *                             never compress request bodies
+     */
+    public URLConnectionHttpClient(int compressionThreshold) {
+        this(compressionThreshold, HttpTimeouts.fromSystemProperties());
+    }
+
+    /**
+     * Create a new {@code URLConnectionHttpClient}.
+     *
+     * @param compressionThreshold the minimum size (in bytes) of request
+     *                             bodies to compress or a negative value to
+     *                             never compress request bodies
+     * @param timeouts             the timeouts
+     */
+    public URLConnectionHttpClient(int compressionThreshold,
+                                   HttpTimeouts timeouts) {
+        this.compressionThreshold = compressionThreshold;
+        this.timeouts = Objects.requireNonNull(timeouts);
+    }
 
     @Override
     public InputStream post(URL url, XmlObject request)
             throws ProtocolException, IOException {
-        byte[] bytes = request.xmlText().getBytes(StandardCharsets.UTF_8);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        return post(url, "application/xml", "application/xml", request::save);
+    }
+
+    @Override
+    public InputStream post(URL url, String contentType, byte[] request)
+            throws IOException {
+        return post(url, contentType, null, request);
+    }
+
+    @Override
+    public InputStream post(URL url, String contentType, String accept,
+                            byte[] request)
+            throws ProtocolException, IOException {
+        HttpURLConnection conn = openConnection(url);
         conn.setDoInput(true);
         conn.setDoOutput(true);
         conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/xml");
-        conn.setRequestProperty("Accept", "application/xml");
-        conn.setRequestProperty("Content-Length", String.valueOf(bytes.length));
+        conn.setRequestProperty("Content-Type", contentType);
+        if (accept != null) {
+            conn.setRequestProperty("Accept", accept);
+        }
+        byte[] body = request;
+        if (isCompressed(request.length)) {
+            conn.setRequestProperty("Content-Encoding", GZIP);
+            body = compress(request);
+        }
+        conn.setFixedLengthStreamingMode(body.length);
 
         try (OutputStream outputStream = conn.getOutputStream()) {
-            outputStream.write(bytes);
+            outputStream.write(body);
             outputStream.flush();
         }
-        return conn.getInputStream();
+        return getInputStream(conn);
+    }
+
+    @Override
+    public InputStream post(URL url, String contentType, String accept,
+                            BodyWriter request)
+            throws ProtocolException, IOException {
+        HttpURLConnection conn = openConnection(url);
+        conn.setDoInput(true);
+        conn.setDoOutput(true);
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", contentType);
+        if (accept != null) {
+            conn.setRequestProperty("Accept", accept);
+        }
+        // the length is not known in advance
+        conn.setChunkedStreamingMode(BUFFER_SIZE);
+        boolean compressed = isCompressed(Integer.MAX_VALUE);
+        if (compressed) {
+            conn.setRequestProperty("Content-Encoding", GZIP);
+        }
+        try {
+            OutputStream outputStream = conn.getOutputStream();
+            if (compressed) {
+                outputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+            }
+            request.writeTo(outputStream);
+            outputStream.close();
+        } catch (IOException | RuntimeException ex) {
+            // do not terminate the chunked stream to not send a partial request
+            conn.disconnect();
+            throw ex;
+        }
+        return getInputStream(conn);
     }
 
     @Override
     public OutputStream post(URL url, String contentType)
             throws ProtocolException, IOException {
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        HttpURLConnection conn = openConnection(url);
         conn.setDoOutput(true);
         conn.setRequestProperty("Content-Type", contentType);
         conn.setRequestMethod("POST");
+        if (isCompressed(Integer.MAX_VALUE)) {
+            conn.setRequestProperty("Content-Encoding", GZIP);
+            return new GZIPOutputStream(conn.getOutputStream(), BUFFER_SIZE);
+        }
         return conn.getOutputStream();
     }
 
     @Override
     public InputStream get(URL url)
             throws IOException {
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        return get(url, "application/xml");
+    }
+
+    @Override
+    public InputStream get(URL url, String accept)
+            throws IOException {
+        HttpURLConnection conn = openConnection(url);
         conn.setDoOutput(true);
         conn.setRequestMethod("GET");
-        conn.setRequestProperty("Accept", "application/xml");
-        return conn.getInputStream();
+        conn.setRequestProperty("Accept", accept);
+        return getInputStream(conn);
     }
 
     @Override
     public InputStream post(URL url, String contentType, String request)
             throws IOException {
+        return post(url, contentType, request.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private HttpURLConnection openConnection(URL url)
+            throws IOException {
         HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setDoOutput(true);
-        conn.setDoInput(true);
-        conn.setRequestProperty("Content-Type", contentType);
-        conn.setRequestMethod("POST");
+        conn.setConnectTimeout(this.timeouts.getConnectTimeout(url));
+        conn.setReadTimeout(this.timeouts.getReadTimeout(url));
+        conn.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+        return conn;
+    }
 
-        try (OutputStream post = conn.getOutputStream()) {
-            post.write(request.getBytes(StandardCharsets.UTF_8));
+    private boolean isCompressed(int length) {
+        return this.compressionThreshold >= 0 &&
+               length >= this.compressionThreshold;
+    }
+
+    private static byte[] compress(byte[] request) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(request.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(baos, BUFFER_SIZE)) {
+            gzip.write(request);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Get the response stream of {@code conn}, decompressing it according to
+     * the {@code Content-Encoding} of the response.
+     *
+     * @param conn the connection
+     *
+     * @return the (decompressed) response stream
+     *
+     * @throws IOException if the HTTP call fails or the content encoding is
+     *                     not supported; unsuccessful responses are reported
+     *                     as {@link HttpResponseException}
+     */
+    private static InputStream getInputStream(HttpURLConnection conn)
+            throws IOException {
+        InputStream in;
+        try {
+            in = conn.getInputStream();
+        } catch (IOException ex) {
+            drain(conn.getErrorStream());
+            int status = getResponseCode(conn);
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                HttpResponseException failure = new HttpResponseException(status, String.format(
+                        "%s %s: %s", conn.getRequestMethod(), conn.getURL(), ex.getMessage()));
+                failure.initCause(ex);
+                throw failure;
+            }
+            throw ex;
+        }
+        String encoding = conn.getContentEncoding();
+        if (encoding == null || encoding.isEmpty() ||
+            encoding.equalsIgnoreCase("identity")) {
+            return in;
+        } else if (encoding.equalsIgnoreCase(GZIP) ||
+                   encoding.equalsIgnoreCase("x-gzip")) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        } else if (encoding.equalsIgnoreCase("deflate")) {
+            return inflate(in);
+        } else {
+            in.close();
+            throw new IOException("Unsupported content encoding: " + encoding);
         }
+    }
 
-        return conn.getInputStream();
+    /**
+     * Get the status code of the response.
+     *
+     * @param conn the connection
+     *
+     * @return the status code or {@code -1} if there is no response
+     */
+    private static int getResponseCode(HttpURLConnection conn) {
+        try {
+            return conn.getResponseCode();
+        } catch (IOException ex) {
+            return -1;
+        }
     }
 
+    /**
+     * Read and close the error stream of a failed request, so that the
+     * connection can be kept alive and reused.
+     *
+     * @param errorStream the error stream (may be {@code null})
+     */
+    private static void drain(InputStream errorStream) {
+        if (errorStream != null) {
+            try (InputStream in = errorStream) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (in.read(buffer) >= 0) {
+                    // discard
+                }
+            } catch (IOException ex) {
+                // the connection will not be reused
+            }
+        }
+    }
+
+    /**
+     * Create a stream inflating {@code in}. Some servers send raw
+     * {@code deflate} streams instead of the {@code zlib} format required by
+     * RFC 7230, so the header is checked to choose the format.
+     *
+     * @param in the compressed stream
+     *
+     * @return the decompressed stream
+     *
+     * @throws IOException if reading the header fails
+     */
+    static InputStream inflate(InputStream in) throws IOException {
+        PushbackInputStream pin = new PushbackInputStream(in, 2);
+        byte[] header = new byte[2];
+        int read = 0;
+        while (read < header.length) {
+            int n = pin.read(header, read, header.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        pin.unread(header, 0, read);
+        int cmf = header[0] & 0xff;
+        int flg = header[1] & 0xff;
+        boolean zlib = read == 2 && (cmf & 0x0f) == 8 &&
+                       ((cmf << 8) | flg) % 31 == 0;
+        Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(pin, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // not released by InflaterInputStream for custom inflaters
+                    inflater.end();
+                }
+            }
+        };
+    }
 }
@@ -32,7 +32,8 @@ public class NotificationRssFeedItem extends RssFeedItem {
      * @param guid              the GUID
      * @param procedure         the procedure
      * @param observedProperty  the observed property
-     * @param featureOfInterest the feature of interest
+     * @param featureOfInterest the feature of interest or {@code null} if
+     *                          it is not known
      * @param undershoot        the undershoot value
      * @param overshoot         the overshoot value
      * @param value             the value
@@ -46,7 +47,7 @@ public class NotificationRssFeedItem extends RssFeedItem {
         super(title, link, category, description, date, guid);
         this.procedure = requireNonNull(emptyToNull(procedure));
         this.observedProperty = requireNonNull(emptyToNull(observedProperty));
-        this.featureOfInterest = requireNonNull(emptyToNull(featureOfInterest));
+        this.featureOfInterest = emptyToNull(featureOfInterest);
         this.undershoot = undershoot;
         this.overshoot = overshoot;
         this.value = value;
@@ -73,7 +74,7 @@ public class NotificationRssFeedItem extends RssFeedItem {
     /**
      * Get the feature of interest of this item.
      *
-     * @return the feature of interest
+     * @return the feature of interest or {@code null} if it is not known
      */
     public String getFeatureOfInterest() {
         return featureOfInterest;
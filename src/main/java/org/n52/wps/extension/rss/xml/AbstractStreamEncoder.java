@@ -1,12 +1,11 @@
 package org.n52.wps.extension.rss.xml;
 
-import java.text.NumberFormat;
-import java.util.Locale;
-
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
+import org.joda.time.DateTime;
+
 /**
  * Abstract implementation of {@code StreamEncoder}.
  *
@@ -78,8 +77,27 @@ public abstract class AbstractStreamEncoder<T> implements StreamEncoder<T> {
     protected void writeSimpleElement(XMLStreamWriter writer, QName name,
                                       double value)
             throws XMLStreamException {
-        NumberFormat format = NumberFormat.getNumberInstance(Locale.US);
-        writeSimpleElement(writer, name, format.format(value));
+        startElement(writer, name);
+        EncodingContext.getInstance().writeNumber(writer, value);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Writes an element with the specified {@code name} and the RFC 1123
+     * representation of {@code date}.
+     *
+     * @param writer the writer
+     * @param name   the name
+     * @param date   the date
+     *
+     * @throws XMLStreamException if the element could not be written
+     */
+    protected void writeSimpleElement(XMLStreamWriter writer, QName name,
+                                      DateTime date)
+            throws XMLStreamException {
+        startElement(writer, name);
+        EncodingContext.getInstance().writeDate(writer, date);
+        writer.writeEndElement();
     }
 
 }
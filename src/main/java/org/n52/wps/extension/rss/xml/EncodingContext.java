@@ -0,0 +1,228 @@
+package org.n52.wps.extension.rss.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.joda.time.DateTime;
+
+import javanet.staxutils.IndentingXMLStreamWriter;
+
+/**
+ * Per-thread state of the {@linkplain StreamEncoder stream encoders}. The
+ * {@link XMLOutputFactory} is looked up only once, and each thread reuses a
+ * single {@link XMLStreamWriter} writing to a pooled buffer that is attached
+ * to the output stream of the current encoding. In compact mode encoding
+ * does not allocate anything besides the encoded strings; numbers and dates
+ * are formatted into a per-thread character buffer by a {@link FeedFormat}.
+ * Indenting wraps the writer in an {@link IndentingXMLStreamWriter} for each
+ * encoding.
+ * <p>
+ * If an encoding fails, the writer is discarded as its state is undefined.
+ * Nested encodings in the same thread use a new writer.
+ */
+public final class EncodingContext {
+    private static final int BUFFER_SIZE = 8192;
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newFactory();
+    private static final ThreadLocal<EncodingContext> CONTEXT
+            = ThreadLocal.withInitial(EncodingContext::new);
+    private final AttachableOutputStream stream = new AttachableOutputStream(BUFFER_SIZE);
+    private final FeedFormat format = new FeedFormat();
+    private final char[] chars = new char[Math.max(FeedFormat.MAX_NUMBER_LENGTH,
+                                                   FeedFormat.MAX_DATE_LENGTH)];
+    private XMLStreamWriter writer;
+    private boolean active;
+
+    private EncodingContext() {
+    }
+
+    /**
+     * Get the context of the current thread.
+     *
+     * @return the context
+     */
+    public static EncodingContext getInstance() {
+        return CONTEXT.get();
+    }
+
+    /**
+     * Get the shared {@code XMLOutputFactory}.
+     *
+     * @return the factory
+     */
+    public static XMLOutputFactory getFactory() {
+        return FACTORY;
+    }
+
+    /**
+     * Let {@code encoding} write to the output stream using the writer of
+     * this context. The writer is flushed afterwards.
+     *
+     * @param out      the output stream (will not be closed)
+     * @param indent   if the output should be indented
+     * @param encoding the encoding
+     *
+     * @throws XMLStreamException if the encoding fails
+     */
+    public void encode(OutputStream out, boolean indent, Encoding encoding)
+            throws XMLStreamException {
+        if (this.active) {
+            XMLStreamWriter nested = FACTORY.createXMLStreamWriter(out, XmlConstants.XML_ENCODING);
+            write(indent ? new IndentingXMLStreamWriter(nested) : nested, encoding);
+            return;
+        }
+        this.active = true;
+        this.stream.attach(out);
+        boolean success = false;
+        try {
+            if (this.writer == null) {
+                this.writer = FACTORY.createXMLStreamWriter(this.stream, XmlConstants.XML_ENCODING);
+            }
+            // the indenting writer keeps state across documents
+            write(indent ? new IndentingXMLStreamWriter(this.writer) : this.writer, encoding);
+            success = true;
+        } finally {
+            this.stream.detach();
+            if (!success) {
+                this.writer = null;
+            }
+            this.active = false;
+        }
+    }
+
+    private static void write(XMLStreamWriter writer, Encoding encoding)
+            throws XMLStreamException {
+        encoding.encode(writer);
+        writer.flush();
+    }
+
+    /**
+     * Get the number and date format of the current thread.
+     *
+     * @return the format
+     */
+    public FeedFormat getFormat() {
+        return this.format;
+    }
+
+    /**
+     * Write the {@linkplain FeedFormat#formatNumber(double, char[], int)
+     * formatted} number as characters.
+     *
+     * @param writer the writer
+     * @param value  the value
+     *
+     * @throws XMLStreamException if the characters can not be written
+     */
+    public void writeNumber(XMLStreamWriter writer, double value)
+            throws XMLStreamException {
+        int length = FeedFormat.formatNumber(value, this.chars, 0);
+        writer.writeCharacters(this.chars, 0, length);
+    }
+
+    /**
+     * Write the {@linkplain FeedFormat#formatDate(long, char[], int)
+     * formatted} date as characters.
+     *
+     * @param writer the writer
+     * @param date   the date
+     *
+     * @throws XMLStreamException if the characters can not be written
+     */
+    public void writeDate(XMLStreamWriter writer, DateTime date)
+            throws XMLStreamException {
+        int length = this.format.formatDate(date.getMillis(), this.chars, 0);
+        writer.writeCharacters(this.chars, 0, length);
+    }
+
+    /**
+     * Writes an object using a {@link XMLStreamWriter}.
+     */
+    @FunctionalInterface
+    public interface Encoding {
+        /**
+         * Write the object.
+         *
+         * @param writer the writer
+         *
+         * @throws XMLStreamException if the encoding fails
+         */
+        void encode(XMLStreamWriter writer)
+                throws XMLStreamException;
+    }
+
+    /**
+     * Buffered output stream whose target can be exchanged. Flushing writes
+     * the buffer to the target.
+     */
+    private static class AttachableOutputStream extends OutputStream {
+        private final byte[] buffer;
+        private int count;
+        private OutputStream out;
+
+        AttachableOutputStream(int size) {
+            this.buffer = new byte[size];
+        }
+
+        void attach(OutputStream out) {
+            this.out = out;
+            this.count = 0;
+        }
+
+        void detach() {
+            this.out = null;
+            this.count = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.count == this.buffer.length) {
+                flushBuffer();
+            }
+            this.buffer[this.count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len >= this.buffer.length) {
+                flushBuffer();
+                target().write(b, off, len);
+                return;
+            }
+            if (len > this.buffer.length - this.count) {
+                flushBuffer();
+            }
+            System.arraycopy(b, off, this.buffer, this.count, len);
+            this.count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+            target().flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the target is owned by the caller
+            flush();
+        }
+
+        private void flushBuffer() throws IOException {
+            if (this.count > 0) {
+                target().write(this.buffer, 0, this.count);
+                this.count = 0;
+            }
+        }
+
+        private OutputStream target() throws IOException {
+            if (this.out == null) {
+                throw new IOException("stream is detached");
+            }
+            return this.out;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.n52.wps.extension.rss.xml;
+
+/**
+ * Formats the numbers and dates of feeds into character buffers.
+ * <p>
+ * Numbers are written in plain decimal notation with the fewest fraction
+ * digits that still parse to the same {@code double}, without grouping
+ * separators (e.g. {@code 1234.5678} or {@code 3}). Values that can not be
+ * represented like that with at most 17 fraction digits, as well as
+ * {@code NaN} and infinite values, are written by
+ * {@link Double#toString(double)}.
+ * <p>
+ * Dates are written using the
+ * {@linkplain XmlConstants#RFC_1123_DATE_TIME_FORMAT RFC 1123 format}. The
+ * formatted date of the last second is cached, so that notifications
+ * produced at the same time format their dates only once. Instances are not
+ * thread-safe, use {@link EncodingContext#getFormat()}.
+ */
+public final class FeedFormat {
+    /**
+     * The maximum length of a formatted number.
+     */
+    public static final int MAX_NUMBER_LENGTH = 32;
+    /**
+     * The maximum length of a formatted date.
+     */
+    public static final int MAX_DATE_LENGTH = 40;
+    private static final int MAX_FRACTION_DIGITS = 17;
+    /**
+     * Larger values are not exactly representable as {@code double}.
+     */
+    private static final double MAX_EXACT = 0x1p53;
+    private static final double[] POWERS_OF_TEN = new double[MAX_FRACTION_DIGITS + 1];
+    private final char[] date = new char[MAX_DATE_LENGTH];
+    private int dateLength;
+    private long second = Long.MIN_VALUE;
+
+    static {
+        POWERS_OF_TEN[0] = 1.0d;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0d;
+        }
+    }
+
+    /**
+     * Write the shortest decimal representation of {@code value} that
+     * parses to the same {@code double}.
+     *
+     * @param value  the value
+     * @param buffer the buffer with at least {@value #MAX_NUMBER_LENGTH}
+     *               characters starting at {@code offset}
+     * @param offset the offset to write to
+     *
+     * @return the offset after the last written character
+     */
+    public static int formatNumber(double value, char[] buffer, int offset) {
+        if (value == 0.0d) {
+            if (1.0d / value < 0) {
+                buffer[offset++] = '-';
+            }
+            buffer[offset++] = '0';
+            return offset;
+        }
+        if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+            for (int digits = 0; digits <= MAX_FRACTION_DIGITS; ++digits) {
+                double scaled = Math.rint(value * POWERS_OF_TEN[digits]);
+                if (Math.abs(scaled) >= MAX_EXACT) {
+                    break;
+                }
+                // both operands are exact, so the quotient is the correctly
+                // rounded value of the decimal, as parsing it would be
+                if (scaled / POWERS_OF_TEN[digits] == value) {
+                    return writeDecimal((long) scaled, digits, buffer, offset);
+                }
+            }
+        }
+        String string = Double.toString(value);
+        string.getChars(0, string.length(), buffer, offset);
+        return offset + string.length();
+    }
+
+    /**
+     * Write {@code unscaled * 10^-scale}.
+     *
+     * @param unscaled the unscaled value
+     * @param scale    the number of fraction digits
+     * @param buffer   the buffer
+     * @param offset   the offset to write to
+     *
+     * @return the offset after the last written character
+     */
+    private static int writeDecimal(long unscaled, int scale, char[] buffer, int offset) {
+        if (unscaled < 0) {
+            buffer[offset++] = '-';
+            unscaled = -unscaled;
+        }
+        int length = Math.max(stringSize(unscaled), scale + 1);
+        if (scale > 0) {
+            // the decimal point
+            ++length;
+        }
+        int position = offset + length;
+        for (int i = 0; i < scale; ++i) {
+            buffer[--position] = (char) ('0' + unscaled % 10);
+            unscaled /= 10;
+        }
+        if (scale > 0) {
+            buffer[--position] = '.';
+        }
+        do {
+            buffer[--position] = (char) ('0' + unscaled % 10);
+            unscaled /= 10;
+        } while (position > offset);
+        return offset + length;
+    }
+
+    private static int stringSize(long value) {
+        int size = 1;
+        for (long limit = 10; size < 19 && value >= limit; limit *= 10) {
+            ++size;
+        }
+        return size;
+    }
+
+    /**
+     * Write the RFC 1123 representation of {@code millis}.
+     *
+     * @param millis the time (in ms since the epoch)
+     * @param buffer the buffer with at least {@value #MAX_DATE_LENGTH}
+     *               characters starting at {@code offset}
+     * @param offset the offset to write to
+     *
+     * @return the offset after the last written character
+     */
+    public int formatDate(long millis, char[] buffer, int offset) {
+        long currentSecond = Math.floorDiv(millis, 1000L);
+        if (currentSecond != this.second) {
+            String string = XmlConstants.RFC_1123_DATE_TIME_FORMAT.print(currentSecond * 1000L);
+            string.getChars(0, string.length(), this.date, 0);
+            this.dateLength = string.length();
+            this.second = currentSecond;
+        }
+        System.arraycopy(this.date, 0, buffer, offset, this.dateLength);
+        return offset + this.dateLength;
+    }
+}
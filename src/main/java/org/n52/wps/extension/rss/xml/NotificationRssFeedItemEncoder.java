@@ -19,7 +19,9 @@ public class NotificationRssFeedItemEncoder extends RssFeedItemEncoder {
         NotificationRssFeedItem nFeedItem = (NotificationRssFeedItem) feedItem;
         writeSimpleElement(writer, XmlConstants.QN_PROCEDURE, nFeedItem.getProcedure());
         writeSimpleElement(writer, XmlConstants.QN_OBSERVED_PROPERTY, nFeedItem.getObservedProperty());
-        writeSimpleElement(writer, XmlConstants.QN_FEATURE_OF_INTEREST, nFeedItem.getFeatureOfInterest());
+        if (nFeedItem.getFeatureOfInterest() != null) {
+            writeSimpleElement(writer, XmlConstants.QN_FEATURE_OF_INTEREST, nFeedItem.getFeatureOfInterest());
+        }
         writeSimpleElement(writer, XmlConstants.QN_UNDERSHOOT, nFeedItem.getUndershoot());
         writeSimpleElement(writer, XmlConstants.QN_OVERSHOOT, nFeedItem.getOvershoot());
         writeSimpleElement(writer, XmlConstants.QN_VALUE, nFeedItem.getValue());
@@ -0,0 +1,394 @@
+package org.n52.wps.extension.rss.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.joda.time.DateTime;
+
+import org.n52.wps.extension.rss.NotificationRssFeedItem;
+import org.n52.wps.extension.rss.RssFeed;
+import org.n52.wps.extension.rss.RssFeedItem;
+
+/**
+ * {@link StreamEncoder} for {@linkplain RssFeed RSS feeds} of
+ * {@linkplain NotificationRssFeedItem notifications} that writes compact
+ * output without a {@link XMLStreamWriter}. All tags are rendered to UTF-8
+ * once, as is the channel header of the last encoded feed, so that encoding
+ * only escapes and copies the values of the items into a per-thread buffer.
+ * <p>
+ * For well-formed strings the output is identical to the compact output of a
+ * {@link RssFeedEncoder} using a {@link NotificationRssFeedItemEncoder},
+ * which is used for indented output and for encoding to a
+ * {@code XMLStreamWriter}.
+ */
+public class NotificationRssFeedTemplateEncoder implements StreamEncoder<RssFeed> {
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] DOCUMENT_START = utf8(
+            "<?xml version=\"" + XmlConstants.XML_VERSION +
+            "\" encoding=\"" + XmlConstants.XML_ENCODING + "\"?>");
+    private static final byte[] RSS_START = utf8(
+            "<" + XmlConstants.EN_RSS +
+            " " + XmlConstants.AN_VERSION + "=\"" + XmlConstants.RSS_VERSION + "\"" +
+            " xmlns:" + XmlConstants.NS_PREFIX + "=\"" + XmlConstants.NS_URI + "\">");
+    private static final byte[] CHANNEL_START = start(XmlConstants.QN_CHANNEL);
+    private static final byte[] CHANNEL_RSS_END = utf8(
+            end(XmlConstants.QN_CHANNEL) + end(XmlConstants.QN_RSS));
+    private static final Tag TITLE = new Tag(XmlConstants.QN_TITLE);
+    private static final Tag LINK = new Tag(XmlConstants.QN_LINK);
+    private static final Tag DESCRIPTION = new Tag(XmlConstants.QN_DESCRIPTION);
+    private static final Tag PUB_DATE = new Tag(XmlConstants.QN_PUB_DATE);
+    private static final byte[] ITEM_TITLE_START = utf8(
+            tag(XmlConstants.QN_ITEM) + tag(XmlConstants.QN_TITLE));
+    private static final byte[] TITLE_END_LINK_START = utf8(
+            end(XmlConstants.QN_TITLE) + tag(XmlConstants.QN_LINK));
+    private static final byte[] LINK_END_CATEGORY_START = utf8(
+            end(XmlConstants.QN_LINK) + tag(XmlConstants.QN_CATEGORY));
+    private static final byte[] CATEGORY_END_DESCRIPTION_START = utf8(
+            end(XmlConstants.QN_CATEGORY) + tag(XmlConstants.QN_DESCRIPTION));
+    private static final byte[] DESCRIPTION_END_PUB_DATE_START = utf8(
+            end(XmlConstants.QN_DESCRIPTION) + tag(XmlConstants.QN_PUB_DATE));
+    private static final byte[] PUB_DATE_END_GUID_START = utf8(
+            end(XmlConstants.QN_PUB_DATE) + tag(XmlConstants.QN_GUID));
+    private static final byte[] GUID_END = utf8(end(XmlConstants.QN_GUID));
+    private static final Tag PROCEDURE = new Tag(XmlConstants.QN_PROCEDURE);
+    private static final Tag OBSERVED_PROPERTY = new Tag(XmlConstants.QN_OBSERVED_PROPERTY);
+    private static final Tag FEATURE_OF_INTEREST = new Tag(XmlConstants.QN_FEATURE_OF_INTEREST);
+    private static final Tag UNDERSHOOT = new Tag(XmlConstants.QN_UNDERSHOOT);
+    private static final Tag OVERSHOOT = new Tag(XmlConstants.QN_OVERSHOOT);
+    private static final Tag VALUE = new Tag(XmlConstants.QN_VALUE);
+    private static final byte[] ITEM_END = utf8(end(XmlConstants.QN_ITEM));
+    private static final byte[] LT = utf8("&lt;");
+    private static final byte[] GT = utf8("&gt;");
+    private static final byte[] AMP = utf8("&amp;");
+    private static final ThreadLocal<Sink> SINK
+            = ThreadLocal.withInitial(() -> new Sink(BUFFER_SIZE));
+    private final StreamEncoder<RssFeed> delegate
+            = new RssFeedEncoder(new NotificationRssFeedItemEncoder());
+    private volatile Header header;
+
+    @Override
+    public void encode(XMLStreamWriter writer, RssFeed feed)
+            throws XMLStreamException {
+        this.delegate.encode(writer, feed);
+    }
+
+    @Override
+    public void writeNamespaces(XMLStreamWriter writer)
+            throws XMLStreamException {
+        this.delegate.writeNamespaces(writer);
+    }
+
+    @Override
+    public void encode(RssFeed feed, OutputStream out, boolean indent)
+            throws XMLStreamException {
+        if (indent) {
+            this.delegate.encode(feed, out, true);
+        } else {
+            write(feed, out, false);
+        }
+    }
+
+    @Override
+    public void encodeDocument(RssFeed feed, OutputStream out, boolean indent)
+            throws XMLStreamException {
+        if (indent) {
+            this.delegate.encodeDocument(feed, out, true);
+        } else {
+            write(feed, out, true);
+        }
+    }
+
+    private void write(RssFeed feed, OutputStream out, boolean document)
+            throws XMLStreamException {
+        Sink sink = SINK.get();
+        sink.attach(out);
+        try {
+            if (document) {
+                sink.write(DOCUMENT_START);
+            }
+            sink.write(getHeader(feed));
+            FeedFormat format = EncodingContext.getInstance().getFormat();
+            PUB_DATE.writeDate(sink, format, feed.getDate());
+            for (RssFeedItem item : feed.getItems()) {
+                writeItem(sink, format, item);
+            }
+            sink.write(CHANNEL_RSS_END);
+            sink.flush();
+        } catch (IOException ex) {
+            throw new XMLStreamException(ex);
+        } finally {
+            sink.detach();
+        }
+    }
+
+    private static void writeItem(Sink sink, FeedFormat format, RssFeedItem item)
+            throws IOException {
+        sink.write(ITEM_TITLE_START);
+        sink.writeEscaped(item.getTitle());
+        sink.write(TITLE_END_LINK_START);
+        sink.writeEscaped(item.getLink().toString());
+        sink.write(LINK_END_CATEGORY_START);
+        sink.writeEscaped(item.getCategory());
+        sink.write(CATEGORY_END_DESCRIPTION_START);
+        sink.writeEscaped(item.getDescription());
+        sink.write(DESCRIPTION_END_PUB_DATE_START);
+        sink.writeDate(format, item.getDate());
+        sink.write(PUB_DATE_END_GUID_START);
+        sink.writeEscaped(item.getGuid());
+        sink.write(GUID_END);
+        if (item instanceof NotificationRssFeedItem) {
+            NotificationRssFeedItem notification = (NotificationRssFeedItem) item;
+            PROCEDURE.write(sink, notification.getProcedure());
+            OBSERVED_PROPERTY.write(sink, notification.getObservedProperty());
+            if (notification.getFeatureOfInterest() != null) {
+                FEATURE_OF_INTEREST.write(sink, notification.getFeatureOfInterest());
+            }
+            UNDERSHOOT.writeNumber(sink, notification.getUndershoot());
+            OVERSHOOT.writeNumber(sink, notification.getOvershoot());
+            VALUE.writeNumber(sink, notification.getValue());
+        }
+        sink.write(ITEM_END);
+    }
+
+    /**
+     * Get the rendered start of the feed up to the publication date. The
+     * header of the last feed is kept, as the feeds of a feeder only differ
+     * in the date and items.
+     *
+     * @param feed the feed
+     *
+     * @return the rendered header
+     *
+     * @throws IOException if the header can not be rendered
+     */
+    private byte[] getHeader(RssFeed feed) throws IOException {
+        Header current = this.header;
+        if (current == null || !current.matches(feed)) {
+            Sink sink = new Sink(BUFFER_SIZE);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            sink.attach(out);
+            sink.write(RSS_START);
+            sink.write(CHANNEL_START);
+            TITLE.write(sink, feed.getTitle());
+            LINK.write(sink, feed.getLink().toString());
+            DESCRIPTION.write(sink, feed.getDescription());
+            sink.flush();
+            current = new Header(feed, out.toByteArray());
+            this.header = current;
+        }
+        return current.bytes;
+    }
+
+    private static String tag(QName name) {
+        return "<" + qualify(name) + ">";
+    }
+
+    private static byte[] start(QName name) {
+        return utf8(tag(name));
+    }
+
+    private static String end(QName name) {
+        return "</" + qualify(name) + ">";
+    }
+
+    private static String qualify(QName name) {
+        String prefix = name.getPrefix();
+        if (prefix == null || prefix.isEmpty()) {
+            return name.getLocalPart();
+        }
+        return prefix + ":" + name.getLocalPart();
+    }
+
+    private static byte[] utf8(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The rendered start and end tag of an element.
+     */
+    private static class Tag {
+        private final byte[] start;
+        private final byte[] end;
+
+        Tag(QName name) {
+            this.start = start(name);
+            this.end = utf8(end(name));
+        }
+
+        void write(Sink sink, String content) throws IOException {
+            sink.write(this.start);
+            sink.writeEscaped(content);
+            sink.write(this.end);
+        }
+
+        void writeNumber(Sink sink, double value) throws IOException {
+            sink.write(this.start);
+            sink.writeNumber(value);
+            sink.write(this.end);
+        }
+
+        void writeDate(Sink sink, FeedFormat format, DateTime date) throws IOException {
+            sink.write(this.start);
+            sink.writeDate(format, date);
+            sink.write(this.end);
+        }
+    }
+
+    /**
+     * The rendered channel header of a feed.
+     */
+    private static class Header {
+        private final String title;
+        private final URL link;
+        private final String description;
+        private final byte[] bytes;
+
+        Header(RssFeed feed, byte[] bytes) {
+            this.title = feed.getTitle();
+            this.link = feed.getLink();
+            this.description = feed.getDescription();
+            this.bytes = bytes;
+        }
+
+        boolean matches(RssFeed feed) {
+            // URL.equals may resolve the host, compare the string instead
+            return this.title.equals(feed.getTitle()) &&
+                   this.description.equals(feed.getDescription()) &&
+                   (this.link == feed.getLink() ||
+                    this.link.toString().equals(feed.getLink().toString()));
+        }
+    }
+
+    /**
+     * Buffer writing UTF-8 to an attached output stream.
+     */
+    private static class Sink {
+        private final byte[] buffer;
+        private final char[] chars = new char[Math.max(FeedFormat.MAX_NUMBER_LENGTH,
+                                                       FeedFormat.MAX_DATE_LENGTH)];
+        private int count;
+        private OutputStream out;
+
+        Sink(int size) {
+            this.buffer = new byte[size];
+        }
+
+        void attach(OutputStream out) {
+            this.out = Objects.requireNonNull(out);
+            this.count = 0;
+        }
+
+        void detach() {
+            this.out = null;
+            this.count = 0;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            if (bytes.length > this.buffer.length - this.count) {
+                flushBuffer();
+                if (bytes.length > this.buffer.length) {
+                    this.out.write(bytes);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, 0, this.buffer, this.count, bytes.length);
+            this.count += bytes.length;
+        }
+
+        /**
+         * Write the UTF-8 encoded string escaping the characters like
+         * {@link XMLStreamWriter#writeCharacters(String)}.
+         *
+         * @param string the string
+         *
+         * @throws IOException if the buffer can not be flushed
+         */
+        void writeEscaped(String string) throws IOException {
+            int length = string.length();
+            for (int i = 0; i < length; ++i) {
+                char c = string.charAt(i);
+                if (c < 0x80) {
+                    switch (c) {
+                        case '<':
+                            write(LT);
+                            break;
+                        case '>':
+                            write(GT);
+                            break;
+                        case '&':
+                            write(AMP);
+                            break;
+                        default:
+                            require(1);
+                            this.buffer[this.count++] = (byte) c;
+                    }
+                } else if (c < 0x800) {
+                    require(2);
+                    this.buffer[this.count++] = (byte) (0xc0 | c >> 6);
+                    this.buffer[this.count++] = (byte) (0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                           Character.isLowSurrogate(string.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, string.charAt(++i));
+                    require(4);
+                    this.buffer[this.count++] = (byte) (0xf0 | cp >> 18);
+                    this.buffer[this.count++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                    this.buffer[this.count++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                    this.buffer[this.count++] = (byte) (0x80 | cp & 0x3f);
+                } else {
+                    require(3);
+                    this.buffer[this.count++] = (byte) (0xe0 | c >> 12);
+                    this.buffer[this.count++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    this.buffer[this.count++] = (byte) (0x80 | c & 0x3f);
+                }
+            }
+        }
+
+        void writeNumber(double value) throws IOException {
+            writeAscii(FeedFormat.formatNumber(value, this.chars, 0));
+        }
+
+        void writeDate(FeedFormat format, DateTime date) throws IOException {
+            writeAscii(format.formatDate(date.getMillis(), this.chars, 0));
+        }
+
+        /**
+         * Write the formatted characters, that do not have to be escaped.
+         *
+         * @param length the number of characters
+         *
+         * @throws IOException if the buffer can not be flushed
+         */
+        private void writeAscii(int length) throws IOException {
+            require(length);
+            for (int i = 0; i < length; ++i) {
+                this.buffer[this.count++] = (byte) this.chars[i];
+            }
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+            this.out.flush();
+        }
+
+        private void require(int n) throws IOException {
+            if (this.buffer.length - this.count < n) {
+                flushBuffer();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if (this.count > 0) {
+                this.out.write(this.buffer, 0, this.count);
+                this.count = 0;
+            }
+        }
+    }
+}
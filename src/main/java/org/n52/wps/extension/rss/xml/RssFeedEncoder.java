@@ -51,7 +51,7 @@ public class RssFeedEncoder extends AbstractStreamEncoder<RssFeed> {
         writeSimpleElement(writer, XmlConstants.QN_TITLE, feed.getTitle());
         writeSimpleElement(writer, XmlConstants.QN_LINK, feed.getLink().toString());
         writeSimpleElement(writer, XmlConstants.QN_DESCRIPTION, feed.getDescription());
-        writeSimpleElement(writer, XmlConstants.QN_PUB_DATE, XmlConstants.RFC_1123_DATE_TIME_FORMAT.print(feed.getDate()));
+        writeSimpleElement(writer, XmlConstants.QN_PUB_DATE, feed.getDate());
         for (RssFeedItem feedItem : feed.getItems()) {
             this.itemEncoder.encode(writer, feedItem);
         }
@@ -19,7 +19,7 @@ public class RssFeedItemEncoder extends AbstractStreamEncoder<RssFeedItem> {
         writeSimpleElement(writer, XmlConstants.QN_LINK, feedItem.getLink().toString());
         writeSimpleElement(writer, XmlConstants.QN_CATEGORY, feedItem.getCategory());
         writeSimpleElement(writer, XmlConstants.QN_DESCRIPTION, feedItem.getDescription());
-        writeSimpleElement(writer, XmlConstants.QN_PUB_DATE, XmlConstants.RFC_1123_DATE_TIME_FORMAT.print(feedItem.getDate()));
+        writeSimpleElement(writer, XmlConstants.QN_PUB_DATE, feedItem.getDate());
         writeSimpleElement(writer, XmlConstants.QN_GUID, feedItem.getGuid());
         writeAdditionalElements(writer, feedItem);
         writer.writeEndElement();
@@ -2,12 +2,9 @@ package org.n52.wps.extension.rss.xml;
 
 import java.io.OutputStream;
 
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
-import javanet.staxutils.IndentingXMLStreamWriter;
-
 /**
  * Interface for XML encoders based on {@link XMLStreamWriter}.
  *
@@ -58,7 +55,7 @@ public interface StreamEncoder<T> {
     }
 
     /**
-     * Write the encoded {@code t} to the output stream.
+     * Write the encoded and indented {@code t} to the output stream.
      *
      * @param t   the object to encode
      * @param out the output stream (will not be closed)
@@ -67,15 +64,27 @@ public interface StreamEncoder<T> {
      */
     default void encode(T t, OutputStream out)
             throws XMLStreamException {
-        XMLOutputFactory factory = XMLOutputFactory.newFactory();
-        XMLStreamWriter writer = new IndentingXMLStreamWriter(
-                factory.createXMLStreamWriter(out));
-        encode(writer, t);
-        writer.flush();
+        encode(t, out, true);
+    }
+
+    /**
+     * Write the encoded {@code t} to the output stream using the writer of
+     * the {@link EncodingContext} of the current thread.
+     *
+     * @param t      the object to encode
+     * @param out    the output stream (will not be closed)
+     * @param indent if the output should be indented or compact
+     *
+     * @throws XMLStreamException if the encoding fails
+     */
+    default void encode(T t, OutputStream out, boolean indent)
+            throws XMLStreamException {
+        EncodingContext.getInstance().encode(out, indent, writer -> encode(writer, t));
     }
 
     /**
-     * Write the encoded {@code t} as a document to the output stream.
+     * Write the encoded and indented {@code t} as a document to the output
+     * stream.
      *
      * @param t   the object to encode
      * @param out the output stream (will not be closed)
@@ -84,10 +93,21 @@ public interface StreamEncoder<T> {
      */
     default void encodeDocument(T t, OutputStream out)
             throws XMLStreamException {
-        XMLOutputFactory factory = XMLOutputFactory.newFactory();
-        XMLStreamWriter writer = new IndentingXMLStreamWriter(
-                factory.createXMLStreamWriter(out));
-        encodeDocument(writer, t);
-        writer.flush();
+        encodeDocument(t, out, true);
+    }
+
+    /**
+     * Write the encoded {@code t} as a document to the output stream using
+     * the writer of the {@link EncodingContext} of the current thread.
+     *
+     * @param t      the object to encode
+     * @param out    the output stream (will not be closed)
+     * @param indent if the output should be indented or compact
+     *
+     * @throws XMLStreamException if the encoding fails
+     */
+    default void encodeDocument(T t, OutputStream out, boolean indent)
+            throws XMLStreamException {
+        EncodingContext.getInstance().encode(out, indent, writer -> encodeDocument(writer, t));
     }
 }
@@ -0,0 +1,137 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+public class CatchUpFetcherTest {
+    /**
+     * The SOS has an observation every {@value} ms.
+     */
+    private static final long RESOLUTION = 10L;
+    private static final long FROM = 0L;
+    private static final long TO = 1000L;
+    private final List<List<Long>> requests = new CopyOnWriteArrayList<>();
+    private final List<Long> delivered = new CopyOnWriteArrayList<>();
+    private final List<Long> progress = new CopyOnWriteArrayList<>();
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void teardown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void test_request_small_window_at_once() throws Exception {
+        CatchUpFetcher fetcher = createFetcher(new CatchUpPolicy(TO, 10L, 1000, 4), 0L);
+        int received = fetcher.fetch(FROM, TO, this::deliver, this.progress::add);
+        assertThat(received, is(100));
+        assertThat(this.requests, is(Arrays.asList(Arrays.asList(FROM - 1L, TO))));
+        assertThat(this.delivered, is(getTimes(FROM, TO)));
+        assertThat(this.progress, is(Arrays.asList(TO)));
+    }
+
+    @Test
+    public void test_deliver_pipelined_windows_in_order() throws Exception {
+        // earlier windows respond slower than later ones
+        CatchUpFetcher fetcher = createFetcher(new CatchUpPolicy(100L, 10L, 1000, 4), 5L);
+        int received = fetcher.fetch(FROM, TO, this::deliver, this.progress::add);
+        assertThat(received, is(100));
+        assertThat(this.requests.size(), is(10));
+        assertThat(this.delivered, is(getTimes(FROM, TO)));
+        assertThat(this.progress, is(LongStream.rangeClosed(1L, 10L)
+                .map(i -> i * 100L).boxed().collect(Collectors.toList())));
+    }
+
+    @Test
+    public void test_halve_oversized_windows() throws Exception {
+        // every window of 100 ms contains 10 observations
+        CatchUpFetcher fetcher = createFetcher(new CatchUpPolicy(100L, 10L, 5, 4), 5L);
+        int received = fetcher.fetch(FROM, TO, this::deliver, this.progress::add);
+        assertThat(received, is(100));
+        assertThat(this.delivered, is(getTimes(FROM, TO)));
+        assertThat(this.requests, hasItem(Arrays.asList(-1L, 100L)));
+        assertThat(this.requests, hasItem(Arrays.asList(-1L, 50L)));
+        assertThat(this.requests, hasItem(Arrays.asList(49L, 100L)));
+        // only the delivered halves advance the progress
+        assertThat(this.progress, is(LongStream.rangeClosed(1L, 20L)
+                .map(i -> i * 50L).boxed().collect(Collectors.toList())));
+    }
+
+    @Test
+    public void test_do_not_split_min_window() throws Exception {
+        CatchUpFetcher fetcher = createFetcher(new CatchUpPolicy(100L, 50L, 2, 4), 0L);
+        int received = fetcher.fetch(FROM, TO, this::deliver, this.progress::add);
+        // the halves exceed the maximum observations, but are not split again
+        assertThat(received, is(100));
+        assertThat(this.delivered, is(getTimes(FROM, TO)));
+        assertThat(this.requests, not(hasItem(Arrays.asList(-1L, 25L))));
+    }
+
+    /**
+     * Create a fetcher whose client delays the response of a window by
+     * {@code delay} ms for every following window.
+     */
+    private CatchUpFetcher createFetcher(CatchUpPolicy policy, long delay)
+            throws Exception {
+        SosClient client = Mockito.mock(SosClient.class);
+        Mockito.when(client.getEvents(any(DateTime.class), any(DateTime.class), any()))
+                .thenAnswer(invocation -> {
+                    long begin = ((DateTime) invocation.getArguments()[0]).getMillis();
+                    long end = ((DateTime) invocation.getArguments()[1]).getMillis();
+                    this.requests.add(Arrays.asList(begin, end));
+                    try {
+                        Thread.sleep(delay * (TO - end) / RESOLUTION);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return 0;
+                    }
+                    // both boundaries are exclusive
+                    List<Long> times = getTimes(begin + 1L, end);
+                    Consumer<EposEvent> consumer = getConsumer(invocation.getArguments()[2]);
+                    times.forEach(time -> consumer.accept(new MapEposEvent(time, time)));
+                    return times.size();
+                });
+        return new CatchUpFetcher(client, policy, this.executor);
+    }
+
+    private void deliver(EposEvent event) {
+        this.delivered.add(event.getStartTime());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<EposEvent> getConsumer(Object consumer) {
+        return (Consumer<EposEvent>) consumer;
+    }
+
+    private static List<Long> getTimes(long from, long to) {
+        return LongStream.range(from, to)
+                .filter(time -> time % RESOLUTION == 0L)
+                .boxed().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,85 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.HttpResponseException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+    private AtomicLong clock;
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setup() {
+        this.clock = new AtomicLong();
+        this.circuitBreaker = new CircuitBreaker(3, 1000L, this.clock::get);
+    }
+
+    @Test
+    public void test_opens_after_consecutive_failures() {
+        this.circuitBreaker.onFailure();
+        this.circuitBreaker.onFailure();
+        this.circuitBreaker.onSuccess();
+        this.circuitBreaker.onFailure();
+        this.circuitBreaker.onFailure();
+        assertThat(this.circuitBreaker.tryAcquire(), is(true));
+        this.circuitBreaker.onFailure();
+        assertThat(this.circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(this.circuitBreaker.tryAcquire(), is(false));
+    }
+
+    @Test
+    public void test_probe() {
+        open();
+        this.clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(999L));
+        assertThat(this.circuitBreaker.tryAcquire(), is(false));
+        this.clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1L));
+        assertThat(this.circuitBreaker.tryAcquire(), is(true));
+        assertThat(this.circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        // only a single probe
+        assertThat(this.circuitBreaker.tryAcquire(), is(false));
+        this.circuitBreaker.onSuccess();
+        assertThat(this.circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(this.circuitBreaker.tryAcquire(), is(true));
+    }
+
+    @Test
+    public void test_failed_probe() {
+        open();
+        this.clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000L));
+        assertThat(this.circuitBreaker.tryAcquire(), is(true));
+        this.circuitBreaker.onFailure();
+        assertThat(this.circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(this.circuitBreaker.tryAcquire(), is(false));
+    }
+
+    @Test
+    public void test_client_errors_do_not_open() {
+        for (int i = 0; i < 10; ++i) {
+            this.circuitBreaker.onFailure(new HttpResponseException(400, "Bad Request"));
+        }
+        assertThat(this.circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        this.circuitBreaker.onFailure(new IOException("Connection reset"));
+        this.circuitBreaker.onFailure(new HttpResponseException(503, "Service Unavailable"));
+        // a rejected request resets the consecutive failures
+        this.circuitBreaker.onFailure(new HttpResponseException(404, "Not Found"));
+        this.circuitBreaker.onFailure(new HttpResponseException(429, "Too Many Requests"));
+        this.circuitBreaker.onFailure(new HttpResponseException(408, "Request Timeout"));
+        assertThat(this.circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        this.circuitBreaker.onFailure(new HttpResponseException(500, "Internal Server Error"));
+        assertThat(this.circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; ++i) {
+            this.circuitBreaker.onFailure();
+        }
+        assertThat(this.circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+}
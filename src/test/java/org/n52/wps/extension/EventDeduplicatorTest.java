@@ -0,0 +1,81 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+public class EventDeduplicatorTest {
+    private static final long BUCKET_SIZE = 1000L;
+
+    @Test
+    public void test_overlapping_windows() {
+        EventDeduplicator deduplicator = new EventDeduplicator(BUCKET_SIZE, 100);
+        // first window [0, 2000] including both boundaries
+        for (long time = 0L; time <= 2000L; time += 500L) {
+            assertThat(deduplicator.add(createEvent("sensor", time, 1.0d)), is(true));
+        }
+        deduplicator.expire(1999L);
+        // the next window starts 1ms before the end of the last one
+        assertThat(deduplicator.add(createEvent("sensor", 2000L, 1.0d)), is(false));
+        assertThat(deduplicator.add(createEvent("sensor", 2500L, 1.0d)), is(true));
+        assertThat(deduplicator.add(createEvent("sensor", 2500L, 1.0d)), is(false));
+    }
+
+    @Test
+    public void test_distinguish_sensors_and_values() {
+        EventDeduplicator deduplicator = new EventDeduplicator(BUCKET_SIZE, 100);
+        assertThat(deduplicator.add(createEvent("sensor1", 0L, 1.0d)), is(true));
+        assertThat(deduplicator.add(createEvent("sensor2", 0L, 1.0d)), is(true));
+        // a corrected value is not a duplicate
+        assertThat(deduplicator.add(createEvent("sensor1", 0L, 2.0d)), is(true));
+        assertThat(deduplicator.add(createEvent("sensor1", 0L, 1.0d)), is(false));
+    }
+
+    @Test
+    public void test_expire_buckets() {
+        EventDeduplicator deduplicator = new EventDeduplicator(BUCKET_SIZE, 100);
+        assertThat(deduplicator.add(createEvent("sensor", 500L, 1.0d)), is(true));
+        assertThat(deduplicator.add(createEvent("sensor", 1500L, 1.0d)), is(true));
+        // the bucket [1000, 2000) still contains 1999
+        deduplicator.expire(1999L);
+        assertThat(deduplicator.add(createEvent("sensor", 1500L, 1.0d)), is(false));
+        // the bucket [0, 1000) is discarded
+        assertThat(deduplicator.add(createEvent("sensor", 500L, 1.0d)), is(true));
+        deduplicator.expire(2000L);
+        assertThat(deduplicator.add(createEvent("sensor", 1500L, 1.0d)), is(true));
+    }
+
+    @Test
+    public void test_max_size() {
+        EventDeduplicator deduplicator = new EventDeduplicator(BUCKET_SIZE, 2);
+        assertThat(deduplicator.add(createEvent("sensor", 0L, 1.0d)), is(true));
+        assertThat(deduplicator.add(createEvent("sensor", 1000L, 1.0d)), is(true));
+        // further events are passed without being recorded
+        assertThat(deduplicator.add(createEvent("sensor", 2000L, 1.0d)), is(true));
+        assertThat(deduplicator.add(createEvent("sensor", 2000L, 1.0d)), is(true));
+        // recorded events are still dropped
+        assertThat(deduplicator.add(createEvent("sensor", 0L, 1.0d)), is(false));
+        // expiring frees the space again
+        deduplicator.expire(1000L);
+        assertThat(deduplicator.add(createEvent("sensor", 2000L, 1.0d)), is(true));
+        assertThat(deduplicator.add(createEvent("sensor", 2000L, 1.0d)), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalid_max_size() {
+        new EventDeduplicator(BUCKET_SIZE, 0);
+    }
+
+    private static EposEvent createEvent(String sensor, long time, double value) {
+        MapEposEvent event = new MapEposEvent(time, time);
+        event.setValue(MapEposEvent.SENSORID_KEY, sensor);
+        event.setValue(MapEposEvent.OBSERVED_PROPERTY_KEY, "observedProperty");
+        event.setValue(MapEposEvent.FEATURE_TYPE_KEY, "feature");
+        event.setValue(MapEposEvent.DOUBLE_VALUE_KEY, value);
+        return event;
+    }
+}
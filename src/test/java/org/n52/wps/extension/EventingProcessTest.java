@@ -1,5 +1,6 @@
 package org.n52.wps.extension;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isEmptyString;
 import static org.hamcrest.Matchers.not;
@@ -8,6 +9,7 @@ import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -21,8 +23,11 @@ import java.util.Optional;
 
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
@@ -48,14 +53,18 @@ public class EventingProcessTest {
     private static final Answer<InputStream> OVERSHOOT = x -> getResource("/OvershootObservation.xml");
     private static final long POLLING_TIME = 1000L;
     private static final long RUNTIME = 5000L;
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
     private @Mock HttpClient client;
-    private @Captor ArgumentCaptor<String> rss;
+    private @Captor ArgumentCaptor<BodyWriter> rss;
     private Map<String, List<IData>> input;
     private EventingProcess eventingProcess;
 
     @Before
     public void setup() throws IOException, XmlException {
         MockitoAnnotations.initMocks(this);
+        // do not keep any state across test runs
+        System.setProperty(StorageDirectory.PROPERTY, this.folder.getRoot().getPath());
         this.eventingProcess = new EventingProcess(this.client);
         this.input = new HashMap<>(7);
         this.input.put(EventingProcess.SAMPLING_RATE_INPUT, createLongInput(POLLING_TIME));
@@ -66,29 +75,45 @@ public class EventingProcessTest {
         this.input.put(EventingProcess.EML_RULE_INPUT, createXmlInput("/OvershootUndershootRule.xml"));
     }
 
+    @After
+    public void teardown() {
+        System.clearProperty(StorageDirectory.PROPERTY);
+    }
+
     @Test
     public void test_undershoot_overshoot() throws XmlException, IOException, ExceptionReport {
-        Mockito.when(client.post(any(URL.class), any(XmlObject.class)))
+        Mockito.when(client.post(any(URL.class), any(String.class), any(String.class), any(byte[].class)))
                 .thenAnswer(UNDERSHOOT)
                 .thenAnswer(OVERSHOOT)
                 .thenAnswer(EMPTY);
-        Mockito.when(client.post(any(URL.class), any(String.class), rss.capture())).thenAnswer(SUCCESS_ANSWER);
+        Mockito.when(client.post(any(URL.class), any(String.class), any(String.class), rss.capture()))
+                .thenAnswer(SUCCESS_ANSWER);
         this.eventingProcess.run(this.input);
         assertThat(rss.getValue(), is(notNullValue()));
-        assertThat(rss.getValue(), not(isEmptyString()));
+        String feed = write(rss.getValue());
+        assertThat(feed, not(isEmptyString()));
+        assertThat(feed, containsString("<item>"));
     }
 
     @Test
     public void test_overshoot_undershoot() throws XmlException, IOException, ExceptionReport {
-        Mockito.when(client.post(any(URL.class), any(XmlObject.class)))
+        Mockito.when(client.post(any(URL.class), any(String.class), any(String.class), any(byte[].class)))
                 .thenAnswer(OVERSHOOT)
                 .thenAnswer(UNDERSHOOT)
                 .thenAnswer(EMPTY);
-        Mockito.when(client.post(any(URL.class), any(String.class), rss.capture()))
+        Mockito.when(client.post(any(URL.class), any(String.class), any(String.class), rss.capture()))
                 .thenAnswer(SUCCESS_ANSWER);
         this.eventingProcess.run(this.input);
         assertThat(rss.getValue(), is(notNullValue()));
-        assertThat(rss.getValue(), not(isEmptyString()));
+        String feed = write(rss.getValue());
+        assertThat(feed, not(isEmptyString()));
+        assertThat(feed, containsString("<item>"));
+    }
+
+    private static String write(BodyWriter writer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
     }
 
     private List<IData> createXmlInput(String name) throws IOException, XmlException {
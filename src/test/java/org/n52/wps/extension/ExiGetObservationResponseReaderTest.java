@@ -0,0 +1,89 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.xmlbeans.XmlException;
+import org.junit.Test;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+public class ExiGetObservationResponseReaderTest {
+
+    @Test
+    public void test_detect_exi_cookie() throws IOException {
+        assertThat(isExi(bytes("$EXI", 0xA0, 0x00)), is(true));
+    }
+
+    @Test
+    public void test_detect_distinguishing_bits() throws IOException {
+        assertThat(isExi(new byte[] { (byte) 0x80, 0x40 }), is(true));
+        assertThat(isExi(new byte[] { (byte) 0xA0 }), is(true));
+        // 11 and 01 are not the distinguishing bits
+        assertThat(isExi(new byte[] { (byte) 0xC0 }), is(false));
+        assertThat(isExi(new byte[] { 0x40 }), is(false));
+    }
+
+    @Test
+    public void test_do_not_detect_text_xml() throws IOException {
+        assertThat(isExi(bytes("<?xml version=\"1.0\"?>")), is(false));
+        assertThat(isExi(bytes("\n  <sos:GetObservationResponse/>")), is(false));
+        // UTF-8 byte order mark
+        assertThat(isExi(bytes("", 0xEF, 0xBB, 0xBF, '<')), is(false));
+        // an incomplete cookie
+        assertThat(isExi(bytes("$EX")), is(false));
+        assertThat(isExi(new byte[0]), is(false));
+    }
+
+    @Test
+    public void test_detection_does_not_consume_the_stream() throws IOException {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(bytes("$EXI", 0xA0)));
+        assertThat(ExiGetObservationResponseReader.isExi(in), is(true));
+        assertThat(in.read(), is((int) '$'));
+    }
+
+    @Test
+    public void test_read_text_xml() throws XmlException, IOException {
+        List<EposEvent> events = new LinkedList<>();
+        // a stream without mark support has to be buffered by the reader
+        try (InputStream in = new FilterInputStream(getResource("/OvershootObservation.xml")) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        }) {
+            assertThat(new ExiGetObservationResponseReader().readEvents(in, events::add), is(1));
+        }
+        assertThat(events.get(0).getValue(MapEposEvent.DOUBLE_VALUE_KEY), is(20.0d));
+    }
+
+    private static boolean isExi(byte[] bytes) throws IOException {
+        return ExiGetObservationResponseReader.isExi(new ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] bytes(String prefix, int... suffix) {
+        byte[] text = prefix.getBytes(StandardCharsets.US_ASCII);
+        byte[] bytes = new byte[text.length + suffix.length];
+        System.arraycopy(text, 0, bytes, 0, text.length);
+        for (int i = 0; i < suffix.length; ++i) {
+            bytes[text.length + i] = (byte) suffix[i];
+        }
+        return bytes;
+    }
+
+    private static InputStream getResource(String name) throws IOException {
+        InputStream stream = ExiGetObservationResponseReaderTest.class.getResourceAsStream(name);
+        return Optional.ofNullable(stream).orElseThrow(() -> new IOException());
+    }
+}
@@ -0,0 +1,88 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.xmlbeans.XmlException;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+public class GetObservationResponseReaderTest {
+    private GetObservationResponseReader reader;
+    private List<EposEvent> events;
+
+    @Before
+    public void setup() {
+        this.reader = new GetObservationResponseReader();
+        this.events = new LinkedList<>();
+    }
+
+    @Test
+    public void test_measurement() throws XmlException, IOException {
+        try (InputStream in = getResource("/OvershootObservation.xml")) {
+            assertThat(this.reader.readEvents(in, this.events::add), is(1));
+        }
+        assertThat(this.events, hasSize(1));
+        EposEvent event = this.events.get(0);
+        assertThat(event.getValue(MapEposEvent.SENSORID_KEY), is("ws2500"));
+        assertThat(event.getValue(MapEposEvent.OBSERVED_PROPERTY_KEY), is("AirTemperature"));
+        assertThat(event.getValue(MapEposEvent.FEATURE_TYPE_KEY), is("#ssf_test_feature_7_3"));
+        assertThat(event.getValue(MapEposEvent.DOUBLE_VALUE_KEY), is(20.0d));
+        assertThat(event.getStartTime(), is(DateTime.parse("2015-01-01T00:00:00.000Z").getMillis()));
+        assertThat(event.getEndTime(), is(event.getStartTime()));
+    }
+
+    @Test
+    public void test_empty_response() throws XmlException, IOException {
+        try (InputStream in = getResource("/EmptyGetObservationResponse.xml")) {
+            assertThat(this.reader.readEvents(in, this.events::add), is(0));
+        }
+        assertThat(this.events, hasSize(0));
+    }
+
+    @Test
+    public void test_multiple_observations() throws XmlException, IOException {
+        try (InputStream in = getResource("/GetObservationResponse.xml")) {
+            assertThat(this.reader.readEvents(in, this.events::add), is(2));
+        }
+        assertThat(this.events, hasSize(2));
+        // the observations are delivered in document order
+        assertThat(this.events.get(0).getStartTime(), is(DateTime.parse("2015-01-01T00:00:00.000Z").getMillis()));
+        assertThat(this.events.get(0).getValue(MapEposEvent.DOUBLE_VALUE_KEY), is(20.0d));
+        assertThat(this.events.get(1).getStartTime(), is(DateTime.parse("2015-01-01T00:10:00.000Z").getMillis()));
+        assertThat(this.events.get(1).getValue(MapEposEvent.DOUBLE_VALUE_KEY), is(-5.5d));
+        for (EposEvent event : this.events) {
+            assertThat(event.getValue(MapEposEvent.SENSORID_KEY), is("ws2500"));
+            assertThat(event.getValue(MapEposEvent.OBSERVED_PROPERTY_KEY), is("AirTemperature"));
+        }
+    }
+
+    @Test
+    public void test_exception_report() throws IOException {
+        try (InputStream in = getResource("/ExceptionReport.xml")) {
+            this.reader.readEvents(in, this.events::add);
+            fail("expected XmlException");
+        } catch (XmlException ex) {
+            assertThat(ex.getMessage(), containsString("ExceptionReport"));
+        }
+        assertThat(this.events, hasSize(0));
+    }
+
+    private static InputStream getResource(String name) throws IOException {
+        InputStream stream = GetObservationResponseReaderTest.class.getResourceAsStream(name);
+        return Optional.ofNullable(stream).orElseThrow(() -> new IOException());
+    }
+}
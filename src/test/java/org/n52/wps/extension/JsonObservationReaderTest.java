@@ -0,0 +1,55 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+public class JsonObservationReaderTest {
+
+    @Test
+    public void test_readEvents() throws IOException {
+        List<EposEvent> events = new LinkedList<>();
+        try (InputStream in = getResource("/GetObservationResponse.json")) {
+            // the category observation is skipped and not counted
+            assertThat(new JsonObservationReader().readEvents(in, events::add), is(2));
+        }
+        assertThat(events, hasSize(2));
+        EposEvent event = events.get(0);
+        assertThat(event.getValue(MapEposEvent.SENSORID_KEY), is("ws2500"));
+        assertThat(event.getValue(MapEposEvent.OBSERVED_PROPERTY_KEY), is("AirTemperature"));
+        assertThat(event.getValue(MapEposEvent.FEATURE_TYPE_KEY), is("ssf_test_feature_7_3"));
+        assertThat(event.getValue(MapEposEvent.DOUBLE_VALUE_KEY), is(21.5d));
+        assertThat(event.getStartTime(), is(DateTime.parse("2015-01-01T00:01:00.000Z").getMillis()));
+        event = events.get(1);
+        assertThat(event.getValue(MapEposEvent.DOUBLE_VALUE_KEY), is(20d));
+        assertThat(event.getStartTime(), is(DateTime.parse("2014-12-31T23:02:00.000Z").getMillis()));
+        assertThat(event.getEndTime(), is(DateTime.parse("2014-12-31T23:03:00.000Z").getMillis()));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_exception() throws IOException {
+        String response = "{\"version\":\"2.0.0\",\"exceptions\":[{\"code\":\"InvalidParameterValue\",\"locator\":\"offering\"}]}";
+        try (InputStream in = new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8))) {
+            new JsonObservationReader().readEvents(in, e -> {});
+        }
+    }
+
+    private static InputStream getResource(String name) throws IOException {
+        InputStream stream = JsonObservationReaderTest.class.getResourceAsStream(name);
+        return Optional.ofNullable(stream).orElseThrow(() -> new IOException());
+    }
+}
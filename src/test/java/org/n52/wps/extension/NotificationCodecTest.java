@@ -0,0 +1,74 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import org.n52.wps.extension.rss.NotificationRssFeedItem;
+
+public class NotificationCodecTest {
+
+    @Test
+    public void test_round_trip() throws IOException {
+        NotificationRssFeedItem item = roundTrip(createItem("feature"));
+        assertThat(item.getTitle(), is("title"));
+        assertThat(item.getLink(), is(new URL("http://localhost/rss/#alert=1")));
+        assertThat(item.getCategory(), is("category"));
+        assertThat(item.getDescription(), is("description"));
+        assertThat(item.getDate().getMillis(), is(1L));
+        assertThat(item.getGuid(), is("http://localhost/rss/#alert=1"));
+        assertThat(item.getProcedure(), is("procedure"));
+        assertThat(item.getObservedProperty(), is("observedProperty"));
+        assertThat(item.getFeatureOfInterest(), is("feature"));
+        assertThat(item.getUndershoot(), is(0.0d));
+        assertThat(item.getOvershoot(), is(20.0d));
+        assertThat(item.getValue(), is(20.0d));
+    }
+
+    @Test
+    public void test_round_trip_without_feature_of_interest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            NotificationCodec.write(out, createItem(null));
+            // the following record has to be read from the right position
+            NotificationCodec.write(out, createItem("feature"));
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            NotificationRssFeedItem item = NotificationCodec.read(in);
+            assertThat(item.getFeatureOfInterest(), is(nullValue()));
+            assertThat(item.getValue(), is(20.0d));
+            assertThat(NotificationCodec.read(in).getFeatureOfInterest(), is("feature"));
+            assertThat(in.read(), is(-1));
+        }
+    }
+
+    private static NotificationRssFeedItem roundTrip(NotificationRssFeedItem item)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            NotificationCodec.write(out, item);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return NotificationCodec.read(in);
+        }
+    }
+
+    private static NotificationRssFeedItem createItem(String featureOfInterest)
+            throws IOException {
+        URL guid = new URL("http://localhost/rss/#alert=1");
+        return new NotificationRssFeedItem("title", guid, "category", "description",
+                                           new DateTime(1L), guid.toString(),
+                                           "procedure", "observedProperty", featureOfInterest,
+                                           0.0d, 20.0d, 20.0d);
+    }
+}
@@ -0,0 +1,93 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.n52.wps.extension.rss.NotificationRssFeedItem;
+
+public class NotificationOutboxTest {
+    private static final int SEGMENT_SIZE = 1024;
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_replay_pending() throws IOException {
+        Path directory = this.folder.getRoot().toPath();
+        try (NotificationOutbox outbox = new NotificationOutbox(directory, SEGMENT_SIZE)) {
+            long[] sequences = new long[20];
+            for (int i = 0; i < sequences.length; ++i) {
+                sequences[i] = outbox.append(createItem(i));
+            }
+            for (int i = 0; i < sequences.length; ++i) {
+                if (i % 3 != 0) {
+                    outbox.acknowledge(sequences[i]);
+                }
+            }
+            assertThat(outbox.getPending(), is(7L));
+        }
+        try (NotificationOutbox outbox = new NotificationOutbox(directory, SEGMENT_SIZE)) {
+            assertThat(values(outbox.replay()), contains(0L, 3L, 6L, 9L, 12L, 15L, 18L));
+            // the notifications are only replayed once
+            assertThat(outbox.replay(), is(empty()));
+        }
+    }
+
+    @Test
+    public void test_delete_acknowledged_segments() throws IOException {
+        Path directory = this.folder.getRoot().toPath();
+        try (NotificationOutbox outbox = new NotificationOutbox(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 20; ++i) {
+                outbox.acknowledge(outbox.append(createItem(i)));
+            }
+            assertThat(outbox.getPending(), is(0L));
+        }
+        assertThat(segments(directory), is(empty()));
+        try (NotificationOutbox outbox = new NotificationOutbox(directory, SEGMENT_SIZE)) {
+            assertThat(outbox.replay(), is(empty()));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void test_exclusive() throws IOException {
+        Path directory = this.folder.getRoot().toPath();
+        try (NotificationOutbox outbox = new NotificationOutbox(directory, SEGMENT_SIZE)) {
+            new NotificationOutbox(directory, SEGMENT_SIZE).close();
+        }
+    }
+
+    private static List<Long> values(List<PendingNotification> notifications) {
+        return notifications.stream()
+                .map(n -> (long) n.getItem().getValue())
+                .collect(Collectors.toList());
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.toString().endsWith(".segment"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static NotificationRssFeedItem createItem(int value) throws IOException {
+        URL guid = new URL("http://localhost/rss/#alert=" + value);
+        return new NotificationRssFeedItem("title", guid, "category", "description",
+                                           new DateTime(value), guid.toString(),
+                                           "procedure", "observedProperty", "feature",
+                                           0.0d, 1.0d, value);
+    }
+}
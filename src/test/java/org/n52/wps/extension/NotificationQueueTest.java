@@ -0,0 +1,113 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import org.n52.wps.extension.NotificationQueue.OverflowPolicy;
+import org.n52.wps.extension.rss.NotificationRssFeedItem;
+
+public class NotificationQueueTest {
+
+    @Test
+    public void test_drop_oldest() throws MalformedURLException {
+        List<Long> dropped = new ArrayList<>();
+        NotificationQueue queue = new NotificationQueue(3, OverflowPolicy.DROP_OLDEST,
+                                                        n -> dropped.add(n.getSequence()));
+        for (int i = 0; i < 5; ++i) {
+            queue.offer(createItem("procedure", i));
+        }
+        assertThat(queue.getDropped(), is(2L));
+        assertThat(dropped, contains(0L, 1L));
+        assertThat(drain(queue), contains("procedure/2#2", "procedure/3#3", "procedure/4#4"));
+    }
+
+    @Test
+    public void test_coalesce() throws MalformedURLException {
+        NotificationQueue queue = new NotificationQueue(3, OverflowPolicy.COALESCE);
+        queue.offer(createItem("a", 0));
+        queue.offer(createItem("b", 1));
+        queue.offer(createItem("a", 2));
+        queue.offer(createItem("b", 3));
+        queue.offer(createItem("c", 4));
+        assertThat(queue.getCoalesced(), is(1L));
+        assertThat(queue.getDropped(), is(1L));
+        assertThat(drain(queue), contains("a/2#2", "b/3#3", "c/4#4"));
+    }
+
+    @Test
+    public void test_coalesce_without_feature_of_interest() throws MalformedURLException {
+        NotificationQueue queue = new NotificationQueue(3, OverflowPolicy.COALESCE);
+        queue.offer(createItem("a", "feature", 0));
+        queue.offer(createItem("a", null, 1));
+        queue.offer(createItem("b", null, 2));
+        queue.offer(createItem("a", null, 3));
+        queue.offer(createItem("b", "feature", 4));
+        // only notifications of the same procedure and (missing) feature are coalesced
+        assertThat(queue.getCoalesced(), is(1L));
+        assertThat(queue.getDropped(), is(1L));
+        assertThat(drain(queue), contains("b/2#2", "a/3#3", "b/4#4"));
+    }
+
+    @Test
+    public void test_spill() throws MalformedURLException {
+        NotificationQueue queue = new NotificationQueue(3, OverflowPolicy.SPILL);
+        try {
+            for (int i = 0; i < 10; ++i) {
+                queue.offer(createItem("procedure", i));
+            }
+            assertThat(queue.getSpilled(), is(7L));
+            assertThat(queue.getDepth(), is(10L));
+            List<String> items = drain(queue);
+            assertThat(items.size(), is(10));
+            for (int i = 0; i < 10; ++i) {
+                assertThat(items.get(i), is("procedure/" + i + "#" + i));
+            }
+            assertThat(queue.getDepth(), is(0L));
+            assertThat(queue.getDropped(), is(0L));
+        } finally {
+            queue.close();
+        }
+    }
+
+    private static List<String> drain(NotificationQueue queue) {
+        List<PendingNotification> items = new ArrayList<>();
+        while (queue.drainTo(items, 2) > 0) {
+            // drain in small steps to refill the spilled items
+        }
+        return items.stream()
+                .map(NotificationQueueTest::toString)
+                .collect(Collectors.toList());
+    }
+
+    private static String toString(PendingNotification notification) {
+        NotificationRssFeedItem item = notification.getItem();
+        return item.getProcedure() + "/" + (long) item.getValue() + "#" + notification.getSequence();
+    }
+
+    private static PendingNotification createItem(String procedure, int value)
+            throws MalformedURLException {
+        return createItem(procedure, "feature", value);
+    }
+
+    private static PendingNotification createItem(String procedure, String featureOfInterest,
+                                                  int value)
+            throws MalformedURLException {
+        URL guid = new URL("http://localhost/rss/#alert=" + value);
+        return new PendingNotification(
+                new NotificationRssFeedItem("title", guid, "category", "description",
+                                            new DateTime(value), guid.toString(),
+                                            procedure, "observedProperty", featureOfInterest,
+                                            0.0d, 1.0d, value),
+                value);
+    }
+}
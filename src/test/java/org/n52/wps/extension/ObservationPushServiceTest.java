@@ -0,0 +1,172 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.net.InetAddresses;
+
+public class ObservationPushServiceTest {
+    private ObservationPushService service;
+    private ObservationPushService.Subscription subscription;
+    private List<EposEvent> events;
+    private URL endpoint;
+
+    private static final String SECRET = "secret";
+
+    @Before
+    public void setup() throws IOException {
+        this.events = new CopyOnWriteArrayList<>();
+        start(new ObservationPushService(getLoopbackAddress()));
+    }
+
+    private void start(ObservationPushService service) throws IOException {
+        this.service = service;
+        this.subscription = this.service.subscribe(this.events::add);
+        InetSocketAddress address = this.service.getAddress();
+        this.endpoint = new URL("http", address.getHostString(), address.getPort(),
+                                ObservationPushService.PATH);
+    }
+
+    private void restart(ObservationPushService service) throws IOException {
+        this.subscription.close();
+        start(service);
+    }
+
+    @After
+    public void teardown() {
+        this.subscription.close();
+        assertThat(this.service.getAddress(), is(nullValue()));
+    }
+
+    @Test
+    public void test_push() throws IOException {
+        assertThat(post(getObservation()), is(204));
+        assertThat(this.events, hasSize(1));
+        EposEvent event = this.events.get(0);
+        assertThat(event.getValue(MapEposEvent.SENSORID_KEY), is("ws2500"));
+        assertThat(event.getValue(MapEposEvent.DOUBLE_VALUE_KEY), is(20.0d));
+    }
+
+    @Test
+    public void test_invalid_document() throws IOException {
+        assertThat(post("<foo/>".getBytes(StandardCharsets.UTF_8)), is(400));
+        assertThat(this.events, hasSize(0));
+    }
+
+    @Test
+    public void test_truncated_document() throws IOException {
+        byte[] observation = getObservation();
+        // the observation is complete, but the document is not
+        String body = new String(observation, StandardCharsets.UTF_8);
+        body = body.substring(0, body.indexOf("</sos:observationData>"));
+        assertThat(post(body.getBytes(StandardCharsets.UTF_8)), is(400));
+        assertThat(this.events, hasSize(0));
+    }
+
+    @Test
+    public void test_get() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) this.endpoint.openConnection();
+        assertThat(connection.getResponseCode(), is(405));
+    }
+
+    @Test
+    public void test_request_too_large() throws IOException {
+        restart(new ObservationPushService(getLoopbackAddress(), null, null, 100L));
+        assertThat(post(getObservation()), is(413));
+        assertThat(this.events, hasSize(0));
+    }
+
+    @Test
+    public void test_secret() throws IOException {
+        restart(new ObservationPushService(getLoopbackAddress(), SECRET, null,
+                                           ObservationPushService.DEFAULT_MAX_REQUEST_SIZE));
+        assertThat(post(getObservation()), is(401));
+        assertThat(post(getObservation(), "Bearer other"), is(401));
+        assertThat(this.events, hasSize(0));
+        assertThat(post(getObservation(), "Bearer " + SECRET), is(204));
+        assertThat(this.events, hasSize(1));
+    }
+
+    @Test
+    public void test_allowed_addresses() throws IOException {
+        InetAddress other = InetAddresses.forString("192.0.2.1");
+        restart(new ObservationPushService(getLoopbackAddress(), null,
+                                           Collections.singleton(other),
+                                           ObservationPushService.DEFAULT_MAX_REQUEST_SIZE));
+        assertThat(post(getObservation()), is(403));
+        restart(new ObservationPushService(getLoopbackAddress(), null,
+                                           new HashSet<>(Arrays.asList(other, InetAddress.getLoopbackAddress())),
+                                           ObservationPushService.DEFAULT_MAX_REQUEST_SIZE));
+        assertThat(post(getObservation()), is(204));
+        assertThat(this.events, hasSize(1));
+    }
+
+    @Test
+    public void test_listen_on_loopback_by_default() throws IOException {
+        System.setProperty(ObservationPushService.PORT_PROPERTY, "0");
+        try {
+            restart(ObservationPushService.fromSystemProperties());
+        } finally {
+            System.clearProperty(ObservationPushService.PORT_PROPERTY);
+        }
+        assertThat(this.service.getAddress().getAddress().isLoopbackAddress(), is(true));
+    }
+
+    private int post(byte[] body) throws IOException {
+        return post(body, null);
+    }
+
+    private int post(byte[] body, String authorization) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) this.endpoint.openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/xml");
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        return connection.getResponseCode();
+    }
+
+    private static InetSocketAddress getLoopbackAddress() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    private static byte[] getObservation() throws IOException {
+        try (InputStream in = getResource("/OvershootObservation.xml")) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    private static InputStream getResource(String name) throws IOException {
+        InputStream stream = ObservationPushServiceTest.class.getResourceAsStream(name);
+        return Optional.ofNullable(stream).orElseThrow(() -> new IOException());
+    }
+}
@@ -0,0 +1,47 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PollingCheckpointTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_empty_checkpoint() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("empty.checkpoint");
+        try (PollingCheckpoint checkpoint = new PollingCheckpoint(path)) {
+            assertThat(checkpoint.get(42L), is(42L));
+        }
+    }
+
+    @Test
+    public void test_resume() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("resume.checkpoint");
+        try (PollingCheckpoint checkpoint = new PollingCheckpoint(path)) {
+            checkpoint.set(1420070400000L);
+        }
+        try (PollingCheckpoint checkpoint = new PollingCheckpoint(path)) {
+            assertThat(checkpoint.get(42L), is(1420070400000L));
+        }
+    }
+
+    @Test
+    public void test_ignore_set_after_close() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("closed.checkpoint");
+        PollingCheckpoint checkpoint = new PollingCheckpoint(path);
+        checkpoint.set(1420070400000L);
+        checkpoint.close();
+        checkpoint.set(1420070500000L);
+        try (PollingCheckpoint reopened = new PollingCheckpoint(path)) {
+            assertThat(reopened.get(42L), is(1420070400000L));
+        }
+    }
+}
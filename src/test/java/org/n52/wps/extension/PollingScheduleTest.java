@@ -0,0 +1,77 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class PollingScheduleTest {
+
+    @Test
+    public void test_fixed_rate() {
+        PollingSchedule schedule = PollingSchedule.fixed(1000L);
+        assertThat(schedule.getInterval(), is(1000L));
+        assertThat(schedule.getMinInterval(), is(1000L));
+        assertThat(schedule.getMaxInterval(), is(1000L));
+        assertThat(schedule.adapt(1000L, 0), is(1000L));
+        assertThat(schedule.adapt(1000L, 10), is(1000L));
+        for (int i = 0; i < 100; ++i) {
+            assertThat(schedule.nextJitter(), is(0L));
+        }
+    }
+
+    @Test
+    public void test_jitter_bounds() {
+        PollingSchedule schedule = new PollingSchedule(1000L, 1000L, 1000L, 3L);
+        boolean[] seen = new boolean[4];
+        for (int i = 0; i < 1000; ++i) {
+            long jitter = schedule.nextJitter();
+            assertThat(jitter, is(greaterThanOrEqualTo(0L)));
+            assertThat(jitter, is(lessThanOrEqualTo(3L)));
+            seen[(int) jitter] = true;
+        }
+        // both bounds are inclusive
+        assertThat(seen[0], is(true));
+        assertThat(seen[3], is(true));
+    }
+
+    @Test
+    public void test_double_after_empty_responses() {
+        PollingSchedule schedule = new PollingSchedule(1000L, 250L, 3000L, 0L);
+        assertThat(schedule.adapt(1000L, 0), is(2000L));
+        assertThat(schedule.adapt(2000L, 0), is(3000L));
+        assertThat(schedule.adapt(3000L, 0), is(3000L));
+    }
+
+    @Test
+    public void test_halve_after_non_empty_responses() {
+        PollingSchedule schedule = new PollingSchedule(1000L, 300L, 3000L, 0L);
+        assertThat(schedule.adapt(3000L, 1), is(1500L));
+        assertThat(schedule.adapt(1500L, 5), is(750L));
+        assertThat(schedule.adapt(750L, 1), is(375L));
+        assertThat(schedule.adapt(375L, 1), is(300L));
+        assertThat(schedule.adapt(300L, 1), is(300L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_interval_below_min_interval() {
+        new PollingSchedule(100L, 200L, 300L, 0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_interval_above_max_interval() {
+        new PollingSchedule(400L, 200L, 300L, 0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_non_positive_min_interval() {
+        new PollingSchedule(100L, 0L, 300L, 0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_negative_jitter() {
+        new PollingSchedule(100L, 100L, 100L, -1L);
+    }
+}
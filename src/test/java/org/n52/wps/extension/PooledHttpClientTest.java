@@ -0,0 +1,149 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpResponseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class PooledHttpClientTest {
+    private static final String CONTENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><response/>";
+    /**
+     * Large enough to not be buffered completely by the client.
+     */
+    private static final int LARGE_CONTENT_SIZE = 1024 * 1024;
+    /**
+     * Too large to be buffered completely by the client and the server.
+     */
+    private static final int HUGE_CONTENT_SIZE = 64 * 1024 * 1024;
+    private static final int TIMEOUT = 1000;
+    private final CompletableFuture<Long> sent = new CompletableFuture<>();
+    private ExecutorService executor;
+    private HttpServer server;
+    private PooledHttpClient client;
+
+    @Before
+    public void setup() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/identity", e -> respond(e, 200, CONTENT.getBytes(StandardCharsets.UTF_8)));
+        this.server.createContext("/large", e -> respond(e, 200, new byte[LARGE_CONTENT_SIZE]));
+        this.server.createContext("/huge", e -> {
+            e.sendResponseHeaders(200, HUGE_CONTENT_SIZE);
+            byte[] chunk = new byte[8192];
+            long count = 0L;
+            try (OutputStream out = e.getResponseBody()) {
+                while (count < HUGE_CONTENT_SIZE) {
+                    out.write(chunk);
+                    count += chunk.length;
+                }
+            } catch (IOException ex) {
+                // the client closed the connection before reading the response
+            }
+            this.sent.complete(count);
+        });
+        this.server.createContext("/error", e -> respond(e, 500, CONTENT.getBytes(StandardCharsets.UTF_8)));
+        this.server.createContext("/echo", e -> respond(e, 200, ByteStreams.toByteArray(e.getRequestBody())));
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.executor);
+        this.server.start();
+        // a single connection that is only available for a short time
+        this.client = new PooledHttpClient(1, 1, URLConnectionHttpClient.NO_COMPRESSION,
+                                           new HttpTimeouts(TIMEOUT, TIMEOUT));
+    }
+
+    @After
+    public void teardown() throws IOException {
+        this.client.close();
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void test_release_connection_on_close() throws IOException {
+        for (int i = 0; i < 3; ++i) {
+            try (InputStream in = this.client.get(getURL("/large"), "application/xml")) {
+                // read only the beginning of the response
+                assertThat(in.read(), is(0));
+            }
+        }
+        assertThat(get("/identity"), is(CONTENT));
+    }
+
+    @Test
+    public void test_do_not_read_to_the_end_on_close() throws Exception {
+        try (InputStream in = this.client.get(getURL("/huge"), "application/xml")) {
+            // read only the beginning of the response
+            assertThat(in.read(), is(0));
+        }
+        // the connection was discarded instead of reading the remainder
+        assertThat(this.sent.get(10, TimeUnit.SECONDS), is(lessThan((long) HUGE_CONTENT_SIZE)));
+        assertThat(get("/identity"), is(CONTENT));
+    }
+
+    @Test
+    public void test_release_connection_on_error() throws IOException {
+        for (int i = 0; i < 3; ++i) {
+            try {
+                this.client.get(getURL("/error"), "application/xml").close();
+                fail("expected HttpResponseException");
+            } catch (HttpResponseException ex) {
+                assertThat(ex.getStatusCode(), is(500));
+            }
+        }
+        assertThat(get("/identity"), is(CONTENT));
+    }
+
+    @Test
+    public void test_post_body_writer() throws IOException {
+        byte[] request = CONTENT.getBytes(StandardCharsets.UTF_8);
+        try (InputStream in = this.client.post(getURL("/echo"), "application/xml",
+                                               "application/xml", out -> out.write(request))) {
+            assertThat(toString(in), is(CONTENT));
+        }
+    }
+
+    private String get(String path) throws IOException {
+        try (InputStream in = this.client.get(getURL(path), "application/xml")) {
+            return toString(in);
+        }
+    }
+
+    private URL getURL(String path) throws IOException {
+        InetSocketAddress address = this.server.getAddress();
+        return new URL("http", address.getHostString(), address.getPort(), path);
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body)
+            throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        } catch (IOException ex) {
+            // the client closed the connection before reading the response
+        }
+    }
+
+    private static String toString(InputStream in) throws IOException {
+        return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,34 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.Test;
+
+public class RequestTemplateTest {
+
+    @Test
+    public void test_render() {
+        RequestTemplate template = RequestTemplate.compile("<a>{b}</a><b>{e}</b>", "{b}", "{e}");
+        assertThat(template.renderString(0L, 1420070400001L),
+                   is("<a>1970-01-01T00:00:00.000Z</a><b>2015-01-01T00:00:00.001Z</b>"));
+    }
+
+    @Test
+    public void test_timestamps() {
+        DateTimeFormatter formatter = ISODateTimeFormat.dateTime().withZoneUTC();
+        byte[] buffer = new byte[RequestTemplate.TIMESTAMP_LENGTH];
+        Random random = new Random(42L);
+        for (int i = 0; i < 10000; ++i) {
+            // 1900 - 2100
+            long millis = -2208988800000L + (long) (random.nextDouble() * 6311433600000L);
+            RequestTemplate.writeTimestamp(buffer, 0, millis);
+            assertThat(new String(buffer, StandardCharsets.US_ASCII), is(formatter.print(millis)));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+
+import java.io.IOException;
+import java.net.URL;
+
+import org.apache.http.client.HttpResponseException;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ResilientHttpClientTest {
+    private static final int FAILURE_THRESHOLD = 3;
+
+    @Test
+    public void test_client_errors_keep_the_circuit_closed() throws IOException {
+        URL url = new URL("http://localhost/sos");
+        HttpClient delegate = Mockito.mock(HttpClient.class);
+        Mockito.when(delegate.get(any(URL.class), any(String.class)))
+                .thenThrow(new HttpResponseException(400, "Bad Request"));
+        ResilientHttpClient client = createClient(delegate);
+        for (int i = 0; i < 2 * FAILURE_THRESHOLD; ++i) {
+            try {
+                client.get(url, "application/xml");
+                fail("expected HttpResponseException");
+            } catch (HttpResponseException ex) {
+                assertThat(ex.getStatusCode(), is(400));
+            }
+        }
+        assertThat(client.getCircuitBreaker(url).getState(), is(CircuitBreaker.State.CLOSED));
+        Mockito.verify(delegate, Mockito.times(2 * FAILURE_THRESHOLD))
+                .get(any(URL.class), any(String.class));
+    }
+
+    @Test
+    public void test_server_errors_open_the_circuit() throws IOException {
+        URL url = new URL("http://localhost/sos");
+        HttpClient delegate = Mockito.mock(HttpClient.class);
+        Mockito.when(delegate.get(any(URL.class), any(String.class)))
+                .thenThrow(new HttpResponseException(503, "Service Unavailable"));
+        ResilientHttpClient client = createClient(delegate);
+        for (int i = 0; i < FAILURE_THRESHOLD; ++i) {
+            try {
+                client.get(url, "application/xml");
+                fail("expected HttpResponseException");
+            } catch (HttpResponseException ex) {
+                assertThat(ex.getStatusCode(), is(503));
+            }
+        }
+        assertThat(client.getCircuitBreaker(url).getState(), is(CircuitBreaker.State.OPEN));
+        try {
+            client.get(url, "application/xml");
+            fail("expected CallRejectedException");
+        } catch (CallRejectedException ex) {
+            // the endpoint is not called again
+        }
+        Mockito.verify(delegate, Mockito.times(FAILURE_THRESHOLD))
+                .get(any(URL.class), any(String.class));
+    }
+
+    private static ResilientHttpClient createClient(HttpClient delegate) {
+        return new ResilientHttpClient(delegate, "test", 1, 0L, FAILURE_THRESHOLD, 60000L);
+    }
+}
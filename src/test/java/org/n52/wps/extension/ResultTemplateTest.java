@@ -0,0 +1,48 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.xmlbeans.XmlException;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+public class ResultTemplateTest {
+
+    @Test
+    public void test_decode() throws XmlException, IOException {
+        ResultTemplate template;
+        try (InputStream in = getResource("/GetResultTemplateResponse.xml")) {
+            template = ResultTemplate.read(in);
+        }
+        List<EposEvent> events = new LinkedList<>();
+        ResultTemplate.EventPrototype prototype
+                = new ResultTemplate.EventPrototype("ws2500", "AirTemperature", "ssf_test_feature_7_3");
+        try (InputStream in = getResource("/GetResultResponse.xml")) {
+            assertThat(template.decode(in, prototype, events::add), is(3));
+        }
+        assertThat(events, hasSize(3));
+        EposEvent event = events.get(1);
+        assertThat(event.getValue(MapEposEvent.SENSORID_KEY), is("ws2500"));
+        assertThat(event.getValue(MapEposEvent.OBSERVED_PROPERTY_KEY), is("AirTemperature"));
+        assertThat(event.getValue(MapEposEvent.FEATURE_TYPE_KEY), is("ssf_test_feature_7_3"));
+        assertThat(event.getValue(MapEposEvent.DOUBLE_VALUE_KEY), is(21.5d));
+        assertThat(event.getStartTime(), is(DateTime.parse("2015-01-01T00:01:00.000Z").getMillis()));
+        assertThat(events.get(2).getStartTime(), is(DateTime.parse("2014-12-31T23:02:00.000Z").getMillis()));
+    }
+
+    private static InputStream getResource(String name) throws IOException {
+        InputStream stream = ResultTemplateTest.class.getResourceAsStream(name);
+        return Optional.ofNullable(stream).orElseThrow(() -> new IOException());
+    }
+}
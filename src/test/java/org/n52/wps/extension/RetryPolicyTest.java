@@ -0,0 +1,56 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+
+import org.apache.http.client.HttpResponseException;
+import org.apache.xmlbeans.XmlException;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void test_exponential_backoff() {
+        RetryPolicy policy = new RetryPolicy(10, 100L, 1000L, 2.0d);
+        assertThat(policy.getMaxDelay(1), is(100L));
+        assertThat(policy.getMaxDelay(2), is(200L));
+        assertThat(policy.getMaxDelay(4), is(800L));
+        assertThat(policy.getMaxDelay(5), is(1000L));
+        assertThat(policy.getMaxDelay(Integer.MAX_VALUE), is(1000L));
+    }
+
+    @Test
+    public void test_jitter() {
+        RetryPolicy policy = new RetryPolicy(10, 100L, 1000L, 2.0d);
+        for (int i = 0; i < 100; ++i) {
+            long delay = policy.getDelay(3);
+            assertThat(delay, is(greaterThanOrEqualTo(0L)));
+            assertThat(delay, is(lessThanOrEqualTo(400L)));
+        }
+    }
+
+    @Test
+    public void test_should_retry() {
+        RetryPolicy policy = RetryPolicy.withMaxAttempts(3);
+        assertThat(policy.shouldRetry(1, new IOException()), is(true));
+        assertThat(policy.shouldRetry(2, new IOException()), is(true));
+        assertThat(policy.shouldRetry(3, new IOException()), is(false));
+        assertThat(policy.shouldRetry(1, new XmlException("")), is(false));
+        assertThat(RetryPolicy.none().shouldRetry(1, new IOException()), is(false));
+    }
+
+    @Test
+    public void test_should_not_retry_client_errors() {
+        RetryPolicy policy = RetryPolicy.withMaxAttempts(3);
+        assertThat(policy.shouldRetry(1, new HttpResponseException(400, "Bad Request")), is(false));
+        assertThat(policy.shouldRetry(1, new HttpResponseException(404, "Not Found")), is(false));
+        assertThat(policy.shouldRetry(1, new HttpResponseException(408, "Request Timeout")), is(true));
+        assertThat(policy.shouldRetry(1, new HttpResponseException(429, "Too Many Requests")), is(true));
+        assertThat(policy.shouldRetry(1, new HttpResponseException(500, "Internal Server Error")), is(true));
+        assertThat(policy.shouldRetry(1, new HttpResponseException(503, "Service Unavailable")), is(true));
+    }
+}
@@ -4,7 +4,10 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -14,11 +17,20 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.httpclient.util.URIUtil;
+import org.apache.http.client.HttpResponseException;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
 import org.joda.time.DateTime;
@@ -26,11 +38,14 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ErrorCollector;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
 import org.n52.epos.event.EposEvent;
 import org.n52.epos.event.MapEposEvent;
 import org.n52.epos.filter.FilterInstantiationException;
+import org.n52.wps.extension.NotificationQueue.OverflowPolicy;
+import org.n52.wps.extension.rss.NotificationRssFeedItem;
 
 import com.google.common.io.CharStreams;
 
@@ -38,6 +53,8 @@ import com.google.common.io.CharStreams;
  * @author Christian Autermann
  */
 public class RssFeederTest {
+    private static final Pattern TITLE = Pattern.compile("<title>([^<]+/[0-9]+)</title>");
+    private static final long TIMEOUT = 10000L;
     private URI endpoint;
     private URLConnectionHttpClient httpClient;
     private EposEvent event;
@@ -89,6 +106,211 @@ public class RssFeederTest {
                                           " does not exist in the data store.")));
     }
 
+    @Test
+    public void test_lanes_preserve_order_per_sensor() throws Exception {
+        int sensors = 8;
+        int notifications = 50;
+        HttpClient client = Mockito.mock(HttpClient.class);
+        List<String> inserted = new CopyOnWriteArrayList<>();
+        Mockito.when(client.post(any(URL.class), any(String.class), any(String.class), any(BodyWriter.class)))
+                .thenAnswer(invocation -> {
+                    inserted.addAll(getTitles((BodyWriter) invocation.getArguments()[3]));
+                    // let the lanes interleave
+                    Thread.sleep(1L);
+                    return new ByteArrayInputStream(new byte[0]);
+                });
+        RssFeeder feeder = new RssFeeder(getXmlResource("/OvershootUndershootRule.xml"), this.endpoint,
+                                         client, RetryPolicy.none(), 5, 0L, 4,
+                                         new NotificationQueue(1000, OverflowPolicy.BLOCK), null);
+        for (int i = 0; i < notifications; ++i) {
+            for (int sensor = 0; sensor < sensors; ++sensor) {
+                feeder.getQueue().offer(createNotification("sensor" + sensor, i));
+            }
+        }
+        run(feeder, inserted, sensors * notifications);
+        List<Integer> expected = IntStream.range(0, notifications).boxed().collect(Collectors.toList());
+        for (int sensor = 0; sensor < sensors; ++sensor) {
+            String prefix = "sensor" + sensor + "/";
+            List<Integer> values = inserted.stream()
+                    .filter(title -> title.startsWith(prefix))
+                    .map(title -> Integer.valueOf(title.substring(prefix.length())))
+                    .collect(Collectors.toList());
+            errors.checkThat(values, is(expected));
+        }
+    }
+
+    @Test
+    public void test_max_batch_size() throws Exception {
+        List<List<String>> posted = new CopyOnWriteArrayList<>();
+        List<String> inserted = new CopyOnWriteArrayList<>();
+        RssFeeder feeder = createFeeder(createClient(posted, inserted), RetryPolicy.none(), 4, 0L);
+        offer(feeder, "sensor", 10);
+        run(feeder, inserted, 10);
+        assertThat(posted.stream().map(List::size).collect(Collectors.toList()),
+                   is(Arrays.asList(4, 4, 2)));
+    }
+
+    @Test
+    public void test_linger() throws Exception {
+        List<List<String>> posted = new CopyOnWriteArrayList<>();
+        List<String> inserted = new CopyOnWriteArrayList<>();
+        RssFeeder feeder = createFeeder(createClient(posted, inserted), RetryPolicy.none(), 10, 2000L);
+        feeder.getQueue().offer(createNotification("sensor", 0));
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(200L);
+                feeder.getQueue().offer(createNotification("sensor", 1));
+                feeder.getQueue().offer(createNotification("sensor", 2));
+            } catch (InterruptedException | MalformedURLException ex) {
+                errors.addError(ex);
+            }
+        });
+        producer.start();
+        run(feeder, inserted, 3);
+        producer.join();
+        // the late notifications are inserted with the first one
+        assertThat(posted.size(), is(1));
+        assertThat(inserted, is(Arrays.asList("sensor/0", "sensor/1", "sensor/2")));
+    }
+
+    @Test
+    public void test_no_linger() throws Exception {
+        List<List<String>> posted = new CopyOnWriteArrayList<>();
+        List<String> inserted = new CopyOnWriteArrayList<>();
+        RssFeeder feeder = createFeeder(createClient(posted, inserted), RetryPolicy.none(), 10, 0L);
+        feeder.getQueue().offer(createNotification("sensor", 0));
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(200L);
+                feeder.getQueue().offer(createNotification("sensor", 1));
+            } catch (InterruptedException | MalformedURLException ex) {
+                errors.addError(ex);
+            }
+        });
+        producer.start();
+        run(feeder, inserted, 2);
+        producer.join();
+        assertThat(posted, is(Arrays.asList(Arrays.asList("sensor/0"),
+                                            Arrays.asList("sensor/1"))));
+    }
+
+    @Test
+    public void test_split_rejected_batch() throws Exception {
+        HttpClient client = Mockito.mock(HttpClient.class);
+        List<List<String>> posted = new CopyOnWriteArrayList<>();
+        List<String> inserted = new CopyOnWriteArrayList<>();
+        Mockito.when(client.post(any(URL.class), any(String.class), any(String.class), any(BodyWriter.class)))
+                .thenAnswer(invocation -> {
+                    List<String> titles = getTitles((BodyWriter) invocation.getArguments()[3]);
+                    posted.add(titles);
+                    if (titles.size() > 1) {
+                        throw new HttpResponseException(400, "rejected");
+                    }
+                    inserted.addAll(titles);
+                    return new ByteArrayInputStream(new byte[0]);
+                });
+        RssFeeder feeder = createFeeder(client, RetryPolicy.none(), 4, 0L);
+        offer(feeder, "sensor", 4);
+        run(feeder, inserted, 4);
+        assertThat(posted.get(0), is(Arrays.asList("sensor/0", "sensor/1", "sensor/2", "sensor/3")));
+        assertThat(posted.size(), is(5));
+        assertThat(inserted, is(Arrays.asList("sensor/0", "sensor/1", "sensor/2", "sensor/3")));
+    }
+
+    @Test
+    public void test_retry_batch_on_connection_failure() throws Exception {
+        HttpClient client = Mockito.mock(HttpClient.class);
+        List<List<String>> posted = new CopyOnWriteArrayList<>();
+        List<String> inserted = new CopyOnWriteArrayList<>();
+        Mockito.when(client.post(any(URL.class), any(String.class), any(String.class), any(BodyWriter.class)))
+                .thenAnswer(invocation -> {
+                    List<String> titles = getTitles((BodyWriter) invocation.getArguments()[3]);
+                    posted.add(titles);
+                    if (posted.size() == 1) {
+                        throw new IOException("Connection reset");
+                    }
+                    inserted.addAll(titles);
+                    return new ByteArrayInputStream(new byte[0]);
+                });
+        RssFeeder feeder = createFeeder(client, new RetryPolicy(2, 0L, 0L, 1.0d), 4, 0L);
+        offer(feeder, "sensor", 4);
+        run(feeder, inserted, 4);
+        // the whole batch is retried instead of inserting the items individually
+        assertThat(posted.size(), is(2));
+        assertThat(posted.get(1), is(posted.get(0)));
+        assertThat(inserted, is(Arrays.asList("sensor/0", "sensor/1", "sensor/2", "sensor/3")));
+    }
+
+    private RssFeeder createFeeder(HttpClient client, RetryPolicy retryPolicy, int maxBatchSize,
+                                   long linger)
+            throws Exception {
+        return new RssFeeder(getXmlResource("/OvershootUndershootRule.xml"), this.endpoint,
+                             client, retryPolicy, maxBatchSize, linger, 1,
+                             new NotificationQueue(1000, OverflowPolicy.BLOCK), null);
+    }
+
+    /**
+     * Create a client recording the titles of every posted feed.
+     */
+    private static HttpClient createClient(List<List<String>> posted, List<String> inserted)
+            throws IOException {
+        HttpClient client = Mockito.mock(HttpClient.class);
+        Mockito.when(client.post(any(URL.class), any(String.class), any(String.class), any(BodyWriter.class)))
+                .thenAnswer(invocation -> {
+                    List<String> titles = getTitles((BodyWriter) invocation.getArguments()[3]);
+                    posted.add(titles);
+                    inserted.addAll(titles);
+                    return new ByteArrayInputStream(new byte[0]);
+                });
+        return client;
+    }
+
+    private static void offer(RssFeeder feeder, String procedure, int notifications)
+            throws MalformedURLException {
+        for (int i = 0; i < notifications; ++i) {
+            feeder.getQueue().offer(createNotification(procedure, i));
+        }
+    }
+
+    /**
+     * Run the feeder until {@code inserted} contains the expected number of
+     * notifications.
+     */
+    private static void run(RssFeeder feeder, List<?> inserted, int expected)
+            throws InterruptedException {
+        Thread thread = new Thread(feeder);
+        thread.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (inserted.size() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        thread.interrupt();
+        thread.join();
+        assertThat(inserted.size(), is(expected));
+    }
+
+    private static List<String> getTitles(BodyWriter writer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        Matcher matcher = TITLE.matcher(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        List<String> titles = new ArrayList<>();
+        while (matcher.find()) {
+            titles.add(matcher.group(1));
+        }
+        return titles;
+    }
+
+    private static PendingNotification createNotification(String procedure, int value)
+            throws MalformedURLException {
+        URL guid = new URL("http://localhost/rss/#alert=" + procedure + "-" + value);
+        return new PendingNotification(
+                new NotificationRssFeedItem(procedure + "/" + value, guid, "category", "description",
+                                            new DateTime(value), guid.toString(),
+                                            procedure, "observedProperty", "feature",
+                                            0.0d, 1.0d, value),
+                PendingNotification.NO_SEQUENCE);
+    }
+
     private static XmlObject getXmlResource(String name)
             throws IOException, XmlException {
         try (InputStream stream = getResource(name)) {
@@ -0,0 +1,108 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class SesFeederTest {
+    private static final long INTERVAL = 10000L;
+    private static final long MAX_RESUME_AGE = 60000L;
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setup() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void teardown() {
+        this.scheduler.shutdownNow();
+    }
+
+    @Test
+    public void test_poll_at_fixed_rate() throws Exception {
+        long interval = 200L;
+        List<Long> polls = new CopyOnWriteArrayList<>();
+        // every poll takes the better part of the interval
+        SosClient client = Mockito.mock(SosClient.class);
+        Mockito.when(client.getEvents(any(DateTime.class), any(DateTime.class), any()))
+                .thenAnswer(invocation -> {
+                    polls.add(System.currentTimeMillis());
+                    Thread.sleep(interval * 3 / 4);
+                    return 1;
+                });
+        SesFeeder feeder = new SesFeeder(client, PollingSchedule.fixed(interval), event -> {});
+        feeder.start(this.scheduler, error -> {});
+        try {
+            Thread.sleep(5 * interval + interval / 2);
+        } finally {
+            feeder.stop();
+        }
+        // with a fixed delay only four polls would have been started
+        assertThat(polls.size(), is(greaterThanOrEqualTo(6)));
+        // the processing time of a poll does not shift the following polls
+        long drift = polls.get(polls.size() - 1) - polls.get(0) - (polls.size() - 1) * interval;
+        assertThat(drift, is(lessThanOrEqualTo(interval / 2)));
+    }
+
+    @Test
+    public void test_resume_from_recent_checkpoint() throws Exception {
+        long mark = System.currentTimeMillis() - MAX_RESUME_AGE / 2;
+        // windows are requested with an exclusive lower bound
+        assertThat(getFirstBegin(mark), is(mark - 1L));
+    }
+
+    @Test
+    public void test_ignore_stale_checkpoint() throws Exception {
+        long now = System.currentTimeMillis();
+        long begin = getFirstBegin(now - 2 * MAX_RESUME_AGE);
+        assertThat(begin, is(greaterThanOrEqualTo(now - INTERVAL - 1L)));
+    }
+
+    private long getFirstBegin(long mark) throws Exception {
+        Path path = this.folder.getRoot().toPath().resolve("feeder.checkpoint");
+        try (PollingCheckpoint checkpoint = new PollingCheckpoint(path)) {
+            checkpoint.set(mark);
+            BlockingQueue<DateTime> begins = new LinkedBlockingQueue<>();
+            SosClient client = Mockito.mock(SosClient.class);
+            Mockito.when(client.getEvents(any(DateTime.class), any(DateTime.class), any()))
+                    .thenAnswer(invocation -> {
+                        begins.add((DateTime) invocation.getArguments()[0]);
+                        return 0;
+                    });
+            SesFeeder feeder = new SesFeeder(client, PollingSchedule.fixed(INTERVAL),
+                                             event -> {}, Runnable::run,
+                                             checkpoint, MAX_RESUME_AGE);
+            feeder.start(this.scheduler, error -> {});
+            try {
+                DateTime begin = begins.poll(5, TimeUnit.SECONDS);
+                assertThat(begin, is(notNullValue()));
+                return begin.getMillis();
+            } finally {
+                feeder.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import net.opengis.sos.x20.GetObservationDocument;
+
+import org.apache.xmlbeans.XmlException;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+public class ShardedSosClientTest {
+    private static final String KVP_TEMPLATE = "http://localhost/sos?service=SOS&version=2.0.0" +
+                                               "&request=GetObservation&offering=o1,o2" +
+                                               "&procedure=p1,p2,p3,p4,p5&observedProperty=temp";
+    private final List<Long> events = new CopyOnWriteArrayList<>();
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void teardown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void test_split_kvp_by_largest_parameter() throws Exception {
+        HttpClient client = Mockito.mock(HttpClient.class);
+        List<SosClient> shards = new KvpSosClient(client, new URL(KVP_TEMPLATE)).split(2);
+        assertThat(shards.size(), is(2));
+        String first = shards.get(0).getRequestKey().toString();
+        String second = shards.get(1).getRequestKey().toString();
+        assertThat(first, containsString("procedure=p1,p2,p3"));
+        assertThat(second, containsString("procedure=p4,p5"));
+        // the other parameters are kept
+        for (String shard : Arrays.asList(first, second)) {
+            assertThat(shard, containsString("offering=o1,o2"));
+            assertThat(shard, containsString("observedProperty=temp"));
+        }
+    }
+
+    @Test
+    public void test_split_kvp_into_at_most_one_shard_per_value() throws Exception {
+        HttpClient client = Mockito.mock(HttpClient.class);
+        KvpSosClient kvp = new KvpSosClient(client, new URL(KVP_TEMPLATE));
+        assertThat(kvp.split(10).size(), is(5));
+        assertThat(kvp.split(1).size(), is(1));
+        KvpSosClient single = new KvpSosClient(client, new URL(
+                "http://localhost/sos?service=SOS&version=2.0.0&request=GetObservation&procedure=p1"));
+        assertThat(single.split(4).size(), is(1));
+    }
+
+    @Test
+    public void test_split_pox_by_largest_parameter() throws Exception {
+        HttpClient client = Mockito.mock(HttpClient.class);
+        GetObservationDocument template = getRequestTemplate();
+        template.getGetObservation().setProcedureArray(new String[] { "p1", "p2", "p3", "p4" });
+        List<SosClient> shards = new PoxSosClient(client, template, new URL("http://localhost/sos")).split(2);
+        assertThat(shards.size(), is(2));
+        String first = shards.get(0).getRequestKey().toString();
+        String second = shards.get(1).getRequestKey().toString();
+        assertThat(first, containsString(">p2<"));
+        assertThat(first, not(containsString(">p3<")));
+        assertThat(second, containsString(">p3<"));
+        assertThat(second, not(containsString(">p2<")));
+        // the other parameters are kept
+        for (String shard : Arrays.asList(first, second)) {
+            assertThat(shard, containsString(">AirTemperature<"));
+            assertThat(shard, containsString(">ELV-WS2500<"));
+        }
+    }
+
+    @Test
+    public void test_collect_events_of_all_shards() throws Exception {
+        ShardedSosClient client = new ShardedSosClient(Arrays.asList(
+                createShard(1L, 50L), createShard(2L, 0L), createShard(3L, 20L)), this.executor);
+        int received = client.getEvents(new DateTime(0L), new DateTime(1L), e -> this.events.add(e.getStartTime()));
+        assertThat(received, is(3));
+        assertThat(this.events, containsInAnyOrder(1L, 2L, 3L));
+    }
+
+    @Test
+    public void test_complete_remaining_shards_on_failure() throws Exception {
+        SosClient failing = Mockito.mock(SosClient.class);
+        Mockito.when(failing.getEvents(any(DateTime.class), any(DateTime.class), any()))
+                .thenThrow(new IOException("shard failed"));
+        ShardedSosClient client = new ShardedSosClient(Arrays.asList(
+                createShard(1L, 100L), failing, createShard(3L, 200L)), this.executor);
+        try {
+            client.getEvents(new DateTime(0L), new DateTime(1L), e -> this.events.add(e.getStartTime()));
+            fail("expected IOException");
+        } catch (IOException ex) {
+            assertThat(ex.getMessage(), is("shard failed"));
+        }
+        // the failure is only rethrown after the other shards completed
+        assertThat(this.events, containsInAnyOrder(1L, 3L));
+    }
+
+    /**
+     * Create a shard delivering a single event after {@code delay} ms.
+     */
+    private static SosClient createShard(long time, long delay)
+            throws Exception {
+        SosClient shard = Mockito.mock(SosClient.class);
+        Mockito.when(shard.getEvents(any(DateTime.class), any(DateTime.class), any()))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(delay);
+                    getConsumer(invocation.getArguments()[2])
+                            .accept(new MapEposEvent(time, time));
+                    return 1;
+                });
+        return shard;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<EposEvent> getConsumer(Object consumer) {
+        return (Consumer<EposEvent>) consumer;
+    }
+
+    private static GetObservationDocument getRequestTemplate()
+            throws IOException, XmlException {
+        try (InputStream stream = Optional
+                .ofNullable(ShardedSosClientTest.class.getResourceAsStream("/GetObservationRequestTemplate.xml"))
+                .orElseThrow(() -> new IOException())) {
+            return GetObservationDocument.Factory.parse(stream);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.n52.epos.event.EposEvent;
+import org.n52.epos.event.MapEposEvent;
+
+public class SosPollingServiceTest {
+    private static final long INTERVAL = 200L;
+    private static final Object REQUEST_KEY = "request";
+    private final PollingSchedule schedule = PollingSchedule.fixed(INTERVAL);
+    private final List<Long> requests = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Throwable> failures = new LinkedBlockingQueue<>();
+    private SosPollingService service;
+    private SosClient client;
+
+    @Before
+    public void setup() throws Exception {
+        this.service = new SosPollingService();
+        this.client = createClient();
+        Mockito.when(this.client.getEvents(any(DateTime.class), any(DateTime.class), any()))
+                .thenAnswer(invocation -> {
+                    DateTime end = (DateTime) invocation.getArguments()[1];
+                    this.requests.add(end.getMillis());
+                    // one event per window
+                    getConsumer(invocation.getArguments()[2])
+                            .accept(new MapEposEvent(end.getMillis() - 1L,
+                                                     end.getMillis() - 1L));
+                    return 1;
+                });
+    }
+
+    @Test
+    public void test_subscribers_share_poller() throws Exception {
+        SosClient other = createClient();
+        List<EposEvent> first = new CopyOnWriteArrayList<>();
+        List<EposEvent> second = new CopyOnWriteArrayList<>();
+
+        long start = System.currentTimeMillis();
+        SosPollingService.Subscription subscription1
+                = this.service.subscribe(this.client, this.schedule, first::add, this.failures::add);
+        SosPollingService.Subscription subscription2
+                = this.service.subscribe(other, this.schedule, second::add, this.failures::add);
+        // close between two polls
+        Thread.sleep(5 * INTERVAL + INTERVAL / 2);
+        subscription1.close();
+        long elapsed = System.currentTimeMillis() - start;
+        List<EposEvent> delivered = new ArrayList<>(first);
+
+        // the second subscription reuses the poller of the first one
+        Mockito.verify(other, Mockito.never())
+                .getEvents(any(DateTime.class), any(DateTime.class), any());
+        assertThat(this.requests.size(), is(greaterThan(1)));
+        assertThat((long) this.requests.size(),
+                   is(lessThanOrEqualTo(elapsed / INTERVAL + 1L)));
+        assertThat(delivered, is(not(empty())));
+
+        // the poller keeps running for the second subscription
+        int requested = this.requests.size();
+        Thread.sleep(3 * INTERVAL);
+        assertThat(this.requests.size(), is(greaterThan(requested)));
+        assertThat(first, contains(delivered.toArray()));
+        assertThat(second.size(), is(greaterThan(delivered.size())));
+        assertThat(second.subList(0, delivered.size()),
+                   contains(delivered.toArray()));
+
+        // and stops after the last subscription is closed
+        subscription2.close();
+        Thread.sleep(INTERVAL);
+        requested = this.requests.size();
+        Thread.sleep(3 * INTERVAL);
+        assertThat(this.requests.size(), is(requested));
+        assertThat(this.failures, is(empty()));
+    }
+
+    @Test
+    public void test_resubscribe_after_last_unsubscribe() throws Exception {
+        BlockingQueue<EposEvent> events = new LinkedBlockingQueue<>();
+        this.service.subscribe(this.client, this.schedule, events::add, this.failures::add).close();
+        Thread.sleep(INTERVAL);
+        int requested = this.requests.size();
+
+        // a new poller is started for the same request
+        SosPollingService.Subscription subscription
+                = this.service.subscribe(this.client, this.schedule, events::add, this.failures::add);
+        try {
+            Thread.sleep(2 * INTERVAL);
+            assertThat(this.requests.size(), is(greaterThan(requested)));
+        } finally {
+            subscription.close();
+        }
+        assertThat(this.failures, is(empty()));
+    }
+
+    private static SosClient createClient() {
+        SosClient client = Mockito.mock(SosClient.class);
+        Mockito.when(client.getRequestKey()).thenReturn(REQUEST_KEY);
+        return client;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<EposEvent> getConsumer(Object consumer) {
+        return (Consumer<EposEvent>) consumer;
+    }
+}
@@ -0,0 +1,144 @@
+package org.n52.wps.extension;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class URLConnectionHttpClientTest {
+    private static final String CONTENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><response/>";
+    private HttpServer server;
+    private volatile String requestEncoding;
+    private volatile String requestBody;
+
+    @Before
+    public void setup() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/gzip", e -> respond(e, "gzip", gzip(CONTENT)));
+        this.server.createContext("/zlib", e -> respond(e, "deflate", deflate(CONTENT, false)));
+        this.server.createContext("/deflate", e -> respond(e, "deflate", deflate(CONTENT, true)));
+        this.server.createContext("/identity", e -> respond(e, null, CONTENT.getBytes(StandardCharsets.UTF_8)));
+        this.server.start();
+    }
+
+    @After
+    public void teardown() {
+        this.server.stop(0);
+    }
+
+    @Test
+    public void test_gzip_response() throws IOException {
+        assertThat(get(new URLConnectionHttpClient(), "/gzip"), is(CONTENT));
+    }
+
+    @Test
+    public void test_zlib_response() throws IOException {
+        assertThat(get(new URLConnectionHttpClient(), "/zlib"), is(CONTENT));
+    }
+
+    @Test
+    public void test_raw_deflate_response() throws IOException {
+        assertThat(get(new URLConnectionHttpClient(), "/deflate"), is(CONTENT));
+    }
+
+    @Test
+    public void test_uncompressed_request() throws IOException {
+        HttpClient client = new URLConnectionHttpClient(URLConnectionHttpClient.NO_COMPRESSION);
+        try (InputStream in = client.post(getURL("/identity"), "application/xml", CONTENT)) {
+            assertThat(toString(in), is(CONTENT));
+        }
+        assertThat(this.requestEncoding, is((String) null));
+        assertThat(this.requestBody, is(CONTENT));
+    }
+
+    @Test
+    public void test_compressed_request() throws IOException {
+        HttpClient client = new URLConnectionHttpClient(0);
+        try (InputStream in = client.post(getURL("/gzip"), "application/xml", CONTENT)) {
+            assertThat(toString(in), is(CONTENT));
+        }
+        assertThat(this.requestEncoding, is("gzip"));
+        assertThat(this.requestBody, is(CONTENT));
+    }
+
+    @Test
+    public void test_streamed_request() throws IOException {
+        HttpClient client = new URLConnectionHttpClient(0);
+        BodyWriter writer = out -> out.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+        try (InputStream in = client.post(getURL("/identity"), "application/xml", null, writer)) {
+            assertThat(toString(in), is(CONTENT));
+        }
+        assertThat(this.requestEncoding, is("gzip"));
+        assertThat(this.requestBody, is(CONTENT));
+    }
+
+    private String get(HttpClient client, String path) throws IOException {
+        try (InputStream in = client.get(getURL(path))) {
+            return toString(in);
+        }
+    }
+
+    private URL getURL(String path) throws IOException {
+        InetSocketAddress address = this.server.getAddress();
+        return new URL("http", address.getHostString(), address.getPort(), path);
+    }
+
+    private void respond(HttpExchange exchange, String encoding, byte[] body)
+            throws IOException {
+        this.requestEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equals(this.requestEncoding)) {
+            in = new GZIPInputStream(in);
+        }
+        this.requestBody = toString(in);
+        if (encoding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String toString(InputStream in) throws IOException {
+        return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(baos)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] deflate(String content, boolean raw) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (OutputStream out = new DeflaterOutputStream(baos, deflater)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            deflater.end();
+        }
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,60 @@
+package org.n52.wps.extension.rss.xml;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FeedFormatTest {
+    private final char[] buffer = new char[FeedFormat.MAX_DATE_LENGTH];
+
+    @Test
+    public void test_plain_numbers() {
+        assertThat(formatNumber(3.0), is("3"));
+        assertThat(formatNumber(-2.5), is("-2.5"));
+        assertThat(formatNumber(1234.5678), is("1234.5678"));
+        assertThat(formatNumber(0.1), is("0.1"));
+        assertThat(formatNumber(0.00001), is("0.00001"));
+        assertThat(formatNumber(1e15), is("1000000000000000"));
+        assertThat(formatNumber(0.0), is("0"));
+        assertThat(formatNumber(-0.0), is("-0"));
+    }
+
+    @Test
+    public void test_fallback_numbers() {
+        assertThat(formatNumber(Double.NaN), is("NaN"));
+        assertThat(formatNumber(Double.NEGATIVE_INFINITY), is("-Infinity"));
+        assertThat(formatNumber(Double.MAX_VALUE), is(Double.toString(Double.MAX_VALUE)));
+    }
+
+    @Test
+    public void test_round_trip() {
+        Random random = new Random(42L);
+        for (int i = 0; i < 100000; ++i) {
+            double value = i % 2 == 0
+                    ? Double.longBitsToDouble(random.nextLong())
+                    : random.nextGaussian() * 10000;
+            if (!Double.isNaN(value)) {
+                assertThat(Double.parseDouble(formatNumber(value)), is(value));
+            }
+        }
+    }
+
+    @Test
+    public void test_dates() {
+        FeedFormat format = new FeedFormat();
+        long start = 1420070400000L;
+        // several dates per second hit the cache
+        for (long millis = start - 5000L; millis < start + 5000L; millis += 250L) {
+            int length = format.formatDate(millis, this.buffer, 0);
+            assertThat(new String(this.buffer, 0, length),
+                       is(XmlConstants.RFC_1123_DATE_TIME_FORMAT.print(millis)));
+        }
+    }
+
+    private String formatNumber(double value) {
+        return new String(this.buffer, 0, FeedFormat.formatNumber(value, this.buffer, 0));
+    }
+}
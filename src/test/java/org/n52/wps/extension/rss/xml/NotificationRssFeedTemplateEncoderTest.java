@@ -0,0 +1,85 @@
+package org.n52.wps.extension.rss.xml;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import org.n52.wps.extension.rss.NotificationRssFeedItem;
+import org.n52.wps.extension.rss.RssFeed;
+import org.n52.wps.extension.rss.RssFeedItem;
+
+public class NotificationRssFeedTemplateEncoderTest {
+    private final StreamEncoder<RssFeed> template = new NotificationRssFeedTemplateEncoder();
+    private final StreamEncoder<RssFeed> stax = new RssFeedEncoder(new NotificationRssFeedItemEncoder());
+
+    @Test
+    public void test_identical_to_stax() throws MalformedURLException, XMLStreamException {
+        RssFeed feed = createFeed("SOS-Event WPS feeder");
+        assertThat(encode(this.template, feed, false), is(encode(this.stax, feed, false)));
+        // the cached header is reused
+        assertThat(encode(this.template, feed, false), is(encode(this.stax, feed, false)));
+    }
+
+    @Test
+    public void test_identical_document_to_stax() throws MalformedURLException, XMLStreamException {
+        RssFeed feed = createFeed("SOS-Event WPS feeder");
+        assertThat(encode(this.template, feed, true), is(encode(this.stax, feed, true)));
+    }
+
+    @Test
+    public void test_changed_header() throws MalformedURLException, XMLStreamException {
+        RssFeed feed = createFeed("first");
+        assertThat(encode(this.template, feed, false), is(encode(this.stax, feed, false)));
+        feed = createFeed("second & <last>");
+        assertThat(encode(this.template, feed, false), is(encode(this.stax, feed, false)));
+    }
+
+    @Test
+    public void test_large_feed() throws MalformedURLException, XMLStreamException {
+        RssFeed feed = createFeed("SOS-Event WPS feeder");
+        // exceed the buffer
+        for (int i = 0; i < 200; ++i) {
+            feed.addItem(createItem(i, "overshoot notification"));
+        }
+        assertThat(encode(this.template, feed, false), is(encode(this.stax, feed, false)));
+    }
+
+    private static RssFeed createFeed(String title) throws MalformedURLException {
+        RssFeed feed = new RssFeed(title, new URL("http://localhost/rss?a=1&b=2"),
+                                   "SOS-Event WPS feeder - alert updates", new DateTime(1420070400000L));
+        feed.addItem(createItem(0, "title with <markup> & \"quotes\""));
+        feed.addItem(createItem(1, "non-ASCII: \u00e9 \u20ac \ud83d\ude00"));
+        feed.addItem(new RssFeedItem("plain", new URL("http://localhost/feed/item"), "category",
+                                     "description\r\n\t", new DateTime(0L), "guid"));
+        return feed;
+    }
+
+    private static NotificationRssFeedItem createItem(int i, String title) throws MalformedURLException {
+        URL guid = new URL("http://localhost/rss/#alert=" + i);
+        return new NotificationRssFeedItem(title, guid, "undershoot_overshoot",
+                                           "Undershoot followed by an overshoot",
+                                           new DateTime(1000L * i), guid.toString(),
+                                           "urn:procedure<" + i + ">", "urn:observedProperty",
+                                           "urn:feature&" + i, -1234.5678, 0.1, i);
+    }
+
+    private static String encode(StreamEncoder<RssFeed> encoder, RssFeed feed, boolean document)
+            throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (document) {
+            encoder.encodeDocument(feed, out, false);
+        } else {
+            encoder.encode(feed, out, false);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -1,7 +1,16 @@
 package org.n52.wps.extension.rss.xml;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -47,4 +56,36 @@ public class RssFeedEncoderTest {
 
     }
 
+    @Test
+    public void test_compact_encoding_reuses_writer()
+            throws MalformedURLException, XMLStreamException {
+        RssFeed feed = new RssFeed("SOS-Event WPS feeder", new URL("http://localhost/rss"), "SOS-Event WPS feeder - alert updates", new DateTime(0L));
+        feed.addItem(new NotificationRssFeedItem("itemTitle", new URL("http://localhost/feed/item"), "category", "description",
+                new DateTime(0L), "guid", "procedure", "observedProperty", "featureOfInterest", 4.0, 1234.5, 3.0));
+
+        String first = encode(feed);
+        assertThat(first, not(containsString("\n")));
+        assertThat(first, containsString("<sc:overshoot>1234.5</sc:overshoot>"));
+
+        // a failed encoding must not affect the following ones
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException();
+            }
+        };
+        try {
+            this.encoder.encode(feed, broken, false);
+        } catch (XMLStreamException ex) {
+            // expected
+        }
+        assertThat(encode(feed), is(first));
+    }
+
+    private String encode(RssFeed feed) throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.encoder.encode(feed, out, false);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
 }